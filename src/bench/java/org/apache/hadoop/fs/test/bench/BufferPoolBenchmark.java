@@ -0,0 +1,96 @@
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSBufferPool;
+import org.apache.hadoop.fs.glusterfs.GlusterFSWriteBehind;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Opening, reading and closing small files, as a map task over many of
+ * them does, and writing small files behind, with 128KB stream buffers from
+ * the pool or, with a pool size of 0, from the heap each time.
+ *
+ * Run with the gc profiler to see the allocation rate:
+ *   mvn -Pbenchmarks test-compile exec:exec -Djmh.args="BufferPoolBenchmark -t 8 -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BufferPoolBenchmark {
+
+	@Param({ "0", "67108864" })
+	long poolSize;
+
+	File mount;
+	GlusterVolume volume;
+	Path small = new Path("glusterfs:///small");
+	byte[] record = new byte[1000];
+
+	@Setup
+	public void setup() throws IOException {
+		mount = new File(System.getProperty("java.io.tmpdir"), "pool-bench-" + System.nanoTime());
+		mount.mkdirs();
+		FileOutputStream out = new FileOutputStream(new File(mount, "small"));
+		out.write(new byte[4000]);
+		out.close();
+
+		Configuration conf = new Configuration();
+		conf.set("fs.glusterfs.volumes", "bv");
+		conf.set("fs.glusterfs.volume.fuse.bv", mount.getPath());
+		conf.setLong(GlusterFSBufferPool.SIZE_KEY, poolSize);
+		conf.setBoolean(GlusterFSWriteBehind.WRITE_BEHIND_KEY, true);
+		volume = new GlusterVolume();
+		volume.initialize(URI.create("glusterfs:///"), conf);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		volume.close();
+		FileUtil.fullyDelete(mount);
+	}
+
+	@Benchmark
+	public int read() throws IOException {
+		FSDataInputStream in = volume.open(small, GlusterVolume.OPTIMAL_WRITE_BUFFER_SIZE);
+		byte[] b = new byte[1000];
+		int total = 0;
+		for (int n; (n = in.read(b)) > 0;)
+			total += n;
+		in.close();
+		return total;
+	}
+
+	@Benchmark
+	public void write() throws IOException {
+		File f = new File(mount, "out-" + Thread.currentThread().getId());
+		FSDataOutputStream out = volume.create(volume.fileToPath(f), true, GlusterVolume.OPTIMAL_WRITE_BUFFER_SIZE, (short) 1, 1 << 26, null);
+		for (int i = 0; i < 4; i++)
+			out.write(record);
+		out.close();
+	}
+}
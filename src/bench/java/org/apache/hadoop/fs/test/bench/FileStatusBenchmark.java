@@ -0,0 +1,85 @@
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.glusterfs.Util;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a complete file status (length, mtime, permission, owner, group),
+ * as job submission needs for every input file when it serializes them.
+ *
+ * lsFork is how GlusterFileStatus used to load permissions, a `ls -ld` per
+ * status; status is the current path, one stat per status.
+ *   mvn -Pbenchmarks test-compile exec:exec -Djmh.args="FileStatusBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStatusBenchmark {
+
+	File mount;
+	File file;
+	GlusterVolume volume;
+	Path path;
+
+	@Setup
+	public void setup() throws IOException {
+		mount = new File(System.getProperty("java.io.tmpdir"), "status-bench-" + System.nanoTime());
+		mount.mkdirs();
+		file = new File(mount, "f");
+		new FileOutputStream(file).close();
+
+		Configuration conf = new Configuration();
+		conf.set("fs.glusterfs.volumes", "bv");
+		conf.set("fs.glusterfs.volume.fuse.bv", mount.getPath());
+		volume = new GlusterVolume();
+		volume.initialize(URI.create("glusterfs:///"), conf);
+		path = new Path("glusterfs:///f");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		volume.close();
+		FileUtil.fullyDelete(mount);
+	}
+
+	@Benchmark
+	public String lsFork() throws IOException {
+		long len = file.length() + file.lastModified();
+		StringTokenizer t = new StringTokenizer(Util.execCommand(file, Util.getGET_PERMISSION_COMMAND()));
+		FsPermission permission = FsPermission.valueOf(t.nextToken().substring(0, 10));
+		t.nextToken();
+		return t.nextToken() + t.nextToken() + permission + len;
+	}
+
+	@Benchmark
+	public String status() throws IOException {
+		FileStatus status = volume.getFileStatus(path);
+		return status.getOwner() + status.getGroup() + status.getPermission() + status.getLen();
+	}
+}
@@ -0,0 +1,89 @@
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Listing a large directory.  perEntryCalls is the old listStatus: listFiles,
+ * then exists, length, isDirectory and lastModified for each entry, each a
+ * round-trip on a FUSE mount; listStatus is the current one, one stat per
+ * entry.
+ *
+ * The directory is created under java.io.tmpdir; point that at a GlusterFS
+ * mount to see the round-trips:
+ *   mvn -Pbenchmarks test-compile exec:exec \
+ *       -Djmh.args="ListStatusBenchmark -jvmArgs -Djava.io.tmpdir=/mnt/glusterfs/tmp"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ListStatusBenchmark {
+
+	@Param({ "1000", "100000" })
+	int entries;
+
+	File mount;
+	GlusterVolume volume;
+	Path dir;
+
+	@Setup
+	public void setup() throws IOException {
+		mount = new File(System.getProperty("java.io.tmpdir"), "list-bench-" + System.nanoTime());
+		File d = new File(mount, "dir");
+		d.mkdirs();
+		for (int i = 0; i < entries; i++)
+			new File(d, "part-" + i).createNewFile();
+
+		Configuration conf = new Configuration();
+		conf.set("fs.glusterfs.volumes", "bv");
+		conf.set("fs.glusterfs.volume.fuse.bv", mount.getPath());
+		volume = new GlusterVolume();
+		volume.initialize(URI.create("glusterfs:///"), conf);
+		dir = new Path("glusterfs:///dir");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		volume.close();
+		FileUtil.fullyDelete(mount);
+	}
+
+	@Benchmark
+	public long perEntryCalls() {
+		long sum = 0;
+		for (File f : volume.pathToFile(dir).listFiles()) {
+			File p = volume.pathToFile(volume.fileToPath(f));
+			if (p.exists())
+				sum += p.length() + (p.isDirectory() ? 1 : 0) + p.lastModified();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public FileStatus[] listStatus() throws IOException {
+		return volume.listStatus(dir);
+	}
+}
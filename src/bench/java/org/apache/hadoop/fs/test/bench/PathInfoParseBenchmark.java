@@ -0,0 +1,67 @@
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.glusterfs.GlusterFSPathInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pathinfo parsing throughput and allocation, for the volume layouts in
+ * TestBlockLocation.
+ *
+ * Build and run with the benchmarks profile, -prof gc reports bytes allocated
+ * per parse (gc.alloc.rate.norm):
+ *   mvn -Pbenchmarks test-compile exec:exec -Djmh.args="-prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathInfoParseBenchmark {
+
+	static final String DISTRIBUTE = "(<DISTRIBUTE:HadoopVol-dht> <POSIX(/mnt/brick1/HadoopVol):vm-1:/mnt/brick1/HadoopVol/user/hadoop/input/part-00000>)";
+
+	static final String REPLICATE = "(<DISTRIBUTE:HadoopVol-dht> (<REPLICATE:HadoopVol-replicate-0> <POSIX(/mnt/brick1/HadoopVol):vm-2:/mnt/brick1/HadoopVol/user/hadoop/input/part-00000> <POSIX(/mnt/brick1/HadoopVol):vm-1:/mnt/brick1/HadoopVol/user/hadoop/input/part-00000> <POSIX(/mnt/brick1/HadoopVol):vm-3:/mnt/brick1/HadoopVol/user/hadoop/input/part-00000>))";
+
+	static final String STRIPE = "(<DISTRIBUTE:yuck-dht> (<STRIPE:yuck-stripe-0:[131072]> (<REPLICATE:yuck-replicate-0> <POSIX(/tmp/yuck_brick1):questor:/tmp/yuck_brick1/testfile> <POSIX(/tmp/yuck_brick2):questor:/tmp/yuck_brick2/testfile>)(<REPLICATE:yuck-replicate-1> <POSIX(/tmp/yuck_brick3):questor:/tmp/yuck_brick3/testfile> <POSIX(/tmp/yuck_brick4):questor:/tmp/yuck_brick4/testfile>)(<REPLICATE:yuck-replicate-2> <POSIX(/tmp/yuck_brick5):questor:/tmp/yuck_brick5/testfile> <POSIX(/tmp/yuck_brick6):questor:/tmp/yuck_brick6/testfile>))";
+
+	@Param({ "distribute", "replicate", "stripe" })
+	String layout;
+
+	String pathinfo;
+
+	@Setup
+	public void setup() {
+		if ("distribute".equals(layout))
+			pathinfo = DISTRIBUTE;
+		else if ("replicate".equals(layout))
+			pathinfo = REPLICATE;
+		else
+			pathinfo = STRIPE;
+	}
+
+	@Benchmark
+	public GlusterFSPathInfo parse() throws IOException {
+		return new GlusterFSPathInfo(pathinfo);
+	}
+
+	/* parse plus the locations of a 64MB block, as getFileBlockLocations does */
+	@Benchmark
+	public BlockLocation[] parseAndLocate() throws IOException {
+		return new GlusterFSPathInfo(pathinfo).getBlockLocations(0, 64 * 1024 * 1024, 64 * 1024 * 1024);
+	}
+}
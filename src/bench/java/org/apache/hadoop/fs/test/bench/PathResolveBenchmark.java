@@ -0,0 +1,115 @@
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of mapping paths to files on the mount and back, done for every file
+ * system call and every entry of a listing, with eight volumes configured.
+ *
+ * qualified is the common case, an absolute glusterfs:/// path; relative
+ * paths still take the checked, qualifying path.  legacyFileToPath is the
+ * old reverse lookup, a scan of a Hashtable and a Path parsed from a string.
+ * Run with -t to see how they scale across threads:
+ *   mvn -Pbenchmarks test-compile exec:exec -Djmh.args="PathResolveBenchmark -t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathResolveBenchmark {
+
+	static final int VOLUMES = 8;
+
+	File mount;
+	GlusterVolume volume;
+	Hashtable<String, String> volumes = new Hashtable<String, String>();
+	Path qualified;
+	Path relative;
+	File file;
+
+	@Setup
+	public void setup() throws IOException {
+		mount = new File(System.getProperty("java.io.tmpdir"), "resolve-bench-" + System.nanoTime());
+		Configuration conf = new Configuration();
+		StringBuilder names = new StringBuilder();
+		for (int i = 0; i < VOLUMES; i++) {
+			String v = "vol" + i;
+			File m = new File(mount, v);
+			m.mkdirs();
+			names.append(i == 0 ? "" : ",").append(v);
+			conf.set("fs.glusterfs.volume.fuse." + v, m.getPath());
+			volumes.put(v, m.getPath());
+		}
+		conf.set("fs.glusterfs.volumes", names.toString());
+		volume = new GlusterVolume();
+		volume.initialize(URI.create("glusterfs:///"), conf);
+		volume.setWorkingDirectory(new Path("glusterfs:///user/bench"));
+
+		qualified = new Path("glusterfs:///user/bench/warehouse/table/year=2015/part-00042");
+		relative = new Path("warehouse/table/year=2015/part-00042");
+		file = volume.pathToFile(qualified);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		volume.close();
+		FileUtil.fullyDelete(mount);
+	}
+
+	@Benchmark
+	public File qualified() {
+		return volume.pathToFile(qualified);
+	}
+
+	@Benchmark
+	public File relative() {
+		return volume.pathToFile(relative);
+	}
+
+	@Benchmark
+	public Path fileToPath() {
+		return volume.fileToPath(file);
+	}
+
+	@Benchmark
+	public Path legacyFileToPath() {
+		Enumeration<String> all = volumes.keys();
+		String rawPath = file.getAbsolutePath();
+		String volume = null;
+		String root = null;
+		while (volume == null && all.hasMoreElements()) {
+			String nextVolume = all.nextElement();
+			String nextPath = volumes.get(nextVolume);
+			if (rawPath.startsWith(nextPath)) {
+				volume = nextVolume;
+				root = nextPath;
+			}
+		}
+		if ("vol0".equalsIgnoreCase(volume))
+			volume = "";
+		return new Path("glusterfs://" + volume + "/" + rawPath.substring(root.length()));
+	}
+}
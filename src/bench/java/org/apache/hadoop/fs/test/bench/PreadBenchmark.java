@@ -0,0 +1,110 @@
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Random 4KB positional reads of one open 64MB file, shared by all threads,
+ * as region servers and footer readers do.
+ *
+ * channel reads through the file channel stream, each read a pread; legacy
+ * is the local file system's stream, where a positional read seeks, reads
+ * and seeks back under the stream's lock.  Run with -t to see the lock:
+ *   mvn -Pbenchmarks test-compile exec:exec -Djmh.args="PreadBenchmark -t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PreadBenchmark {
+
+	static final int SIZE = 64 << 20;
+	static final int READ = 4096;
+
+	File mount;
+	GlusterVolume channelVolume;
+	GlusterVolume legacyVolume;
+	FSDataInputStream channel;
+	FSDataInputStream legacy;
+
+	GlusterVolume volume(boolean channel) throws IOException {
+		Configuration conf = new Configuration();
+		conf.set("fs.glusterfs.volumes", "pv");
+		conf.set("fs.glusterfs.volume.fuse.pv", mount.getPath());
+		conf.setBoolean(GlusterVolume.CHANNEL_INPUT_KEY, channel);
+		GlusterVolume v = new GlusterVolume();
+		v.initialize(URI.create("glusterfs:///"), conf);
+		return v;
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		mount = new File(System.getProperty("java.io.tmpdir"), "pread-bench-" + System.nanoTime());
+		mount.mkdirs();
+		byte[] chunk = new byte[1 << 20];
+		new Random(1).nextBytes(chunk);
+		FileOutputStream out = new FileOutputStream(new File(mount, "data"));
+		for (int i = 0; i < SIZE / chunk.length; i++)
+			out.write(chunk);
+		out.close();
+
+		channelVolume = volume(true);
+		legacyVolume = volume(false);
+		channel = channelVolume.open(new Path("glusterfs:///data"), 4096);
+		legacy = legacyVolume.open(new Path("glusterfs:///data"), 4096);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		channel.close();
+		legacy.close();
+		channelVolume.close();
+		legacyVolume.close();
+		FileUtil.fullyDelete(mount);
+	}
+
+	@State(Scope.Thread)
+	public static class Buffer {
+		byte[] b = new byte[READ];
+	}
+
+	static long position() {
+		return ThreadLocalRandom.current().nextInt(SIZE / READ) * (long) READ;
+	}
+
+	@Benchmark
+	public byte[] channel(Buffer buffer) throws IOException {
+		channel.readFully(position(), buffer.b);
+		return buffer.b;
+	}
+
+	@Benchmark
+	public byte[] legacy(Buffer buffer) throws IOException {
+		legacy.readFully(position(), buffer.b);
+		return buffer.b;
+	}
+}
@@ -0,0 +1,89 @@
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSPrefetcher;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A scan of a 256MB file in 128KB reads, as an ORC or Parquet reader goes
+ * through a stripe, with and without sequential read ahead.
+ *
+ * On local disk the page cache hides most of what read ahead saves; point
+ * java.io.tmpdir at a FUSE mount of a volume to see the round trips:
+ *   mvn -Pbenchmarks test-compile exec:exec -Djmh.args="SequentialReadBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SequentialReadBenchmark {
+
+	static final int SIZE = 256 << 20;
+
+	@Param({ "false", "true" })
+	boolean prefetch;
+
+	File mount;
+	GlusterVolume volume;
+	Path file = new Path("glusterfs:///data");
+	byte[] buffer = new byte[128 * 1024];
+
+	@Setup
+	public void setup() throws IOException {
+		mount = new File(System.getProperty("java.io.tmpdir"), "scan-bench-" + System.nanoTime());
+		mount.mkdirs();
+		byte[] chunk = new byte[1 << 20];
+		new Random(1).nextBytes(chunk);
+		FileOutputStream out = new FileOutputStream(new File(mount, "data"));
+		for (int i = 0; i < SIZE / chunk.length; i++)
+			out.write(chunk);
+		out.close();
+
+		Configuration conf = new Configuration();
+		conf.set("fs.glusterfs.volumes", "sv");
+		conf.set("fs.glusterfs.volume.fuse.sv", mount.getPath());
+		conf.setBoolean(GlusterFSPrefetcher.PREFETCH_KEY, prefetch);
+		volume = new GlusterVolume();
+		volume.initialize(URI.create("glusterfs:///"), conf);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		volume.close();
+		FileUtil.fullyDelete(mount);
+	}
+
+	@Benchmark
+	public long scan() throws IOException {
+		FSDataInputStream in = volume.open(file, 65536);
+		long total = 0;
+		for (int n; (n = in.read(buffer)) > 0;)
+			total += n;
+		in.close();
+		return total;
+	}
+}
@@ -0,0 +1,86 @@
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSWriteBehind;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A reducer's output: 64MB written in 100 byte records, each record costing
+ * some work to produce, with and without write behind.
+ *
+ * With write behind the writes of a buffer go on while the next is produced.
+ * On local disk writes are cheap; point java.io.tmpdir at a FUSE mount of a
+ * volume to see the overlap:
+ *   mvn -Pbenchmarks test-compile exec:exec -Djmh.args="WriteBehindBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+	static final int SIZE = 64 << 20;
+	static final int RECORD = 100;
+
+	@Param({ "false", "true" })
+	boolean writeBehind;
+
+	File mount;
+	GlusterVolume volume;
+	Path file = new Path("glusterfs:///part-r-00000");
+	byte[] record = new byte[RECORD];
+	Random random = new Random(1);
+
+	@Setup
+	public void setup() throws IOException {
+		mount = new File(System.getProperty("java.io.tmpdir"), "write-bench-" + System.nanoTime());
+		mount.mkdirs();
+		Configuration conf = new Configuration();
+		conf.set("fs.glusterfs.volumes", "wv");
+		conf.set("fs.glusterfs.volume.fuse.wv", mount.getPath());
+		conf.setBoolean(GlusterFSWriteBehind.WRITE_BEHIND_KEY, writeBehind);
+		volume = new GlusterVolume();
+		volume.initialize(URI.create("glusterfs:///"), conf);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		volume.close();
+		FileUtil.fullyDelete(mount);
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		FSDataOutputStream out = volume.create(file, true, GlusterVolume.OPTIMAL_WRITE_BUFFER_SIZE, (short) 1, 1 << 26, null);
+		for (int i = 0; i < SIZE / RECORD; i++) {
+			random.nextBytes(record);
+			out.write(record);
+		}
+		long written = out.size();
+		out.close();
+		return written;
+	}
+}
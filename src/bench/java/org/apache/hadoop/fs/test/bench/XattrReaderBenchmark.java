@@ -0,0 +1,87 @@
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrHelperReader;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrReader;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrShellReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of reading pathinfo, a sudo getfattr per file (shell) against the
+ * long lived privileged helper (helper), one file at a time and as the batch
+ * getFileBlockLocations sends for a listing.
+ *
+ * Needs sudo rights for getfattr and the helper, and a directory on a
+ * gluster fuse mount to get real answers:
+ *   mvn -Pbenchmarks test-compile exec:exec -Djmh.args="XattrReader -p dir=/mnt/glusterfs/bench"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XattrReaderBenchmark {
+
+	@Param({ "shell", "helper" })
+	String reader;
+
+	/* where the files are created, java.io.tmpdir when empty */
+	@Param({ "" })
+	String dir;
+
+	@Param({ "100" })
+	int files;
+
+	GlusterFSXattrReader xattr;
+	String[] names;
+
+	@Setup
+	public void setup() throws IOException {
+		File root = new File(dir.isEmpty() ? System.getProperty("java.io.tmpdir") : dir, "xattr-bench");
+		root.mkdirs();
+		names = new String[files];
+		for (int i = 0; i < files; i++) {
+			File f = new File(root, "f" + i);
+			new FileOutputStream(f).close();
+			names[i] = f.getPath();
+		}
+
+		Configuration conf = new Configuration();
+		if ("shell".equals(reader)) {
+			GlusterFSXattrShellReader shell = new GlusterFSXattrShellReader();
+			shell.setConf(conf);
+			xattr = shell;
+		} else {
+			GlusterFSXattrHelperReader helper = new GlusterFSXattrHelperReader();
+			helper.setConf(conf);
+			xattr = helper;
+		}
+	}
+
+	@Benchmark
+	public String single() throws IOException {
+		return xattr.getXattr(names[0], GlusterFSXattr.PATHINFO_XATTR);
+	}
+
+	@Benchmark
+	public String[] batch() throws IOException {
+		return xattr.getXattrs(names, GlusterFSXattr.PATHINFO_XATTR);
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configured;
+
+/*
+ * Base for readers that answer one file at a time: a batch is a loop over
+ * getXattr.
+ */
+public abstract class GlusterFSAbstractXattrReader extends Configured implements GlusterFSXattrReader{
+
+    public String[] getXattrs(String[] fileNames,String name) throws IOException{
+        String[] values=new String[fileNames.length];
+        for(int i=0;i<fileNames.length;i++){
+            values[i]=getXattr(fileNames[i], name);
+        }
+        return values;
+    }
+
+}
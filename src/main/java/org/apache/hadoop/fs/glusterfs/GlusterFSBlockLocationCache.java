@@ -0,0 +1,207 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+
+/*
+ * Bounded LRU cache of pathinfo values, keyed by the file's normalized path on
+ * the mount (lexically, symbolic links are not followed).  The keys are also
+ * kept sorted, so dropping a directory's entries is a range, not a scan.
+ *
+ * An entry only answers for the mtime and length it was stored with, so a
+ * rewritten file misses even before it is invalidated.  Entries also expire
+ * after fs.glusterfs.blocklocation.cache.ttl, since a rebalance can move a
+ * file without touching either.
+ */
+public class GlusterFSBlockLocationCache{
+
+    public static final String CACHE_SIZE_KEY="fs.glusterfs.blocklocation.cache.size";
+    public static final int DEFAULT_CACHE_SIZE=10000;
+    public static final String CACHE_TTL_KEY="fs.glusterfs.blocklocation.cache.ttl";
+    public static final long DEFAULT_CACHE_TTL=5*60*1000;
+
+    static class Entry{
+        final long mtime;
+        final long len;
+        final long expires;
+        final String pathinfo;
+
+        Entry(long mtime,long len,long expires,String pathinfo){
+            this.mtime=mtime;
+            this.len=len;
+            this.expires=expires;
+            this.pathinfo=pathinfo;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttl;
+    private final LinkedHashMap<String,Entry> entries;
+    private final TreeSet<String> keys=new TreeSet<String>();
+
+    private final AtomicLong hits=new AtomicLong();
+    private final AtomicLong misses=new AtomicLong();
+    private final AtomicLong evictions=new AtomicLong();
+    private final AtomicLong invalidations=new AtomicLong();
+
+    public GlusterFSBlockLocationCache(Configuration conf){
+        this(conf.getInt(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE), conf.getLong(CACHE_TTL_KEY, DEFAULT_CACHE_TTL));
+    }
+
+    /* maxEntries of 0 disables the cache, a ttl of 0 keeps entries until evicted */
+    public GlusterFSBlockLocationCache(final int maxEntries,long ttl){
+        this.maxEntries=maxEntries;
+        this.ttl=ttl;
+        this.entries=new LinkedHashMap<String,Entry>(16, 0.75f, true){
+            private static final long serialVersionUID=1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest){
+                if(size()>maxEntries){
+                    keys.remove(eldest.getKey());
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled(){
+        return maxEntries>0;
+    }
+
+    /* the path without empty, . and .. components or a trailing slash */
+    static String key(String file){
+        if(file.indexOf("//")<0&&file.indexOf("/.")<0&&!(file.length()>1&&file.endsWith("/"))) return file;
+        return Paths.get(file).normalize().toString();
+    }
+
+    /* cached pathinfo for this version of the file, or null */
+    public String get(String file,long mtime,long len){
+        if(!isEnabled()) return null;
+
+        String key=key(file);
+        Entry e;
+        synchronized(entries){
+            e=entries.get(key);
+            if(e!=null&&(e.mtime!=mtime||e.len!=len||(ttl>0&&System.currentTimeMillis()>e.expires))){
+                entries.remove(key);
+                keys.remove(key);
+                e=null;
+            }
+        }
+
+        if(e==null){
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return e.pathinfo;
+    }
+
+    public void put(String file,long mtime,long len,String pathinfo){
+        if(!isEnabled()||pathinfo==null) return;
+
+        String key=key(file);
+        Entry e=new Entry(mtime, len, System.currentTimeMillis()+ttl, pathinfo);
+        synchronized(entries){
+            if(entries.put(key, e)==null) keys.add(key);
+        }
+    }
+
+    /* drops the file */
+    public void invalidate(String file){
+        if(!isEnabled()) return;
+
+        String key=key(file);
+        synchronized(entries){
+            if(entries.remove(key)!=null){
+                keys.remove(key);
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /* drops the path and, if it is a directory, everything below it */
+    public void invalidateTree(String file){
+        if(!isEnabled()) return;
+
+        String key=key(file);
+        String prefix="/".equals(key) ? key : key+"/";
+        synchronized(entries){
+            if(entries.isEmpty()) return;
+            if(entries.remove(key)!=null){
+                keys.remove(key);
+                invalidations.incrementAndGet();
+            }
+
+            /* the keys below the directory sort between "dir/" and "dir0" */
+            Iterator<String> it=keys.subSet(prefix, true, prefix.substring(0, prefix.length()-1)+'0', false).iterator();
+            while(it.hasNext()){
+                entries.remove(it.next());
+                it.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public void clear(){
+        synchronized(entries){
+            entries.clear();
+            keys.clear();
+        }
+    }
+
+    public int size(){
+        synchronized(entries){
+            return entries.size();
+        }
+    }
+
+    public long getHits(){
+        return hits.get();
+    }
+
+    public long getMisses(){
+        return misses.get();
+    }
+
+    public long getEvictions(){
+        return evictions.get();
+    }
+
+    public long getInvalidations(){
+        return invalidations.get();
+    }
+
+    public String toString(){
+        if(!isEnabled()) return "disabled";
+        return "size="+size()+"/"+maxEntries+" ttl="+ttl+"ms hits="+getHits()+" misses="+getMisses()+" evictions="+getEvictions()
+                +" invalidations="+getInvalidations();
+    }
+}
@@ -43,6 +43,13 @@ public class GlusterFSBrickClass{
         this.switchCount=switchCount;
     }
 
+    /* a brick from pathinfo, where the path may itself contain ':' */
+    GlusterFSBrickClass(String host, String exportedFile){
+        this.host=host;
+        this.exportedFile=exportedFile;
+        this.switchCount=-1;
+    }
+
     public boolean isChunked(){
         return isChunked;
     }
@@ -0,0 +1,241 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Direct buffers for the volume's streams.  A stream's buffers are taken from
+ * here and given back when it closes, so tasks opening thousands of files
+ * reuse a few buffers instead of allocating a heap buffer of
+ * io.file.buffer.size for each, and channel reads and writes go to and from
+ * them without a copy through a temporary direct buffer.
+ *
+ * Buffers come in power of two sizes from 4KB up to
+ * fs.glusterfs.buffer.pool.max.buffer; a buffer is the smallest size that
+ * holds what was asked for, with its limit at the size asked for.  At most
+ * fs.glusterfs.buffer.pool.size bytes of direct buffers exist at a time, in
+ * use or idle, so every one given back can be kept.  Requests for larger
+ * buffers, or past that size, get heap buffers, allocated each time and left
+ * to the collector, as direct memory is only freed once its buffer is
+ * collected.  A size of 0 turns pooling off, and streams get heap buffers as
+ * before.
+ *
+ * With fs.glusterfs.buffer.pool.leak.detection, meant for tests, every buffer
+ * handed out is remembered with where it was taken, a buffer given back twice
+ * or not from this pool is an error, and buffers not given back by close are
+ * logged.
+ */
+public class GlusterFSBufferPool{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSBufferPool.class);
+
+    public static final String SIZE_KEY="fs.glusterfs.buffer.pool.size";
+    public static final String MAX_BUFFER_KEY="fs.glusterfs.buffer.pool.max.buffer";
+    public static final String LEAK_DETECTION_KEY="fs.glusterfs.buffer.pool.leak.detection";
+    public static final long DEFAULT_SIZE=64L*1024*1024;
+    public static final int DEFAULT_MAX_BUFFER=16*1024*1024;
+
+    static final int MIN_SHIFT=12;
+
+    private final long size;
+    private final int maxBuffer;
+    /* idle buffers of 4KB << i */
+    private final ConcurrentLinkedQueue<ByteBuffer>[] classes;
+    private final Map<ByteBuffer,Throwable> outstanding;
+
+    private final AtomicLong pooledBytes=new AtomicLong();
+    private final AtomicLong directBytes=new AtomicLong();
+    private final AtomicLong acquired=new AtomicLong();
+    private final AtomicLong hits=new AtomicLong();
+    private final AtomicLong allocated=new AtomicLong();
+    private final AtomicLong allocatedBytes=new AtomicLong();
+    private final AtomicLong heapAllocated=new AtomicLong();
+    private final AtomicLong released=new AtomicLong();
+    private final AtomicLong dropped=new AtomicLong();
+
+    public GlusterFSBufferPool(Configuration conf){
+        this(conf.getLong(SIZE_KEY, DEFAULT_SIZE), conf.getInt(MAX_BUFFER_KEY, DEFAULT_MAX_BUFFER), conf.getBoolean(LEAK_DETECTION_KEY, false));
+    }
+
+    @SuppressWarnings("unchecked")
+    public GlusterFSBufferPool(long size,int maxBuffer,boolean leakDetection){
+        this.size=Math.max(0, size);
+        this.maxBuffer=Integer.highestOneBit(Math.max(1<<MIN_SHIFT, maxBuffer));
+        this.classes=new ConcurrentLinkedQueue[sizeClass(this.maxBuffer)+1];
+        for(int i=0;i<classes.length;i++)
+            classes[i]=new ConcurrentLinkedQueue<ByteBuffer>();
+        this.outstanding=leakDetection ? Collections.synchronizedMap(new IdentityHashMap<ByteBuffer,Throwable>()) : null;
+    }
+
+    public boolean isEnabled(){
+        return size>0;
+    }
+
+    private static int sizeClass(int capacity){
+        int shift=32-Integer.numberOfLeadingZeros(Math.max(1, capacity-1));
+        return Math.max(0, shift-MIN_SHIFT);
+    }
+
+    /* a cleared buffer with its limit at capacity, direct when it can come from the pool */
+    public ByteBuffer acquire(int capacity){
+        acquired.incrementAndGet();
+        ByteBuffer b=null;
+        if(isEnabled()&&capacity<=maxBuffer){
+            int c=sizeClass(capacity);
+            b=classes[c].poll();
+            if(b!=null){
+                pooledBytes.addAndGet(-b.capacity());
+                hits.incrementAndGet();
+            }else{
+                b=allocateDirect(1<<(c+MIN_SHIFT));
+            }
+        }
+        if(b==null) b=allocateHeap(capacity);
+        b.clear();
+        b.limit(capacity);
+        if(outstanding!=null) outstanding.put(b, new Throwable("Buffer of "+capacity+" bytes taken here"));
+        return b;
+    }
+
+    /* null once the pool's size is taken up by direct buffers */
+    private ByteBuffer allocateDirect(int capacity){
+        if(directBytes.addAndGet(capacity)>size){
+            directBytes.addAndGet(-capacity);
+            return null;
+        }
+        allocated.incrementAndGet();
+        allocatedBytes.addAndGet(capacity);
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    private ByteBuffer allocateHeap(int capacity){
+        allocated.incrementAndGet();
+        allocatedBytes.addAndGet(capacity);
+        if(isEnabled()) heapAllocated.incrementAndGet();
+        return ByteBuffer.allocate(capacity);
+    }
+
+    /* gives a buffer back; it must not be used after */
+    public void release(ByteBuffer b){
+        if(b==null) return;
+        if(outstanding!=null&&outstanding.remove(b)==null){
+            throw new IllegalStateException("Buffer released twice or not taken from this pool: "+b);
+        }
+        released.incrementAndGet();
+        int capacity=b.capacity();
+        if(!isEnabled()||!b.isDirect()||capacity>maxBuffer||Integer.bitCount(capacity)!=1||capacity<(1<<MIN_SHIFT)){
+            dropped.incrementAndGet();
+            return;
+        }
+        if(pooledBytes.addAndGet(capacity)>size){
+            pooledBytes.addAndGet(-capacity);
+            directBytes.addAndGet(-capacity);
+            dropped.incrementAndGet();
+            return;
+        }
+        b.clear();
+        classes[sizeClass(capacity)].offer(b);
+    }
+
+    /* where the buffers not given back were taken, with leak detection on */
+    public List<Throwable> getLeaks(){
+        if(outstanding==null) return Collections.emptyList();
+        synchronized(outstanding){
+            return new ArrayList<Throwable>(outstanding.values());
+        }
+    }
+
+    /* logs buffers not given back and empties the pool */
+    public void close(){
+        for(Throwable leak : getLeaks())
+            log.warn("Buffer not released", leak);
+        for(ConcurrentLinkedQueue<ByteBuffer> c : classes){
+            ByteBuffer b;
+            while((b=c.poll())!=null){
+                pooledBytes.addAndGet(-b.capacity());
+                directBytes.addAndGet(-b.capacity());
+            }
+        }
+    }
+
+    public long getAcquired(){
+        return acquired.get();
+    }
+
+    /* buffers taken from the pool rather than allocated */
+    public long getHits(){
+        return hits.get();
+    }
+
+    public long getAllocated(){
+        return allocated.get();
+    }
+
+    public long getAllocatedBytes(){
+        return allocatedBytes.get();
+    }
+
+    public long getReleased(){
+        return released.get();
+    }
+
+    /* heap buffers handed out with the pool on, too large or past the pool's size */
+    public long getHeapAllocated(){
+        return heapAllocated.get();
+    }
+
+    /* bytes of direct buffers, in use or idle */
+    public long getDirectBytes(){
+        return directBytes.get();
+    }
+
+    /* released buffers not kept, heap buffers and those not poolable */
+    public long getDropped(){
+        return dropped.get();
+    }
+
+    /* buffers handed out and not given back */
+    public long getOutstanding(){
+        return getAcquired()-getReleased();
+    }
+
+    /* bytes of idle buffers kept */
+    public long getPooledBytes(){
+        return pooledBytes.get();
+    }
+
+    public String toString(){
+        if(!isEnabled()) return "off";
+        return size+" bytes of buffers up to "+maxBuffer+(outstanding!=null ? ", leak detection" : "")+" acquired="+getAcquired()+" hits="+getHits()
+                +" allocated="+getAllocated()+" heap="+getHeapAllocated()+" released="+getReleased()+" dropped="+getDropped()+" pooled="+getPooledBytes();
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Content summaries (du, count) of directory trees.  Where directory quota is
+ * enabled, the quota translator keeps the size, file count and directory count
+ * of every directory in trusted.glusterfs.quota.size, and one xattr read
+ * answers for the whole tree.  Otherwise the tree is walked, a fork-join task
+ * per directory.
+ *
+ * Quota sizes are space used on the bricks, so for sparse or replicated files
+ * they differ from the sum of file lengths, which is what du means elsewhere
+ * in Hadoop; quota is therefore used only when asked for.  Volumes without
+ * inode quota (before 3.7) keep only the size; those are walked too.
+ */
+public class GlusterFSContentSummarizer{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSContentSummarizer.class);
+
+    public static final String QUOTA_SIZE_XATTR="trusted.glusterfs.quota.size";
+    public static final String QUOTA_SUMMARY_KEY="fs.glusterfs.summary.quota";
+
+    private final GlusterVolume volume;
+    private final boolean useQuota;
+
+    private final AtomicLong quotaSummaries=new AtomicLong();
+    private final AtomicLong walkedSummaries=new AtomicLong();
+    private final AtomicLong walkedDirectories=new AtomicLong();
+    private final AtomicLong fileSummaries=new AtomicLong();
+
+    public GlusterFSContentSummarizer(GlusterVolume volume,boolean useQuota){
+        this.volume=volume;
+        this.useQuota=useQuota;
+    }
+
+    public ContentSummary getContentSummary(Path f) throws IOException{
+        FileStatus status=volume.getFileStatus(f);
+        if(!status.isDirectory()){
+            fileSummaries.incrementAndGet();
+            return new ContentSummary(status.getLen(), 1, 0);
+        }
+
+        if(useQuota){
+            long[] quota=readQuota(status.getPath());
+            if(quota!=null){
+                quotaSummaries.incrementAndGet();
+                return new ContentSummary(quota[0], quota[1], quota[2]);
+            }
+        }
+
+        long[] totals;
+        try{
+            totals=volume.getListingPool().invoke(new Walk(status.getPath()));
+        }catch (WalkFailure e){
+            throw e.getCause();
+        }
+        walkedSummaries.incrementAndGet();
+        return new ContentSummary(totals[0], totals[1], totals[2]);
+    }
+
+    /* size, files and directories from the quota xattr, null if quota doesn't keep them */
+    private long[] readQuota(Path dir){
+        String value;
+        try{
+            value=volume.getXattrReader().getXattr(volume.pathToFile(dir).getPath(), QUOTA_SIZE_XATTR);
+        }catch (IOException e){
+            log.debug("Can't read quota of "+dir+": "+e.getMessage());
+            return null;
+        }
+        long[] counts=GlusterFSXattr.decodeLongs(value);
+        if(counts==null||counts.length<3) return null;
+        return counts;
+    }
+
+    /* carries a walk's IOException out of the fork-join pool */
+    private static class WalkFailure extends RuntimeException{
+        private static final long serialVersionUID=1L;
+
+        WalkFailure(IOException cause){
+            super(cause);
+        }
+
+        public IOException getCause(){
+            return (IOException) super.getCause();
+        }
+    }
+
+    /* length, files and directories of one directory's tree, the directory included */
+    private class Walk extends RecursiveTask<long[]>{
+        private static final long serialVersionUID=1L;
+
+        private final Path dir;
+
+        Walk(Path dir){
+            this.dir=dir;
+        }
+
+        protected long[] compute(){
+            long[] totals=new long[]{ 0, 0, 1 };
+            ArrayList<Walk> subdirs=new ArrayList<Walk>();
+            RemoteIterator<FileStatus> entries=null;
+            try{
+                entries=volume.listStatusIterator(dir);
+                while(entries.hasNext()){
+                    FileStatus s=entries.next();
+                    if(s.isDirectory()){
+                        Walk w=new Walk(s.getPath());
+                        w.fork();
+                        subdirs.add(w);
+                    }else{
+                        totals[0]+=s.getLen();
+                        totals[1]++;
+                    }
+                }
+            }catch (FileNotFoundException e){
+                log.debug("Directory gone while summarizing: "+dir);
+            }catch (IOException e){
+                throw new WalkFailure(e);
+            }finally{
+                if(entries instanceof Closeable){
+                    try{
+                        ((Closeable) entries).close();
+                    }catch (IOException e){
+                        // nothing left to read
+                    }
+                }
+            }
+            walkedDirectories.incrementAndGet();
+
+            for(Walk w : subdirs){
+                long[] sub=w.join();
+                for(int i=0;i<totals.length;i++)
+                    totals[i]+=sub[i];
+            }
+            return totals;
+        }
+    }
+
+    /* summaries answered from quota */
+    public long getQuotaSummaries(){
+        return quotaSummaries.get();
+    }
+
+    /* summaries answered by walking the tree */
+    public long getWalkedSummaries(){
+        return walkedSummaries.get();
+    }
+
+    public long getWalkedDirectories(){
+        return walkedDirectories.get();
+    }
+
+    public long getFileSummaries(){
+        return fileSummaries.get();
+    }
+
+    public String toString(){
+        return (useQuota ? "quota, then walk" : "walk")+" quota="+getQuotaSummaries()+" walked="+getWalkedSummaries()
+                +" directories="+getWalkedDirectories()+" files="+getFileSummaries();
+    }
+}
@@ -0,0 +1,307 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Progressable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Copies within a mount for rename across directories renameTo can't move,
+ * concat, and copies between paths of a volume.  File data goes from channel
+ * to channel with transferTo, which the JVM does with sendfile or a mapping of
+ * the source rather than through buffers on the heap.  A directory tree is
+ * copied by a fork-join task per file and directory, and files larger than
+ * the range size by a task per range, each writing its part of the target at
+ * its own position, so one big file is copied by as many streams as there
+ * are threads.  The same engine copies between the mount and local disk for
+ * copyFromLocalFile and copyToLocalFile.
+ *
+ * Progress is reported after every buffer, so long copies of big files don't
+ * time out the task doing them.
+ */
+public class GlusterFSCopier{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSCopier.class);
+
+    public static final String RANGE_SIZE_KEY="fs.glusterfs.copy.range.size";
+    public static final long DEFAULT_RANGE_SIZE=64*1024*1024;
+    public static final String BUFFER_SIZE_KEY="fs.glusterfs.copy.buffer.size";
+    public static final long DEFAULT_BUFFER_SIZE=8*1024*1024;
+
+    private final GlusterVolume volume;
+    /* files larger than this are copied in ranges of this size */
+    private final long rangeSize;
+    /* bytes moved by one transferTo call, between progress reports */
+    private final long bufferSize;
+
+    private final AtomicLong filesCopied=new AtomicLong();
+    private final AtomicLong directoriesCopied=new AtomicLong();
+    private final AtomicLong bytesCopied=new AtomicLong();
+    private final AtomicLong concats=new AtomicLong();
+    private final AtomicLong rangesCopied=new AtomicLong();
+
+    public GlusterFSCopier(GlusterVolume volume,Configuration conf){
+        this(volume, conf.getLongBytes(RANGE_SIZE_KEY, DEFAULT_RANGE_SIZE), conf.getLongBytes(BUFFER_SIZE_KEY, DEFAULT_BUFFER_SIZE));
+    }
+
+    public GlusterFSCopier(GlusterVolume volume,long rangeSize,long bufferSize){
+        this.volume=volume;
+        this.rangeSize=Math.max(1, rangeSize);
+        this.bufferSize=Math.max(1, bufferSize);
+    }
+
+    /*
+     * copies a file or directory tree to dst, replacing files that are there.
+     * With preserve, permissions and modification times are kept, as a rename would.
+     */
+    public void copy(File src,File dst,boolean preserve,Progressable progress) throws IOException{
+        try{
+            volume.getCopyPool().invoke(new Copy(src, dst, preserve, progress));
+        }catch (CopyFailure e){
+            throw e.getCause();
+        }
+    }
+
+    /* appends the sources to target, in order */
+    public void append(File target,File[] srcs,Progressable progress) throws IOException{
+        FileOutputStream out=new FileOutputStream(target, true);
+        try{
+            FileChannel channel=out.getChannel();
+            for(File src : srcs){
+                FileInputStream in=new FileInputStream(src);
+                try{
+                    FileChannel source=in.getChannel();
+                    transfer(source, channel, 0, source.size(), progress);
+                }finally{
+                    in.close();
+                }
+            }
+        }finally{
+            out.close();
+        }
+        concats.incrementAndGet();
+    }
+
+    /* the bytes from start to end of in, written at out's position */
+    private void transfer(FileChannel in,FileChannel out,long start,long end,Progressable progress) throws IOException{
+        long position=start;
+        while(position<end){
+            long n=in.transferTo(position, Math.min(bufferSize, end-position), out);
+            /* the source was truncated while copying */
+            if(n<=0) break;
+            position+=n;
+            bytesCopied.addAndGet(n);
+            if(progress!=null) progress.progress();
+        }
+    }
+
+    private void copyFile(File src,File dst,boolean preserve,Progressable progress) throws IOException{
+        long size=src.length();
+        if(size>rangeSize){
+            copyRanges(src, dst, size, progress);
+        }else{
+            FileInputStream in=new FileInputStream(src);
+            try{
+                FileOutputStream out=new FileOutputStream(dst);
+                try{
+                    FileChannel source=in.getChannel();
+                    transfer(source, out.getChannel(), 0, source.size(), progress);
+                }finally{
+                    out.close();
+                }
+            }finally{
+                in.close();
+            }
+        }
+        if(preserve) preserve(src, dst);
+        filesCopied.incrementAndGet();
+    }
+
+    /* the target is sized first, then each range is written at its place by its own task */
+    private void copyRanges(File src,File dst,long size,Progressable progress) throws IOException{
+        RandomAccessFile out=new RandomAccessFile(dst, "rw");
+        try{
+            out.setLength(size);
+        }finally{
+            out.close();
+        }
+        ArrayList<Range> ranges=new ArrayList<Range>();
+        for(long start=0;start<size;start+=rangeSize){
+            Range r=new Range(src, dst, start, Math.min(size, start+rangeSize), progress);
+            r.fork();
+            ranges.add(r);
+        }
+        joinAll(ranges);
+    }
+
+    /* joins every task, so none is still writing when the first failure is thrown */
+    private static void joinAll(ArrayList<? extends RecursiveAction> tasks){
+        RuntimeException failure=null;
+        for(RecursiveAction t : tasks){
+            try{
+                t.join();
+            }catch (RuntimeException e){
+                if(failure==null) failure=e;
+            }
+        }
+        if(failure!=null) throw failure;
+    }
+
+    private static void preserve(File src,File dst) throws IOException{
+        try{
+            Files.setPosixFilePermissions(dst.toPath(), Files.getPosixFilePermissions(src.toPath()));
+        }catch (UnsupportedOperationException e){
+            log.debug("Permissions not copied to "+dst+": "+e.getMessage());
+        }
+        FileTime mtime=Files.getLastModifiedTime(src.toPath());
+        Files.setLastModifiedTime(dst.toPath(), mtime);
+    }
+
+    /* carries a copy's IOException out of the fork-join pool */
+    private static class CopyFailure extends RuntimeException{
+        private static final long serialVersionUID=1L;
+
+        CopyFailure(IOException cause){
+            super(cause);
+        }
+
+        public IOException getCause(){
+            return (IOException) super.getCause();
+        }
+    }
+
+    private class Copy extends RecursiveAction{
+        private static final long serialVersionUID=1L;
+
+        private final File src;
+        private final File dst;
+        private final boolean preserve;
+        private final Progressable progress;
+
+        Copy(File src,File dst,boolean preserve,Progressable progress){
+            this.src=src;
+            this.dst=dst;
+            this.preserve=preserve;
+            this.progress=progress;
+        }
+
+        protected void compute(){
+            try{
+                if(!src.isDirectory()){
+                    copyFile(src, dst, preserve, progress);
+                    return;
+                }
+                if(!dst.isDirectory()&&!dst.mkdir()) throw new IOException("Can't create directory "+dst);
+                String[] names=src.list();
+                if(names==null) throw new IOException("Can't list "+src);
+                ArrayList<Copy> children=new ArrayList<Copy>(names.length);
+                for(String name : names){
+                    Copy c=new Copy(new File(src, name), new File(dst, name), preserve, progress);
+                    c.fork();
+                    children.add(c);
+                }
+                joinAll(children);
+                if(preserve) preserve(src, dst);
+                directoriesCopied.incrementAndGet();
+                if(progress!=null) progress.progress();
+            }catch (IOException e){
+                throw new CopyFailure(e);
+            }
+        }
+    }
+
+    private class Range extends RecursiveAction{
+        private static final long serialVersionUID=1L;
+
+        private final File src;
+        private final File dst;
+        private final long start;
+        private final long end;
+        private final Progressable progress;
+
+        Range(File src,File dst,long start,long end,Progressable progress){
+            this.src=src;
+            this.dst=dst;
+            this.start=start;
+            this.end=end;
+            this.progress=progress;
+        }
+
+        protected void compute(){
+            try{
+                FileInputStream in=new FileInputStream(src);
+                try{
+                    RandomAccessFile out=new RandomAccessFile(dst, "rw");
+                    try{
+                        FileChannel target=out.getChannel();
+                        target.position(start);
+                        transfer(in.getChannel(), target, start, end, progress);
+                    }finally{
+                        out.close();
+                    }
+                }finally{
+                    in.close();
+                }
+                rangesCopied.incrementAndGet();
+            }catch (IOException e){
+                throw new CopyFailure(e);
+            }
+        }
+    }
+
+    public long getFilesCopied(){
+        return filesCopied.get();
+    }
+
+    public long getDirectoriesCopied(){
+        return directoriesCopied.get();
+    }
+
+    public long getBytesCopied(){
+        return bytesCopied.get();
+    }
+
+    public long getConcats(){
+        return concats.get();
+    }
+
+    /* ranges of files larger than the range size, copied in parallel */
+    public long getRangesCopied(){
+        return rangesCopied.get();
+    }
+
+    public String toString(){
+        return "range size="+rangeSize+" buffer="+bufferSize+" files="+getFilesCopied()+" ranges="+getRangesCopied()+" directories="+getDirectoriesCopied()+" bytes="+getBytesCopied()+" concats="+getConcats();
+    }
+}
@@ -0,0 +1,408 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Recursive deletes.  A directory tree is removed by fork-join tasks on the
+ * volume's delete pool, a task per directory and per batch of entries of a
+ * wide directory, so the unlinks of a job's temporary files go out many at a
+ * time instead of one after another.
+ *
+ * With fs.glusterfs.delete.async a tree is instead renamed into the user's
+ * directory of .trash-pending at the root of its volume, which is one atomic
+ * rename, and removed from there in the background at a limited rate, so the
+ * caller returns at once and the purge doesn't crowd out the job's own traffic.
+ * The purge has a pool of its own, as its tasks sleep to keep to the rate.
+ * .trash-pending is shared like /tmp (1777), the directories in it private to
+ * their users.  Trees a user left pending when a client exits are purged by
+ * purgeTrash, which a client starting with async deletes on calls at most once
+ * per purge interval for all clients of the user, by taking a lease on the
+ * user's trash; several clients purging the same tree is harmless.
+ */
+public class GlusterFSDeleter{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSDeleter.class);
+
+    public static final String ASYNC_KEY="fs.glusterfs.delete.async";
+    public static final String PURGE_RATE_KEY="fs.glusterfs.delete.async.rate";
+    public static final int DEFAULT_PURGE_RATE=10000;
+    public static final String PURGE_INTERVAL_KEY="fs.glusterfs.delete.async.purge.interval";
+    public static final long DEFAULT_PURGE_INTERVAL=3600000;
+    public static final String TRASH_DIR=".trash-pending";
+
+    /* in a user's trash, modified when a client last took on the leftovers */
+    static final String LEASE=".purge-lease";
+
+    /* threads of the background purge */
+    static final int PURGE_THREADS=4;
+
+    /* anyone may move trees in, each user removes only their own, as /tmp */
+    static final FsPermission SHARED_TRASH=new FsPermission((short)01777);
+
+    /* entries of a wide directory deleted by one task */
+    static final int BATCH=512;
+
+    private final GlusterVolume volume;
+    private final String user=System.getProperty("user.name");
+    private final boolean async;
+    private final RateLimit purgeRate;
+    private final long purgeInterval;
+    private ForkJoinPool purger=null;
+    private final AtomicInteger pending=new AtomicInteger();
+
+    private final AtomicLong entriesDeleted=new AtomicLong();
+    private final AtomicLong failures=new AtomicLong();
+    private final AtomicLong treesDeleted=new AtomicLong();
+    private final AtomicLong treesDeferred=new AtomicLong();
+    private final AtomicLong treesPurged=new AtomicLong();
+
+    public GlusterFSDeleter(GlusterVolume volume,Configuration conf){
+        this(volume, conf.getBoolean(ASYNC_KEY, false), conf.getInt(PURGE_RATE_KEY, DEFAULT_PURGE_RATE),
+                conf.getLong(PURGE_INTERVAL_KEY, DEFAULT_PURGE_INTERVAL));
+    }
+
+    public GlusterFSDeleter(GlusterVolume volume,boolean async,int purgeRate){
+        this(volume, async, purgeRate, DEFAULT_PURGE_INTERVAL);
+    }
+
+    /*
+     * purgeRate is entries unlinked per second by the background purge, 0 for no limit.
+     * purgeInterval is the least time between purges of leftovers by purgeTrashIfDue, 0 for never.
+     */
+    public GlusterFSDeleter(GlusterVolume volume,boolean async,int purgeRate,long purgeInterval){
+        this.volume=volume;
+        this.async=async;
+        this.purgeRate=purgeRate>0 ? new RateLimit(purgeRate) : null;
+        this.purgeInterval=purgeInterval;
+    }
+
+    public boolean isAsync(){
+        return async;
+    }
+
+    /* deletes a file or tree now, true if nothing of it is left */
+    public boolean delete(File f){
+        boolean deleted=delete(f, volume.getDeletePool(), null);
+        if(deleted) treesDeleted.incrementAndGet();
+        return deleted;
+    }
+
+    private boolean delete(File f,ForkJoinPool pool,RateLimit limit){
+        acquire(limit);
+        if(f.delete()){
+            entriesDeleted.incrementAndGet();
+            return true;
+        }
+        if(!isDirectory(f)) return !exists(f);
+        return pool.invoke(new DeleteDirectory(f, limit));
+    }
+
+    /*
+     * moves a tree into the trash of the mount it is on, to be purged in the
+     * background.  false if it can't be moved, and should be deleted now.
+     */
+    public boolean deleteLater(File f,String mount){
+        File shared=new File(mount, TRASH_DIR);
+        File trash=getTrash(mount);
+        String path=f.getAbsolutePath();
+        if(path.equals(new File(mount).getAbsolutePath())||(path+"/").startsWith(shared.getAbsolutePath()+"/")) return false;
+        if(!trash.isDirectory()&&!makeTrash(shared, trash)) return false;
+        File pending=new File(trash, f.getName()+"."+UUID.randomUUID());
+        if(!f.renameTo(pending)) return false;
+        treesDeferred.incrementAndGet();
+        purgeLater(pending);
+        return true;
+    }
+
+    /* this user's trash on a mount */
+    public File getTrash(String mount){
+        return new File(new File(mount, TRASH_DIR), user);
+    }
+
+    private boolean makeTrash(File shared,File trash){
+        try{
+            if(!shared.isDirectory()){
+                try{
+                    Files.createDirectory(shared.toPath());
+                    volume.setPermission(volume.fileToPath(shared), SHARED_TRASH);
+                }catch (FileAlreadyExistsException e){
+                    // made by another client
+                }
+            }
+            Files.createDirectory(trash.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            return true;
+        }catch (FileAlreadyExistsException e){
+            return trash.isDirectory();
+        }catch (IOException e){
+            log.warn("Can't create "+trash+", deleting now: "+e);
+            return false;
+        }
+    }
+
+    /* purges what earlier clients of this user left in the trash of a mount; other users' trees are theirs to purge */
+    public void purgeTrash(String mount){
+        File trash=getTrash(mount);
+        String[] names=trash.list();
+        if(names==null) return;
+        for(String name : names){
+            if(!name.equals(LEASE)) purgeLater(new File(trash, name));
+        }
+    }
+
+    /*
+     * purgeTrash, unless a client of this user took the leftovers on within
+     * the purge interval.  Two clients starting at once may both purge.
+     */
+    public boolean purgeTrashIfDue(String mount){
+        File trash=getTrash(mount);
+        if(purgeInterval<=0||!trash.isDirectory()) return false;
+        File lease=new File(trash, LEASE);
+        long now=System.currentTimeMillis();
+        long taken=lease.lastModified();
+        if(taken>0&&now-taken<purgeInterval) return false;
+        try{
+            if(!lease.createNewFile()&&!lease.setLastModified(now)) return false;
+        }catch (IOException e){
+            log.warn("Can't take the purge lease "+lease+": "+e);
+            return false;
+        }
+        purgeTrash(mount);
+        return true;
+    }
+
+    private synchronized void purgeLater(final File tree){
+        if(purger==null){
+            purger=GlusterVolume.newForkJoinPool(PURGE_THREADS, "glusterfs-purger-");
+        }
+        final ForkJoinPool pool=purger;
+        pending.incrementAndGet();
+        pool.execute(new Runnable(){
+            public void run(){
+                try{
+                    if(delete(tree, pool, purgeRate)){
+                        treesPurged.incrementAndGet();
+                    }else{
+                        log.warn("Could not purge all of "+tree);
+                    }
+                }catch (RuntimeException e){
+                    log.warn("Purge of "+tree+" failed", e);
+                }finally{
+                    pending.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /* number of trees moved to the trash and not yet purged by this client */
+    public int getPending(){
+        return pending.get();
+    }
+
+    /* waits for pending purges, for tests and shutdown */
+    public boolean awaitPurge(long timeout,TimeUnit unit) throws InterruptedException{
+        long end=System.nanoTime()+unit.toNanos(timeout);
+        while(getPending()>0){
+            if(System.nanoTime()>end) return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /* pending purges are dropped; what is left in the trash is purged by the next client */
+    public synchronized void close(){
+        if(purger!=null){
+            purger.shutdownNow();
+            purger=null;
+            pending.set(0);
+        }
+    }
+
+    private static boolean isDirectory(File f){
+        return Files.isDirectory(f.toPath(), LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private static boolean exists(File f){
+        return Files.exists(f.toPath(), LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private void acquire(RateLimit limit){
+        if(limit!=null) limit.acquire();
+    }
+
+    /* evenly spaced permits, shared by all tasks of a purge */
+    static class RateLimit{
+        private final long interval;
+        private long next=System.nanoTime();
+
+        RateLimit(int perSecond){
+            this.interval=TimeUnit.SECONDS.toNanos(1)/perSecond;
+        }
+
+        void acquire(){
+            long wait;
+            synchronized(this){
+                long now=System.nanoTime();
+                if(next<now) next=now;
+                wait=next-now;
+                next+=interval;
+            }
+            if(wait>0){
+                try{
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /* removes a directory after its entries, true if nothing is left */
+    private class DeleteDirectory extends RecursiveTask<Boolean>{
+        private static final long serialVersionUID=1L;
+
+        private final File dir;
+        private final RateLimit limit;
+
+        DeleteDirectory(File dir,RateLimit limit){
+            this.dir=dir;
+            this.limit=limit;
+        }
+
+        protected Boolean compute(){
+            String[] names=dir.list();
+            boolean deleted=true;
+            if(names!=null){
+                if(names.length<=BATCH){
+                    deleted=new DeleteEntries(dir, names, 0, names.length, limit).compute();
+                }else{
+                    ArrayList<DeleteEntries> batches=new ArrayList<DeleteEntries>();
+                    for(int i=0;i<names.length;i+=BATCH){
+                        DeleteEntries b=new DeleteEntries(dir, names, i, Math.min(names.length, i+BATCH), limit);
+                        b.fork();
+                        batches.add(b);
+                    }
+                    for(DeleteEntries b : batches)
+                        deleted&=b.join();
+                }
+            }
+            acquire(limit);
+            if(dir.delete()){
+                entriesDeleted.incrementAndGet();
+            }else if(exists(dir)){
+                failures.incrementAndGet();
+                deleted=false;
+            }
+            return deleted;
+        }
+    }
+
+    /*
+     * unlinks a range of a directory's entries; an entry that can't be removed
+     * directly is a non-empty directory, deleted by its own task.
+     */
+    private class DeleteEntries extends RecursiveTask<Boolean>{
+        private static final long serialVersionUID=1L;
+
+        private final File dir;
+        private final String[] names;
+        private final int from;
+        private final int to;
+        private final RateLimit limit;
+
+        DeleteEntries(File dir,String[] names,int from,int to,RateLimit limit){
+            this.dir=dir;
+            this.names=names;
+            this.from=from;
+            this.to=to;
+            this.limit=limit;
+        }
+
+        protected Boolean compute(){
+            boolean deleted=true;
+            ArrayList<DeleteDirectory> subdirs=new ArrayList<DeleteDirectory>();
+            for(int i=from;i<to;i++){
+                File f=new File(dir, names[i]);
+                acquire(limit);
+                if(f.delete()){
+                    entriesDeleted.incrementAndGet();
+                }else if(isDirectory(f)){
+                    DeleteDirectory d=new DeleteDirectory(f, limit);
+                    d.fork();
+                    subdirs.add(d);
+                }else if(exists(f)){
+                    failures.incrementAndGet();
+                    deleted=false;
+                }
+            }
+            for(DeleteDirectory d : subdirs)
+                deleted&=d.join();
+            return deleted;
+        }
+    }
+
+    /* files and directories removed, by direct and background deletes */
+    public long getEntriesDeleted(){
+        return entriesDeleted.get();
+    }
+
+    /* entries that could not be removed */
+    public long getFailures(){
+        return failures.get();
+    }
+
+    public long getTreesDeleted(){
+        return treesDeleted.get();
+    }
+
+    /* trees moved to the trash */
+    public long getTreesDeferred(){
+        return treesDeferred.get();
+    }
+
+    public long getTreesPurged(){
+        return treesPurged.get();
+    }
+
+    public String toString(){
+        return (async ? "async, purge rate "+(purgeRate==null ? "unlimited" : TimeUnit.SECONDS.toNanos(1)/purgeRate.interval+"/s")
+                +(purgeInterval>0 ? ", leftovers every "+purgeInterval+"ms" : "") : "sync")
+                +" entries="+getEntriesDeleted()+" failures="+getFailures()+" trees="+getTreesDeleted()+" deferred="+getTreesDeferred()
+                +" purged="+getTreesPurged();
+    }
+}
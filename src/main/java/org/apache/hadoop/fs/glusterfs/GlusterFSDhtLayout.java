@@ -0,0 +1,221 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+
+/*
+ * A directory's DHT layout: the hash range each distribute subvolume owns,
+ * as stored in trusted.glusterfs.dht on the subvolume's copy of the directory.
+ * Files are placed on the subvolume whose range holds the Davies-Meyer hash
+ * of their name (gf_dm_hashfn in libglusterfs/src/hashfn.c).
+ */
+public class GlusterFSDhtLayout{
+
+    static final Charset UTF8=Charset.forName("UTF-8");
+
+    /* the default dht.rsync-hash-regex, temp files hash like the file they become */
+    public static final String DEFAULT_RSYNC_HASH_REGEX="^\\.(.+)\\.[^.]+$";
+
+    private static final int DM_DELTA=0x9E3779B9;
+    private static final int DM_FULLROUNDS=10;
+    private static final int DM_PARTROUNDS=6;
+
+    /* ranges are inclusive and compared unsigned, kept as longs */
+    private final long[] start;
+    private final long[] stop;
+    private final int[] subvolume;
+
+    private GlusterFSDhtLayout(long[] start,long[] stop,int[] subvolume){
+        this.start=start;
+        this.stop=stop;
+        this.subvolume=subvolume;
+    }
+
+    public static class Builder{
+        private final ArrayList<long[]> ranges=new ArrayList<long[]>();
+
+        /* subvolume is the index of the child in the distribute translator */
+        public Builder add(int subvolume,long start,long stop){
+            if(start==0&&stop==0) return this; // subvolume without a share, e.g. being removed
+            ranges.add(new long[]{start&0xffffffffL, stop&0xffffffffL, subvolume});
+            return this;
+        }
+
+        /* adds the range from an on-disk layout value */
+        public Builder add(int subvolume,String xattr) throws IOException{
+            int[] disk=parseDiskLayout(xattr);
+            return add(subvolume, disk[2]&0xffffffffL, disk[3]&0xffffffffL);
+        }
+
+        public GlusterFSDhtLayout build(){
+            long[] start=new long[ranges.size()];
+            long[] stop=new long[ranges.size()];
+            int[] subvolume=new int[ranges.size()];
+            for(int i=0;i<ranges.size();i++){
+                start[i]=ranges.get(i)[0];
+                stop[i]=ranges.get(i)[1];
+                subvolume[i]=(int) ranges.get(i)[2];
+            }
+            return new GlusterFSDhtLayout(start, stop, subvolume);
+        }
+    }
+
+    /* index of the subvolume owning the hash, or -1 where no known range covers it */
+    public int getSubvolume(int hash){
+        long h=hash&0xffffffffL;
+        for(int i=0;i<start.length;i++){
+            if(h>=start[i]&&h<=stop[i]) return subvolume[i];
+        }
+        return -1;
+    }
+
+    public int getSubvolume(String name,Pattern rsyncHashRegex){
+        return getSubvolume(hash(mungeName(name, rsyncHashRegex)));
+    }
+
+    /* true when the known ranges cover the whole hash space */
+    public boolean isComplete(){
+        long covered=0;
+        for(int i=0;i<start.length;i++){
+            covered+=stop[i]-start[i]+1;
+        }
+        return covered>=0x100000000L;
+    }
+
+    static String mungeName(String name,Pattern rsyncHashRegex){
+        if(rsyncHashRegex==null) return name;
+        Matcher m=rsyncHashRegex.matcher(name);
+        if(m.matches()&&m.groupCount()>0&&m.group(1)!=null) return m.group(1);
+        return name;
+    }
+
+    /*
+     * trusted.glusterfs.dht is four big endian words: count (commit hash on newer
+     * servers), hash type, range start, range stop.  Accepts the hex (0x...) and
+     * base64 (0s...) forms getfattr prints.
+     */
+    static int[] parseDiskLayout(String xattr) throws IOException{
+        if(xattr==null) throw new IOException("no layout");
+        byte[] raw;
+        String v=xattr.trim();
+        try{
+            if(v.startsWith("0x")||v.startsWith("0X")){
+                raw=Hex.decodeHex(v.substring(2).toCharArray());
+            }else if(v.startsWith("0s")||v.startsWith("0S")){
+                raw=Base64.decodeBase64(v.substring(2));
+            }else{
+                throw new IOException("unrecognized layout encoding: "+v);
+            }
+        }catch (DecoderException e){
+            throw new IOException("bad layout value: "+v);
+        }
+        if(raw.length!=16) throw new IOException("layout is "+raw.length+" bytes, expected 16");
+
+        int[] words=new int[4];
+        for(int i=0;i<4;i++){
+            words[i]=((raw[i*4]&0xff)<<24)|((raw[i*4+1]&0xff)<<16)|((raw[i*4+2]&0xff)<<8)|(raw[i*4+3]&0xff);
+        }
+        return words;
+    }
+
+    public static int hash(String name){
+        return hash(name.getBytes(UTF8));
+    }
+
+    /* port of gf_dm_hashfn, including its signed char handling of the tail bytes */
+    public static int hash(byte[] msg){
+        int len=msg.length;
+        int[] h=new int[]{0x9464a485, 0x542e1a94};
+        int[] array=new int[4];
+
+        int pad=len;
+        pad|=pad<<8;
+        pad|=pad<<16;
+
+        int fullBytes=len;
+        int fullWords=len/4;
+        int fullQuads=len/16;
+        int off=0;
+
+        for(int i=0;i<fullQuads;i++){
+            for(int j=0;j<4;j++){
+                array[j]=le32(msg, off);
+                off+=4;
+                fullWords--;
+                fullBytes-=4;
+            }
+            dmRound(DM_PARTROUNDS, array, h);
+        }
+
+        for(int j=0;j<4;j++){
+            if(fullWords>0){
+                array[j]=le32(msg, off);
+                off+=4;
+                fullWords--;
+                fullBytes-=4;
+            }else{
+                array[j]=pad;
+                while(fullBytes>0){
+                    array[j]<<=8;
+                    array[j]|=msg[len-fullBytes];
+                    fullBytes--;
+                }
+            }
+        }
+        dmRound(DM_FULLROUNDS, array, h);
+
+        return h[0]^h[1];
+    }
+
+    private static int le32(byte[] b,int off){
+        return (b[off]&0xff)|((b[off+1]&0xff)<<8)|((b[off+2]&0xff)<<16)|((b[off+3]&0xff)<<24);
+    }
+
+    private static void dmRound(int rounds,int[] array,int[] h){
+        int sum=0;
+        int b0=h[0];
+        int b1=h[1];
+        do{
+            sum+=DM_DELTA;
+            b0+=((b1<<4)+array[0])^(b1+sum)^((b1>>>5)+array[1]);
+            b1+=((b0<<4)+array[2])^(b0+sum)^((b0>>>5)+array[3]);
+        }while(--rounds>0);
+        h[0]+=b0;
+        h[1]+=b1;
+    }
+
+    public String toString(){
+        StringBuilder b=new StringBuilder("[");
+        for(int i=0;i<start.length;i++){
+            if(i>0) b.append(", ");
+            b.append(subvolume[i]).append(':').append(Long.toHexString(start[i])).append('-').append(Long.toHexString(stop[i]));
+        }
+        return b.append(']').toString();
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Places files without a per-file xattr lookup.  The layout of a directory is
+ * read once, from the copies of the directory on this node's bricks, and
+ * cached; files in it are then placed by hashing their names.
+ *
+ * Only ranges of subvolumes with a brick on this node can be read, so files
+ * hashing elsewhere get no answer and the caller falls back to pathinfo.
+ * DHT link files (a file renamed to a name hashing to another subvolume) are
+ * not followed: the answer is where the name hashes, which is a locality
+ * hint, not a guarantee.  Subvolumes that disperse or stripe files get no
+ * answer either; which of their bricks hold which blocks takes pathinfo.
+ */
+public class GlusterFSDhtLocator{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSDhtLocator.class);
+
+    public static final String DHT_XATTR="trusted.glusterfs.dht";
+    public static final String VOLFILE_KEY_PREFIX="fs.glusterfs.volume.volfile.";
+    public static final String LAYOUT_CACHE_SIZE_KEY="fs.glusterfs.dht.layout.cache.size";
+    public static final int DEFAULT_LAYOUT_CACHE_SIZE=1000;
+    public static final String LAYOUT_CACHE_TTL_KEY="fs.glusterfs.dht.layout.cache.ttl";
+    public static final long DEFAULT_LAYOUT_CACHE_TTL=60*1000;
+    public static final String RSYNC_HASH_REGEX_KEY="fs.glusterfs.dht.rsync.hash.regex";
+
+    static class CachedLayout{
+        final GlusterFSDhtLayout layout;
+        final long expires;
+
+        CachedLayout(GlusterFSDhtLayout layout,long expires){
+            this.layout=layout;
+            this.expires=expires;
+        }
+    }
+
+    private final GlusterFSVolfile volfile;
+    private final GlusterFSXattrReader reader;
+    private final Set<String> localHosts;
+    private final Pattern rsyncHashRegex;
+    private final long ttl;
+    private final LinkedHashMap<String,CachedLayout> layouts;
+
+    private final AtomicLong layoutReads=new AtomicLong();
+    private final AtomicLong placed=new AtomicLong();
+    private final AtomicLong unplaced=new AtomicLong();
+
+    public GlusterFSDhtLocator(GlusterFSVolfile volfile,GlusterFSXattrReader reader,Configuration conf){
+        this(volfile, reader, getLocalHosts(), conf.getInt(LAYOUT_CACHE_SIZE_KEY, DEFAULT_LAYOUT_CACHE_SIZE),
+                conf.getLong(LAYOUT_CACHE_TTL_KEY, DEFAULT_LAYOUT_CACHE_TTL),
+                conf.get(RSYNC_HASH_REGEX_KEY, GlusterFSDhtLayout.DEFAULT_RSYNC_HASH_REGEX));
+    }
+
+    public GlusterFSDhtLocator(GlusterFSVolfile volfile,GlusterFSXattrReader reader,Collection<String> localHosts,final int cacheSize,
+            long ttl,String rsyncHashRegex){
+        this.volfile=volfile;
+        this.reader=reader;
+        this.localHosts=new HashSet<String>(localHosts);
+        this.ttl=ttl;
+        this.rsyncHashRegex=(rsyncHashRegex==null||rsyncHashRegex.length()==0) ? null : Pattern.compile(rsyncHashRegex);
+        this.layouts=new LinkedHashMap<String,CachedLayout>(16, 0.75f, true){
+            private static final long serialVersionUID=1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String,CachedLayout> eldest){
+                return size()>cacheSize;
+            }
+        };
+    }
+
+    static Collection<String> getLocalHosts(){
+        HashSet<String> hosts=new HashSet<String>();
+        try{
+            InetAddress local=InetAddress.getLocalHost();
+            hosts.add(local.getHostName());
+            hosts.add(local.getCanonicalHostName());
+            hosts.add(local.getHostAddress());
+            int dot=local.getHostName().indexOf('.');
+            if(dot>0) hosts.add(local.getHostName().substring(0, dot));
+        }catch (IOException e){
+            log.warn("Can't resolve local host name, DHT placement disabled: "+e);
+        }
+        return hosts;
+    }
+
+    /*
+     * Hosts holding the file at this path (relative to the volume root), or null
+     * if the placement can't be worked out from the layouts readable here.
+     */
+    public String[] getHosts(String volumePath){
+        int slash=volumePath.lastIndexOf('/');
+        String dir=slash<=0 ? "/" : volumePath.substring(0, slash);
+        String name=volumePath.substring(slash+1);
+
+        GlusterFSDhtLayout layout=getLayout(dir);
+        int subvolume=layout==null ? -1 : layout.getSubvolume(name, rsyncHashRegex);
+        if(subvolume<0||!volfile.holdsWholeFiles(subvolume)){
+            unplaced.incrementAndGet();
+            return null;
+        }
+        placed.incrementAndGet();
+        return volfile.getHosts(subvolume);
+    }
+
+    GlusterFSDhtLayout getLayout(String dir){
+        synchronized(layouts){
+            CachedLayout c=layouts.get(dir);
+            if(c!=null&&(ttl<=0||System.currentTimeMillis()<=c.expires)) return c.layout;
+        }
+
+        GlusterFSDhtLayout layout=readLayout(dir);
+        synchronized(layouts){
+            layouts.put(dir, new CachedLayout(layout, System.currentTimeMillis()+ttl));
+        }
+        return layout;
+    }
+
+    /* one xattr read per subvolume with a local brick */
+    private GlusterFSDhtLayout readLayout(String dir){
+        layoutReads.incrementAndGet();
+        GlusterFSDhtLayout.Builder builder=new GlusterFSDhtLayout.Builder();
+        for(int i=0;i<volfile.size();i++){
+            List<GlusterFSBrickClass> bricks=volfile.getBricks(i);
+            for(GlusterFSBrickClass brick : bricks){
+                String exported=localPath(brick);
+                if(exported==null) continue;
+                try{
+                    String value=reader.getXattr(new File(exported, dir).getPath(), DHT_XATTR);
+                    if(value==null) continue;
+                    builder.add(i, value);
+                    break;
+                }catch (IOException e){
+                    log.debug("No DHT layout for "+dir+" on "+brick.host+":"+exported+": "+e.getMessage());
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private String localPath(GlusterFSBrickClass brick){
+        for(String host : localHosts){
+            String path=brick.brickIsLocal(host);
+            if(path!=null) return path;
+        }
+        return null;
+    }
+
+    public void invalidate(String dir){
+        synchronized(layouts){
+            layouts.remove(dir);
+        }
+    }
+
+    public long getLayoutReads(){
+        return layoutReads.get();
+    }
+
+    public long getPlaced(){
+        return placed.get();
+    }
+
+    public long getUnplaced(){
+        return unplaced.get();
+    }
+
+    public String toString(){
+        return volfile.size()+" subvolumes, layout reads="+getLayoutReads()+" placed="+getPlaced()+" unplaced="+getUnplaced();
+    }
+}
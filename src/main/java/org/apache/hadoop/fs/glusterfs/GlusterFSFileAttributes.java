@@ -0,0 +1,110 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * POSIX attributes read through the JDK's unix view, which also carries the
+ * mode bits the POSIX view leaves out (the sticky bit).  Both come from the
+ * same single stat.
+ */
+class GlusterFSFileAttributes implements PosixFileAttributes{
+
+    static final String ATTRIBUTES="unix:mode,size,lastModifiedTime,lastAccessTime,creationTime,owner,group,permissions,"
+            +"isRegularFile,isDirectory,isSymbolicLink,isOther,fileKey";
+
+    private final Map<String,Object> attrs;
+
+    private GlusterFSFileAttributes(Map<String,Object> attrs){
+        this.attrs=attrs;
+    }
+
+    /* throws UnsupportedOperationException where the platform has no unix view */
+    static GlusterFSFileAttributes read(Path p) throws IOException{
+        return new GlusterFSFileAttributes(Files.readAttributes(p, ATTRIBUTES));
+    }
+
+    public int mode(){
+        return (Integer) attrs.get("mode");
+    }
+
+    public boolean isSticky(){
+        return (mode()&01000)!=0;
+    }
+
+    public UserPrincipal owner(){
+        return (UserPrincipal) attrs.get("owner");
+    }
+
+    public GroupPrincipal group(){
+        return (GroupPrincipal) attrs.get("group");
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<PosixFilePermission> permissions(){
+        return (Set<PosixFilePermission>) attrs.get("permissions");
+    }
+
+    public FileTime lastModifiedTime(){
+        return (FileTime) attrs.get("lastModifiedTime");
+    }
+
+    public FileTime lastAccessTime(){
+        return (FileTime) attrs.get("lastAccessTime");
+    }
+
+    public FileTime creationTime(){
+        return (FileTime) attrs.get("creationTime");
+    }
+
+    public boolean isRegularFile(){
+        return (Boolean) attrs.get("isRegularFile");
+    }
+
+    public boolean isDirectory(){
+        return (Boolean) attrs.get("isDirectory");
+    }
+
+    public boolean isSymbolicLink(){
+        return (Boolean) attrs.get("isSymbolicLink");
+    }
+
+    public boolean isOther(){
+        return (Boolean) attrs.get("isOther");
+    }
+
+    public long size(){
+        return (Long) attrs.get("size");
+    }
+
+    public Object fileKey(){
+        return attrs.get("fileKey");
+    }
+}
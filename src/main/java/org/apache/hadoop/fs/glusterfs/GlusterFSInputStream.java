@@ -0,0 +1,286 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.CanSetReadahead;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.HasFileDescriptor;
+
+/*
+ * Input stream over a FileChannel of a file on the mount.  Positional reads
+ * are pread calls on the channel: they take no lock and don't move the
+ * stream, so any number of threads can read one open file at once, as HBase
+ * and columnar footer readers do.  Sequential reads are buffered by up to the
+ * readahead, in a buffer taken from the volume's pool on the first of them,
+ * and reads into a ByteBuffer go straight to the channel.
+ *
+ * Interrupting a thread in a channel read closes the channel for every thread
+ * of the stream.  The interrupted read fails as interrupted; the file is then
+ * reopened, and the reads of other threads carry on on the new channel.
+ */
+public class GlusterFSInputStream extends FSInputStream implements ByteBufferReadable, CanSetReadahead, HasFileDescriptor{
+
+    private final File file;
+    private final Object reopenLock=new Object();
+    private volatile FileInputStream in;
+    private volatile FileChannel channel;
+    private final FileSystem.Statistics statistics;
+    final GlusterFSBufferPool pool;
+    private final int defaultReadahead;
+    private int readahead;
+
+    /* bytes of the file from bufferStart, read ahead of the position; empty until the first fill */
+    private final ByteBuffer empty=ByteBuffer.allocate(0);
+    private ByteBuffer buffer=empty;
+    private long bufferStart=0;
+    private long position=0;
+    private volatile boolean closed=false;
+
+    public GlusterFSInputStream(File file,int readahead,FileSystem.Statistics statistics,GlusterFSBufferPool pool) throws IOException{
+        this.file=file;
+        this.in=new FileInputStream(file);
+        this.channel=in.getChannel();
+        this.statistics=statistics;
+        this.pool=pool;
+        this.defaultReadahead=Math.max(0, readahead);
+        this.readahead=defaultReadahead;
+    }
+
+    void checkOpen() throws IOException{
+        if(closed) throw new IOException("Stream is closed");
+    }
+
+    void count(int n){
+        if(n>0&&statistics!=null) statistics.incrementBytesRead(n);
+    }
+
+    /* bytes read into dst at position, 0 at the end of the file */
+    int pread(ByteBuffer dst,long at) throws IOException{
+        int total=0;
+        FileChannel c=channel;
+        while(dst.hasRemaining()){
+            int n;
+            try{
+                n=c.read(dst, at+total);
+            }catch (ClosedChannelException e){
+                c=reopen(c, e);
+                continue;
+            }
+            if(n<0) break;
+            total+=n;
+        }
+        return total;
+    }
+
+    long size() throws IOException{
+        FileChannel c=channel;
+        while(true){
+            try{
+                return c.size();
+            }catch (ClosedChannelException e){
+                c=reopen(c, e);
+            }
+        }
+    }
+
+    /*
+     * a channel closed under a read by an interrupt: the interrupted thread gets
+     * the interrupt, the others a new channel to retry on.
+     */
+    private FileChannel reopen(FileChannel broken,ClosedChannelException e) throws IOException{
+        synchronized(reopenLock){
+            checkOpen();
+            if(channel==broken){
+                FileInputStream old=in;
+                in=new FileInputStream(file);
+                channel=in.getChannel();
+                old.close();
+            }
+        }
+        if(e instanceof ClosedByInterruptException||Thread.currentThread().isInterrupted()){
+            InterruptedIOException interrupted=new InterruptedIOException("Interrupted reading "+file);
+            interrupted.initCause(e);
+            throw interrupted;
+        }
+        return channel;
+    }
+
+    public synchronized void seek(long pos) throws IOException{
+        checkOpen();
+        if(pos<0) throw new EOFException("Cannot seek to negative offset "+pos);
+        /* within the buffer only the buffer's position moves */
+        if(pos>=bufferStart&&pos<=bufferStart+buffer.limit()){
+            buffer.position((int) (pos-bufferStart));
+        }else{
+            buffer.limit(0);
+            bufferStart=pos;
+        }
+        position=pos;
+    }
+
+    public synchronized long getPos() throws IOException{
+        return position;
+    }
+
+    public boolean seekToNewSource(long targetPos) throws IOException{
+        return false;
+    }
+
+    public synchronized int available() throws IOException{
+        checkOpen();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, size()-position));
+    }
+
+    /* refills the buffer from the position, false at the end of the file */
+    private boolean fill() throws IOException{
+        if(readahead==0) return false;
+        if(buffer==empty) buffer=pool.acquire(readahead);
+        buffer.clear();
+        buffer.limit(readahead);
+        bufferStart=position;
+        int n=pread(buffer, position);
+        buffer.flip();
+        return n>0;
+    }
+
+    public synchronized int read() throws IOException{
+        checkOpen();
+        if(!buffer.hasRemaining()&&!fill()){
+            if(readahead>0) return -1;
+            byte[] one=new byte[1];
+            return read(one, 0, 1)<0 ? -1 : one[0]&0xff;
+        }
+        position++;
+        count(1);
+        return buffer.get()&0xff;
+    }
+
+    public synchronized int read(byte[] b,int off,int len) throws IOException{
+        checkOpen();
+        if(len==0) return 0;
+        return read(ByteBuffer.wrap(b, off, len));
+    }
+
+    /* what is buffered, then directly from the channel for reads longer than the buffer */
+    public synchronized int read(ByteBuffer dst) throws IOException{
+        checkOpen();
+        int want=dst.remaining();
+        if(want==0) return 0;
+        int total=drain(dst);
+        if(dst.hasRemaining()){
+            if(dst.remaining()>=readahead){
+                int n=pread(dst, position);
+                position+=n;
+                total+=n;
+                buffer.limit(0);
+                bufferStart=position;
+            }else if(fill()){
+                total+=drain(dst);
+            }
+        }
+        count(total);
+        return total==0 ? -1 : total;
+    }
+
+    private int drain(ByteBuffer dst){
+        int n=Math.min(buffer.remaining(), dst.remaining());
+        if(n==0) return 0;
+        ByteBuffer slice=buffer.duplicate();
+        slice.limit(slice.position()+n);
+        dst.put(slice);
+        buffer.position(buffer.position()+n);
+        position+=n;
+        return n;
+    }
+
+    public synchronized long skip(long n) throws IOException{
+        if(n<=0) return 0;
+        long target=Math.min(position+n, Math.max(position, size()));
+        long skipped=target-position;
+        seek(target);
+        return skipped;
+    }
+
+    /* a pread, no lock taken and the stream's position is left alone */
+    public int read(long pos,byte[] b,int off,int len) throws IOException{
+        checkOpen();
+        if(len==0) return 0;
+        int n=pread(ByteBuffer.wrap(b, off, len), pos);
+        count(n);
+        return n==0 ? -1 : n;
+    }
+
+    public void readFully(long pos,byte[] b,int off,int len) throws IOException{
+        checkOpen();
+        int n=pread(ByteBuffer.wrap(b, off, len), pos);
+        count(n);
+        if(n<len) throw new EOFException("End of file reached before reading fully.");
+    }
+
+    /* bytes read ahead of sequential reads; null restores the buffer size the file was opened with */
+    public synchronized void setReadahead(Long readahead) throws IOException{
+        if(readahead!=null&&readahead<0) throw new IllegalArgumentException("Negative readahead "+readahead);
+        int size=readahead==null ? defaultReadahead : (int) Math.min(Integer.MAX_VALUE-8, readahead);
+        if(size==this.readahead) return;
+        releaseBuffer();
+        this.readahead=size;
+        bufferStart=position;
+    }
+
+    public synchronized int getReadahead(){
+        return readahead;
+    }
+
+    private void releaseBuffer(){
+        if(buffer!=empty) pool.release(buffer);
+        buffer=empty;
+    }
+
+    public FileDescriptor getFileDescriptor() throws IOException{
+        return in.getFD();
+    }
+
+    public boolean markSupported(){
+        return false;
+    }
+
+    public void close() throws IOException{
+        closed=true;
+        synchronized(this){
+            releaseBuffer();
+        }
+        synchronized(reopenLock){
+            in.close();
+        }
+    }
+}
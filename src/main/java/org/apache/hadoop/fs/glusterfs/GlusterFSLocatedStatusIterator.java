@@ -0,0 +1,203 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Directory entries with their block locations.  Entries are taken from the
+ * listing a batch at a time and the batches located on the volume's location
+ * executor, a few batches ahead of the caller; entries are handed out in
+ * listing order as each batch completes.
+ *
+ * A batch whose lookup fails is not an error for the listing: its files get
+ * a single location without hosts, which schedulers treat as "anywhere".
+ * Closing the iterator closes the listing, for callers that stop early.
+ */
+public class GlusterFSLocatedStatusIterator implements RemoteIterator<LocatedFileStatus>, Closeable{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSLocatedStatusIterator.class);
+
+    private final GlusterVolume volume;
+    private final RemoteIterator<FileStatus> listing;
+    private final PathFilter filter;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final int window;
+
+    private final ArrayDeque<Batch> pending=new ArrayDeque<Batch>();
+    private Batch current=null;
+    private BlockLocation[][] locations=null;
+    private int next=0; // next entry of the current batch
+
+    public GlusterFSLocatedStatusIterator(GlusterVolume volume,RemoteIterator<FileStatus> listing,PathFilter filter,
+            ExecutorService executor,int batchSize,int window) throws IOException{
+        this.volume=volume;
+        this.listing=listing;
+        this.filter=filter;
+        this.executor=executor;
+        this.batchSize=Math.max(1, batchSize);
+        this.window=Math.max(1, window);
+        fill();
+    }
+
+    private static class Batch{
+        final FileStatus[] entries;
+        Future<BlockLocation[][]> locations;
+
+        Batch(FileStatus[] entries){
+            this.entries=entries;
+        }
+    }
+
+    /* the next batches of accepted entries, until the window is full or the listing ends */
+    private void fill() throws IOException{
+        while(pending.size()<window){
+            ArrayList<FileStatus> entries=new ArrayList<FileStatus>(batchSize);
+            while(entries.size()<batchSize&&listing.hasNext()){
+                FileStatus s=listing.next();
+                if(filter.accept(s.getPath())) entries.add(s);
+            }
+            if(entries.isEmpty()) return;
+
+            final Batch batch=new Batch(entries.toArray(new FileStatus[entries.size()]));
+            Callable<BlockLocation[][]> lookup=new Callable<BlockLocation[][]>(){
+                public BlockLocation[][] call() throws IOException{
+                    return locate(batch.entries);
+                }
+            };
+            try{
+                batch.locations=executor.submit(lookup);
+            }catch (RejectedExecutionException e){
+                /* volume closing, look up in the caller */
+                batch.locations=new Completed(batch.entries);
+            }
+            pending.add(batch);
+        }
+    }
+
+    /* files only, directories have no locations */
+    private BlockLocation[][] locate(FileStatus[] batch) throws IOException{
+        int files=0;
+        for(FileStatus s : batch)
+            if(!s.isDirectory()) files++;
+        FileStatus[] toLocate=new FileStatus[files];
+        for(int i=0,j=0;i<batch.length;i++)
+            if(!batch[i].isDirectory()) toLocate[j++]=batch[i];
+
+        BlockLocation[][] located=files==0 ? new BlockLocation[0][] : volume.getFileBlockLocations(toLocate);
+        BlockLocation[][] result=new BlockLocation[batch.length][];
+        for(int i=0,j=0;i<batch.length;i++)
+            if(!batch[i].isDirectory()) result[i]=located[j++];
+        return result;
+    }
+
+    public boolean hasNext() throws IOException{
+        return (current!=null&&next<current.entries.length)||!pending.isEmpty();
+    }
+
+    public LocatedFileStatus next() throws IOException{
+        if(!hasNext()) throw new NoSuchElementException("No more entries");
+
+        if(current==null||next>=current.entries.length){
+            current=pending.poll();
+            locations=take(current);
+            next=0;
+            fill();
+        }
+
+        FileStatus status=current.entries[next];
+        BlockLocation[] located=locations[next];
+        next++;
+        if(located==null&&!status.isDirectory()) located=hostless(status);
+        return new LocatedFileStatus(status, located);
+    }
+
+    private BlockLocation[][] take(Batch batch) throws IOException{
+        try{
+            return batch.locations.get();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted listing block locations");
+        }catch (ExecutionException e){
+            log.warn("GLUSTERFS: Problem getting block locations for "+batch.entries.length+" entries, listing them without hosts: "+e.getCause());
+            return new BlockLocation[batch.entries.length][];
+        }
+    }
+
+    public void close() throws IOException{
+        if(listing instanceof Closeable) ((Closeable) listing).close();
+    }
+
+    static BlockLocation[] hostless(FileStatus status){
+        return new BlockLocation[]{ new BlockLocation(null, new String[0], 0, status.getLen()) };
+    }
+
+    /* a lookup done in the calling thread */
+    private class Completed implements Future<BlockLocation[][]>{
+        private final FileStatus[] batch;
+
+        Completed(FileStatus[] batch){
+            this.batch=batch;
+        }
+
+        public BlockLocation[][] get() throws ExecutionException{
+            try{
+                return locate(batch);
+            }catch (Exception e){
+                throw new ExecutionException(e);
+            }
+        }
+
+        public BlockLocation[][] get(long timeout,java.util.concurrent.TimeUnit unit) throws ExecutionException{
+            return get();
+        }
+
+        public boolean cancel(boolean mayInterrupt){
+            return false;
+        }
+
+        public boolean isCancelled(){
+            return false;
+        }
+
+        public boolean isDone(){
+            return true;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.hadoop.fs.Syncable;
+
+/*
+ * Output stream that writes behind the writer.  Full buffers are queued, in
+ * order, for the write-behind's flusher threads, and the writer goes on
+ * filling the next; it waits only when as many buffers as allowed are queued.
+ * flush and hflush return once everything written so far is in the file.  The
+ * first failed write is kept, the buffers after it dropped, and every later
+ * call but a repeated close throws it.  Buffers are taken from the volume's
+ * pool as needed, written to the file's channel as they are, and given back
+ * on close.
+ */
+public class GlusterFSOutputStream extends OutputStream implements Syncable{
+
+    private final File file;
+    private final FileOutputStream out;
+    private final FileChannel channel;
+    private final GlusterFSBufferPool pool;
+    private final GlusterFSWriteBehind writeBehind;
+    private final int bufferSize;
+
+    /* full buffers in file order, the first being written; written ones for reuse */
+    private final ArrayDeque<ByteBuffer> queued=new ArrayDeque<ByteBuffer>();
+    private final ArrayDeque<ByteBuffer> free=new ArrayDeque<ByteBuffer>();
+    private ByteBuffer current=null;
+    private int allocated=0;
+    private boolean flushing=false;
+    private IOException failure=null;
+    private boolean closed=false;
+
+    private final Runnable flusher=new Runnable(){
+        public void run(){
+            writeQueued();
+        }
+    };
+
+    public GlusterFSOutputStream(File file,boolean append,int bufferSize,GlusterFSBufferPool pool,GlusterFSWriteBehind writeBehind) throws IOException{
+        this.file=file;
+        this.out=new FileOutputStream(file, append);
+        this.channel=out.getChannel();
+        this.pool=pool;
+        this.writeBehind=writeBehind;
+        this.bufferSize=Math.max(4096, bufferSize);
+    }
+
+    private void check() throws IOException{
+        if(closed) throw new IOException("Stream is closed");
+        if(failure!=null) throw new IOException("Write behind to "+file+" failed", failure);
+    }
+
+    public synchronized void write(int b) throws IOException{
+        check();
+        if(current==null) current=buffer();
+        current.put((byte) b);
+        if(!current.hasRemaining()) queue();
+    }
+
+    public synchronized void write(byte[] b,int off,int len) throws IOException{
+        check();
+        while(len>0){
+            if(current==null) current=buffer();
+            int n=Math.min(len, current.remaining());
+            current.put(b, off, n);
+            off+=n;
+            len-=n;
+            if(!current.hasRemaining()) queue();
+        }
+    }
+
+    /* a buffer to fill, waiting for one to be written if as many as allowed are queued */
+    private ByteBuffer buffer() throws IOException{
+        if(free.isEmpty()&&allocated>writeBehind.getBuffers()){
+            writeBehind.stalled();
+            while(free.isEmpty()){
+                await();
+                check();
+            }
+        }
+        if(!free.isEmpty()) return free.pollFirst();
+        allocated++;
+        return pool.acquire(bufferSize);
+    }
+
+    private void queue(){
+        current.flip();
+        queued.addLast(current);
+        current=null;
+        if(flushing) return;
+        flushing=true;
+        try{
+            writeBehind.execute(flusher);
+        }catch (RejectedExecutionException e){
+            /* the volume is closed, write in the caller */
+            writeQueued();
+        }
+    }
+
+    /* writes queued buffers until there are none, or one fails */
+    private void writeQueued(){
+        while(true){
+            ByteBuffer b;
+            synchronized(this){
+                b=queued.peekFirst();
+                if(b==null||failure!=null){
+                    while(!queued.isEmpty())
+                        recycle(queued.pollFirst());
+                    flushing=false;
+                    notifyAll();
+                    return;
+                }
+            }
+            int n=b.remaining();
+            try{
+                while(b.hasRemaining())
+                    channel.write(b);
+                writeBehind.written(n);
+            }catch (IOException e){
+                writeBehind.failed();
+                synchronized(this){
+                    failure=e;
+                }
+            }
+            synchronized(this){
+                recycle(queued.pollFirst());
+                notifyAll();
+            }
+        }
+    }
+
+    /* a written buffer is kept for the next, or given back once the stream is closed */
+    private void recycle(ByteBuffer b){
+        if(closed){
+            pool.release(b);
+            return;
+        }
+        b.clear();
+        free.addLast(b);
+    }
+
+    private void await() throws IOException{
+        try{
+            wait();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for writes to "+file);
+        }
+    }
+
+    /* queues what is buffered and waits for it all to be written */
+    public synchronized void flush() throws IOException{
+        check();
+        if(current!=null&&current.position()>0) queue();
+        while(flushing)
+            await();
+        check();
+    }
+
+    public void hflush() throws IOException{
+        flush();
+    }
+
+    @Deprecated
+    public void sync() throws IOException{
+        hflush();
+    }
+
+    public synchronized void hsync() throws IOException{
+        flush();
+        out.getFD().sync();
+    }
+
+    public synchronized void close() throws IOException{
+        if(closed) return;
+        IOException error=null;
+        try{
+            flush();
+        }catch (IOException e){
+            error=e;
+        }
+        closed=true;
+        if(current!=null) pool.release(current);
+        current=null;
+        while(!free.isEmpty())
+            pool.release(free.pollFirst());
+        try{
+            out.close();
+        }catch (IOException e){
+            if(error==null) error=e;
+        }
+        if(error!=null) throw error;
+    }
+}
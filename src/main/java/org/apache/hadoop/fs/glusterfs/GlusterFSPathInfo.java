@@ -0,0 +1,375 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.BlockLocation;
+
+/*
+ * The translator tree in trusted.glusterfs.pathinfo, e.g.
+ *
+ *   (<DISTRIBUTE:vol-dht> (<STRIPE:vol-stripe-0:[131072]> (<REPLICATE:vol-replicate-0>
+ *       <POSIX(/b1):host1:/b1/f> <POSIX(/b2):host2:/b2/f>) (<REPLICATE:vol-replicate-1> ...)))
+ *
+ * Stripe children hold the file's stripe units round robin.  Disperse (erasure
+ * coded) children each hold a fragment of every unit, any data-count of them
+ * being enough to read it.  Every other translator's children each hold all
+ * of it.  Some servers leave closing parentheses off the end, so input ending
+ * inside a node is accepted.
+ */
+public class GlusterFSPathInfo{
+
+    public static final String DISTRIBUTE="DISTRIBUTE";
+    public static final String STRIPE="STRIPE";
+    public static final String REPLICATE="REPLICATE";
+    public static final String DISPERSE="DISPERSE";
+    public static final String EC="EC";
+    public static final String POSIX="POSIX";
+
+    static class Node{
+        final String type;
+        final String name;
+        final int stripeSize;
+        final List<Node> children=new ArrayList<Node>();
+        GlusterFSBrickClass brick=null;
+
+        Node(String type,String name,int stripeSize){
+            this.type=type;
+            this.name=name;
+            this.stripeSize=stripeSize;
+        }
+    }
+
+    private final String value;
+    private int pos=0;
+    private final Node root;
+    private final List<GlusterFSBrickClass> bricks=new ArrayList<GlusterFSBrickClass>();
+    private final Map<String,Integer> redundancy;
+    private int stripeUnit=0;
+    private String[] hosts=null;
+
+    public GlusterFSPathInfo(String pathinfo) throws IOException{
+        this(pathinfo, null);
+    }
+
+    /*
+     * redundancy maps disperse translator names to their redundancy count (from
+     * the volfile), so only data fragment hosts are reported.  Without it every
+     * fragment host is.
+     */
+    public GlusterFSPathInfo(String pathinfo,Map<String,Integer> redundancy) throws IOException{
+        this.value=pathinfo;
+        this.redundancy=redundancy==null ? Collections.<String,Integer>emptyMap() : redundancy;
+        ArrayList<Node> top=new ArrayList<Node>();
+        skipSpace();
+        while(pos<value.length()){
+            if(value.charAt(pos)==')'){
+                pos++;
+            }else{
+                top.add(parseNode());
+            }
+            skipSpace();
+        }
+        if(top.size()==0) throw new IOException("empty pathinfo");
+
+        if(top.size()==1){
+            root=top.get(0);
+        }else{
+            root=new Node(DISTRIBUTE, null, 0);
+            root.children.addAll(top);
+        }
+        collectBricks(root, 0, 0, -1);
+        if(bricks.size()==0) throw new IOException("no bricks in pathinfo: "+pathinfo);
+        for(GlusterFSBrickClass b : bricks){
+            if(b.stripeSize>0&&(stripeUnit==0||b.stripeSize<stripeUnit)) stripeUnit=b.stripeSize;
+        }
+    }
+
+    /* null where the value isn't a pathinfo tree */
+    public static GlusterFSPathInfo parse(String pathinfo){
+        return parse(pathinfo, null);
+    }
+
+    public static GlusterFSPathInfo parse(String pathinfo,Map<String,Integer> redundancy){
+        if(pathinfo==null) return null;
+        try{
+            return new GlusterFSPathInfo(pathinfo, redundancy);
+        }catch (IOException e){
+            return null;
+        }
+    }
+
+    private Node parseNode() throws IOException{
+        char c=value.charAt(pos);
+        if(c=='<') return parseHeader();
+        if(c!='(') throw new IOException("unexpected '"+c+"' at "+pos+" in pathinfo: "+value);
+
+        pos++;
+        skipSpace();
+        Node node=parseHeader();
+        while(true){
+            skipSpace();
+            if(pos>=value.length()) break;
+            if(value.charAt(pos)==')'){
+                pos++;
+                break;
+            }
+            node.children.add(parseNode());
+        }
+        return node;
+    }
+
+    /*
+     * <TYPE:name>, <STRIPE:name:[size]> or <POSIX(export):host:path>.  Parsed in
+     * place, the only strings made are brick paths, disperse names (needed for
+     * their redundancy) and host names not yet in the host table.
+     */
+    private Node parseHeader() throws IOException{
+        if(pos>=value.length()||value.charAt(pos)!='<') throw new IOException("expected '<' at "+pos+" in pathinfo: "+value);
+        int end=value.indexOf('>', pos);
+        if(end<0) throw new IOException("unterminated translator at "+pos+" in pathinfo: "+value);
+        int start=pos+1;
+        pos=end+1;
+
+        if(value.startsWith(POSIX, start)&&value.charAt(start+POSIX.length())=='('){
+            int close=value.indexOf("):", start);
+            int colon=(close<0||close>end) ? -1 : value.indexOf(':', close+2);
+            if(colon<0||colon>end) throw new IOException("bad brick in pathinfo: "+value.substring(start, end));
+            Node leaf=new Node(POSIX, null, 0);
+            leaf.brick=new GlusterFSBrickClass(internHost(value, close+2, colon), value.substring(colon+1, end));
+            return leaf;
+        }
+
+        int colon=value.indexOf(':', start);
+        if(colon<0||colon>end) colon=end;
+        String type=type(value, start, colon);
+
+        int stripeSize=0;
+        int nameEnd=end;
+        if(end-colon>3&&value.charAt(end-1)==']'){
+            int bracket=value.lastIndexOf(":[", end);
+            if(bracket>colon){
+                stripeSize=parseInt(value, bracket+2, end-1);
+                nameEnd=bracket;
+            }
+        }
+        String name=(DISPERSE==type||EC==type)&&colon<nameEnd ? value.substring(colon+1, nameEnd) : null;
+        return new Node(type, name, stripeSize);
+    }
+
+    /* the type constants for known translators, so they compare by reference */
+    private static String type(String s,int start,int end){
+        int len=end-start;
+        if(len==DISTRIBUTE.length()&&s.startsWith(DISTRIBUTE, start)) return DISTRIBUTE;
+        if(len==REPLICATE.length()&&s.startsWith(REPLICATE, start)) return REPLICATE;
+        if(len==STRIPE.length()&&s.startsWith(STRIPE, start)) return STRIPE;
+        if(len==DISPERSE.length()&&s.startsWith(DISPERSE, start)) return DISPERSE;
+        if(len==EC.length()&&s.startsWith(EC, start)) return EC;
+        return s.substring(start, end);
+    }
+
+    private int parseInt(String s,int start,int end) throws IOException{
+        if(start>=end) throw new IOException("bad stripe size in pathinfo: "+value);
+        long n=0;
+        for(int i=start;i<end;i++){
+            char c=s.charAt(i);
+            if(c<'0'||c>'9'||n>Integer.MAX_VALUE) throw new IOException("bad stripe size in pathinfo: "+value);
+            n=n*10+(c-'0');
+        }
+        if(n>Integer.MAX_VALUE) throw new IOException("bad stripe size in pathinfo: "+value);
+        return (int) n;
+    }
+
+    /*
+     * Host names repeat across every file of a volume, so parses share one copy.
+     * Direct mapped: a collision just replaces the slot, and racing writers
+     * only cost an extra string.
+     */
+    private static final String[] HOSTS=new String[1024];
+
+    static String internHost(String s,int start,int end){
+        int h=0;
+        for(int i=start;i<end;i++)
+            h=31*h+s.charAt(i);
+        int slot=(h^(h>>>16))&(HOSTS.length-1);
+        String host=HOSTS[slot];
+        if(host!=null&&host.length()==end-start&&s.startsWith(host, start)) return host;
+        host=s.substring(start, end);
+        HOSTS[slot]=host;
+        return host;
+    }
+
+    private void skipSpace(){
+        while(pos<value.length()&&Character.isWhitespace(value.charAt(pos)))
+            pos++;
+    }
+
+    /* fills in the stripe layout of the nearest striping ancestor */
+    private void collectBricks(Node node,int stripeSize,int nrStripes,int switchCount){
+        if(node.brick!=null){
+            node.brick.stripeSize=stripeSize;
+            node.brick.nrStripes=nrStripes;
+            node.brick.switchCount=switchCount;
+            node.brick.isChunked=stripeSize>0;
+            bricks.add(node.brick);
+            return;
+        }
+        if(isStripe(node)){
+            stripeSize=node.stripeSize;
+            nrStripes=node.children.size();
+            int leaves=countLeaves(node)/Math.max(1, nrStripes);
+            switchCount=leaves>1 ? leaves : -1;
+        }
+        for(Node child : node.children)
+            collectBricks(child, stripeSize, nrStripes, switchCount);
+    }
+
+    private static int countLeaves(Node node){
+        if(node.brick!=null) return 1;
+        int n=0;
+        for(Node child : node.children)
+            n+=countLeaves(child);
+        return n;
+    }
+
+    private static boolean isStripe(Node node){
+        return STRIPE==node.type&&node.stripeSize>0&&node.children.size()>0;
+    }
+
+    private static boolean isDisperse(Node node){
+        return DISPERSE==node.type||EC==node.type;
+    }
+
+    public List<GlusterFSBrickClass> getBricks(){
+        return bricks;
+    }
+
+    /* smallest stripe unit in the tree, 0 if nothing is striped */
+    public int getStripeSize(){
+        return stripeUnit;
+    }
+
+    /*
+     * Distinct hosts holding the byte at offset, in pathinfo order.  Without
+     * striping that's the same for every offset, and the same array is returned.
+     */
+    public String[] getHosts(long offset){
+        if(stripeUnit==0&&this.hosts!=null) return this.hosts;
+        LinkedHashSet<String> hosts=new LinkedHashSet<String>();
+        collectHosts(root, offset, hosts);
+        String[] result=hosts.toArray(new String[hosts.size()]);
+        if(stripeUnit==0) this.hosts=result;
+        return result;
+    }
+
+    /*
+     * Distinct hosts holding any byte of [offset, offset+len), those of the first
+     * stripe unit first.  Stops early once every brick's host is in.
+     */
+    public String[] getHosts(long offset,long len){
+        if(stripeUnit==0||len<=0) return getHosts(offset);
+        LinkedHashSet<String> brickHosts=new LinkedHashSet<String>();
+        for(GlusterFSBrickClass b : bricks)
+            brickHosts.add(b.host);
+        int all=brickHosts.size();
+        LinkedHashSet<String> hosts=new LinkedHashSet<String>();
+        long end=offset+len;
+        for(long off=offset;off<end&&hosts.size()<all;off=(off/stripeUnit+1)*stripeUnit)
+            collectHosts(root, off, hosts);
+        return hosts.toArray(new String[hosts.size()]);
+    }
+
+    private void collectHosts(Node node,long offset,LinkedHashSet<String> hosts){
+        if(node.brick!=null){
+            hosts.add(node.brick.host);
+            return;
+        }
+        if(isStripe(node)){
+            collectHosts(node.children.get((int) ((offset/node.stripeSize)%node.children.size())), offset, hosts);
+            return;
+        }
+        if(isDisperse(node)){
+            hosts.addAll(getFragmentHosts(node, offset));
+            return;
+        }
+        for(Node child : node.children)
+            collectHosts(child, offset, hosts);
+    }
+
+    /*
+     * Hosts of the data fragments, those holding the most fragments first, as
+     * they serve the most of a read locally.  The redundancy count of fragments
+     * at the end are left out when the redundancy is known.
+     */
+    private List<String> getFragmentHosts(Node node,long offset){
+        Integer r=node.name==null ? null : redundancy.get(node.name);
+        int data=node.children.size()-(r==null ? 0 : r.intValue());
+        if(data<=0) data=node.children.size();
+
+        final LinkedHashMap<String,Integer> fragments=new LinkedHashMap<String,Integer>();
+        for(int i=0;i<data;i++){
+            LinkedHashSet<String> child=new LinkedHashSet<String>();
+            collectHosts(node.children.get(i), offset, child);
+            for(String host : child){
+                Integer n=fragments.get(host);
+                fragments.put(host, n==null ? 1 : n+1);
+            }
+        }
+
+        /* stable, so ties stay in brick order */
+        ArrayList<String> hosts=new ArrayList<String>(fragments.keySet());
+        Collections.sort(hosts, new Comparator<String>(){
+            public int compare(String a,String b){
+                return fragments.get(b)-fragments.get(a);
+            }
+        });
+        return hosts;
+    }
+
+    /*
+     * One location per block of blockSize, with the hosts holding any part of
+     * it; on striped files that is every brick holding one of its stripe units.
+     */
+    public BlockLocation[] getBlockLocations(long start,long len,long blockSize){
+        if(len<=0||blockSize<=0) return new BlockLocation[]{ new BlockLocation(null, getHosts(start, len), start, len) };
+
+        long end=start+len;
+        BlockLocation[] blocks=new BlockLocation[(int) ((end-1)/blockSize-start/blockSize+1)];
+        int i=0;
+        for(long off=start;off<end;){
+            long next=Math.min(end, (off/blockSize+1)*blockSize);
+            blocks[i++]=new BlockLocation(null, getHosts(off, next-off), off, next-off);
+            off=next;
+        }
+        return blocks;
+    }
+
+    public String toString(){
+        return value;
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * A file channel stream that reads ahead of sequential scans.  Once a window's
+ * worth of bytes has been read in order, the next windows of the file are read
+ * on the prefetcher's threads into direct buffers from the volume's pool, and
+ * sequential reads are served from them.  Each window used up doubles the size
+ * of the next one.  A seek forward into what is prefetched skips ahead; any
+ * other seek drops the windows, and reads go through the channel stream until
+ * they are sequential again.  Positional reads are the channel stream's preads
+ * and don't count as access to the stream.
+ */
+public class GlusterFSPrefetchInputStream extends GlusterFSInputStream{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSPrefetchInputStream.class);
+
+    private static final int NEW=0;
+    private static final int RUNNING=1;
+    private static final int DONE=2;
+    private static final int DROPPED=3;
+
+    private final GlusterFSPrefetcher prefetcher;
+    /* windows read ahead, in file order */
+    private final ArrayDeque<Window> windows=new ArrayDeque<Window>();
+    private final ByteBuffer one=ByteBuffer.allocate(1);
+
+    /* where the next read starts if access stays sequential, and how much was read in order */
+    private long expected=0;
+    private long sequential=0;
+    /* size and file offset of the next window */
+    private int window;
+    private long next;
+
+    public GlusterFSPrefetchInputStream(File file,int readahead,FileSystem.Statistics statistics,GlusterFSBufferPool pool,
+            GlusterFSPrefetcher prefetcher) throws IOException{
+        super(file, readahead, statistics, pool);
+        this.prefetcher=prefetcher;
+        this.window=prefetcher.getMinWindow();
+    }
+
+    public synchronized int read() throws IOException{
+        if(windows.isEmpty()){
+            long pos=getPos();
+            access(pos);
+            int b=super.read();
+            if(b>=0) advance(pos, 1);
+            return b;
+        }
+        one.clear();
+        return read(one)<=0 ? -1 : one.get(0)&0xff;
+    }
+
+    public synchronized int read(ByteBuffer dst) throws IOException{
+        checkOpen();
+        if(!dst.hasRemaining()) return 0;
+        long pos=getPos();
+        access(pos);
+        int n=prefetched(dst, pos);
+        if(n>0){
+            super.seek(pos+n);
+            count(n);
+            expected=pos+n;
+            sequential+=n;
+            return n;
+        }
+        n=super.read(dst);
+        if(n>0) advance(pos, n);
+        return n;
+    }
+
+    /* after n bytes read at pos through the channel stream, starts prefetching once reads are sequential */
+    private void advance(long pos,int n) throws IOException{
+        expected=pos+n;
+        sequential+=n;
+        if(windows.isEmpty()&&sequential>=prefetcher.getMinWindow()){
+            next=expected;
+            schedule();
+        }
+    }
+
+    /* a read at pos: skips ahead in the prefetched windows, or stops prefetching if pos is outside them */
+    private void access(long pos){
+        if(pos==expected) return;
+        if(!windows.isEmpty()&&pos>=windows.peekFirst().start&&pos<next){
+            while(pos>=windows.peekFirst().end())
+                drop(windows.pollFirst());
+            expected=pos;
+            return;
+        }
+        if(!windows.isEmpty()){
+            stop();
+            prefetcher.stopped();
+        }
+        expected=pos;
+        sequential=0;
+        window=prefetcher.getMinWindow();
+    }
+
+    /* copies from the windows at pos into dst, waiting for them as needed */
+    private int prefetched(ByteBuffer dst,long pos) throws IOException{
+        int total=0;
+        while(dst.hasRemaining()&&!windows.isEmpty()){
+            Window w=windows.peekFirst();
+            int length=w.await();
+            if(length<0){
+                stop();
+                break;
+            }
+            int off=(int) (pos+total-w.start);
+            int n=Math.max(0, Math.min(length-off, dst.remaining()));
+            if(n>0){
+                ByteBuffer src=w.buffer.duplicate();
+                src.limit(off+n);
+                src.position(off);
+                dst.put(src);
+                w.used+=n;
+                total+=n;
+                prefetcher.used(n);
+            }
+            if(off+n>=length){
+                drop(windows.pollFirst());
+                /* a short window is the end of the file */
+                if(length<w.size){
+                    stop();
+                    break;
+                }
+                window=(int) Math.min(2L*window, prefetcher.getMaxWindow());
+                schedule();
+            }
+        }
+        return total;
+    }
+
+    /* reads ahead until the ring is full or the end of the file */
+    private void schedule() throws IOException{
+        long size=size();
+        while(windows.size()<prefetcher.getWindows()&&next<size){
+            Window w=new Window(next, window, pool.acquire(window));
+            try{
+                w.fill=prefetcher.submit(w);
+            }catch (RejectedExecutionException e){
+                pool.release(w.buffer);
+                return;
+            }
+            windows.addLast(w);
+            next+=window;
+        }
+    }
+
+    /* takes a window out of the ring, its unread bytes wasted */
+    private void drop(Window w){
+        if(w.state.compareAndSet(NEW, DROPPED)){
+            w.fill.cancel(false);
+        }else if(w.state.compareAndSet(RUNNING, DROPPED)){
+            /* still reading; the read counts itself as wasted and gives the buffer back */
+            return;
+        }else{
+            prefetcher.wasted(w.length-w.used);
+        }
+        pool.release(w.buffer);
+    }
+
+    private void stop(){
+        while(!windows.isEmpty())
+            drop(windows.pollFirst());
+    }
+
+    public synchronized int getWindowSize(){
+        return window;
+    }
+
+    /* true while windows are read ahead of the stream */
+    public synchronized boolean isPrefetching(){
+        return !windows.isEmpty();
+    }
+
+    public void close() throws IOException{
+        synchronized(this){
+            stop();
+        }
+        super.close();
+    }
+
+    private class Window implements Callable<Integer>{
+        final long start;
+        final int size;
+        final ByteBuffer buffer;
+        final AtomicInteger state=new AtomicInteger(NEW);
+        Future<Integer> fill;
+        /* bytes read into the buffer, set before the state is DONE */
+        int length=0;
+        /* bytes the stream has copied out */
+        int used=0;
+        boolean reached=false;
+
+        Window(long start,int size,ByteBuffer buffer){
+            this.start=start;
+            this.size=size;
+            this.buffer=buffer;
+        }
+
+        long end(){
+            return start+size;
+        }
+
+        public Integer call() throws IOException{
+            if(!state.compareAndSet(NEW, RUNNING)) return 0;
+            int n=0;
+            try{
+                n=pread(buffer, start);
+                length=n;
+                prefetcher.prefetched(n);
+                return n;
+            }finally{
+                if(!state.compareAndSet(RUNNING, DONE)){
+                    prefetcher.wasted(n);
+                    pool.release(buffer);
+                }
+            }
+        }
+
+        /* bytes in the window, -1 if it couldn't be read */
+        int await() throws IOException{
+            if(!reached){
+                reached=true;
+                prefetcher.reached(fill.isDone());
+            }
+            try{
+                return fill.get();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a read ahead at "+start);
+            }catch (ExecutionException e){
+                log.debug("Read ahead at "+start+" failed, reading directly", e.getCause());
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+
+/*
+ * Read-ahead for sequential scans.  FUSE reads ahead a small, fixed amount, so
+ * a scan through the mount waits for a round trip every 128KB or so.  Streams
+ * opened with fs.glusterfs.input.prefetch watch for sequential reads and keep
+ * the next few windows of the file being read on this volume's prefetch
+ * threads, doubling the window each time one is used up, from
+ * fs.glusterfs.input.prefetch.window.min up to .max.  A seek away from what
+ * is prefetched drops it and starts over from the smallest window once reads
+ * are sequential again.
+ *
+ * Counters are shared by all streams of the volume: windows read ahead, how
+ * many were ready when the reader got to them and how many it waited for, and
+ * bytes prefetched, used and wasted.
+ */
+public class GlusterFSPrefetcher{
+
+    public static final String PREFETCH_KEY="fs.glusterfs.input.prefetch";
+    public static final String WINDOWS_KEY="fs.glusterfs.input.prefetch.windows";
+    public static final String MIN_WINDOW_KEY="fs.glusterfs.input.prefetch.window.min";
+    public static final String MAX_WINDOW_KEY="fs.glusterfs.input.prefetch.window.max";
+    public static final String THREADS_KEY="fs.glusterfs.input.prefetch.threads";
+    public static final int DEFAULT_WINDOWS=4;
+    public static final int DEFAULT_MIN_WINDOW=128*1024;
+    public static final int DEFAULT_MAX_WINDOW=8*1024*1024;
+    public static final int DEFAULT_THREADS=8;
+
+    private final boolean enabled;
+    private final int windows;
+    private final int minWindow;
+    private final int maxWindow;
+    private final int threads;
+    private ThreadPoolExecutor executor=null;
+
+    private final AtomicLong windowsPrefetched=new AtomicLong();
+    private final AtomicLong hits=new AtomicLong();
+    private final AtomicLong waits=new AtomicLong();
+    private final AtomicLong bytesPrefetched=new AtomicLong();
+    private final AtomicLong bytesUsed=new AtomicLong();
+    private final AtomicLong bytesWasted=new AtomicLong();
+    private final AtomicLong stops=new AtomicLong();
+
+    public GlusterFSPrefetcher(Configuration conf){
+        this(conf.getBoolean(PREFETCH_KEY, false), conf.getInt(WINDOWS_KEY, DEFAULT_WINDOWS), conf.getInt(MIN_WINDOW_KEY, DEFAULT_MIN_WINDOW),
+                conf.getInt(MAX_WINDOW_KEY, DEFAULT_MAX_WINDOW), conf.getInt(THREADS_KEY, DEFAULT_THREADS));
+    }
+
+    /* windows is how many are read ahead of a stream at once */
+    public GlusterFSPrefetcher(boolean enabled,int windows,int minWindow,int maxWindow,int threads){
+        this.enabled=enabled;
+        this.windows=Math.max(1, windows);
+        this.minWindow=Math.max(4096, minWindow);
+        this.maxWindow=Math.max(this.minWindow, maxWindow);
+        this.threads=Math.max(1, threads);
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    public int getWindows(){
+        return windows;
+    }
+
+    public int getMinWindow(){
+        return minWindow;
+    }
+
+    public int getMaxWindow(){
+        return maxWindow;
+    }
+
+    /* threads exit when idle; prefetches are never interrupted, which would close the file's channel */
+    synchronized <T> Future<T> submit(Callable<T> task){
+        if(executor==null){
+            final AtomicInteger count=new AtomicInteger();
+            executor=new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+                public Thread newThread(Runnable r){
+                    Thread t=new Thread(r, "glusterfs-prefetch-"+count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor.submit(task);
+    }
+
+    public synchronized void close(){
+        if(executor!=null){
+            executor.shutdown();
+            executor=null;
+        }
+    }
+
+    void prefetched(int bytes){
+        windowsPrefetched.incrementAndGet();
+        bytesPrefetched.addAndGet(bytes);
+    }
+
+    void reached(boolean ready){
+        (ready ? hits : waits).incrementAndGet();
+    }
+
+    void used(int bytes){
+        bytesUsed.addAndGet(bytes);
+    }
+
+    void wasted(int bytes){
+        if(bytes>0) bytesWasted.addAndGet(bytes);
+    }
+
+    void stopped(){
+        stops.incrementAndGet();
+    }
+
+    public long getWindowsPrefetched(){
+        return windowsPrefetched.get();
+    }
+
+    /* windows read by the time the reader got to them */
+    public long getHits(){
+        return hits.get();
+    }
+
+    /* windows the reader had to wait for */
+    public long getWaits(){
+        return waits.get();
+    }
+
+    public long getBytesPrefetched(){
+        return bytesPrefetched.get();
+    }
+
+    public long getBytesUsed(){
+        return bytesUsed.get();
+    }
+
+    /* prefetched and dropped before they were read, by a seek or close */
+    public long getBytesWasted(){
+        return bytesWasted.get();
+    }
+
+    /* times a seek away from what was prefetched stopped a stream's prefetching */
+    public long getStops(){
+        return stops.get();
+    }
+
+    public String toString(){
+        if(!enabled) return "off";
+        return windows+" windows of "+minWindow+" to "+maxWindow+" bytes, "+threads+" threads, prefetches="+getWindowsPrefetched()+" hits="+getHits()
+                +" waits="+getWaits()+" prefetched="+getBytesPrefetched()+" used="+getBytesUsed()+" wasted="+getBytesWasted()+" stops="+getStops();
+    }
+}
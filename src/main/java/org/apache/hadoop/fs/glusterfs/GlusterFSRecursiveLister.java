@@ -0,0 +1,267 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Files under a directory tree with their block locations, for split planning.
+ * Each directory is listed by its own fork-join task, so the levels of a deep
+ * tree are walked in parallel rather than one listing round-trip after another.
+ * Files are located in batches by the task that found them and handed to the
+ * caller through a bounded queue as they are ready, in no particular order.
+ *
+ * The walk runs on a pool of its own, so a caller that reads slowly holds back
+ * only its own listing.  close() stops the walk and its threads exit.  As a
+ * safety net for callers that stop reading without closing, a stall timeout
+ * (off by default) also stops the walk once the queue has been full that long,
+ * and the next hasNext fails.
+ *
+ * Entries the filter rejects are skipped, directories included; with hidden
+ * pruning, names starting with _ or . are skipped as FileInputFormat does.
+ */
+public class GlusterFSRecursiveLister implements RemoteIterator<LocatedFileStatus>, Closeable{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSRecursiveLister.class);
+
+    /* marks the end of the walk in the queue */
+    private static final LocatedFileStatus END=new LocatedFileStatus(0, false, 0, 0, 0, 0, null, null, null, null, new Path("/"), null);
+
+    private final GlusterVolume volume;
+    private final PathFilter filter;
+    private final boolean pruneHidden;
+    private final int batchSize;
+    private final BlockingQueue<LocatedFileStatus> results;
+
+    private final long stallTimeout;
+
+    private volatile boolean closed=false;
+    private volatile boolean abandoned=false;
+    private volatile boolean finished=false;
+    private volatile long lastRead=System.currentTimeMillis();
+    private volatile IOException failure=null;
+    private LocatedFileStatus next=null;
+    private boolean done=false;
+
+    /* pool is the listing's own, shut down when the walk ends */
+    public GlusterFSRecursiveLister(GlusterVolume volume,Path root,final PathFilter filter,boolean pruneHidden,final ForkJoinPool pool,
+            int batchSize,int queueSize,long stallTimeout) throws IOException{
+        this.volume=volume;
+        this.filter=filter;
+        this.pruneHidden=pruneHidden;
+        this.batchSize=Math.max(1, batchSize);
+        this.results=new ArrayBlockingQueue<LocatedFileStatus>(Math.max(1, queueSize));
+        this.stallTimeout=stallTimeout;
+
+        final FileStatus top;
+        try{
+            top=volume.getFileStatus(root);
+        }catch (IOException e){
+            pool.shutdown();
+            throw e;
+        }
+        pool.execute(new RecursiveAction(){
+            private static final long serialVersionUID=1L;
+
+            protected void compute(){
+                try{
+                    if(top.isDirectory()){
+                        new Walk(top.getPath()).invoke();
+                    }else{
+                        ArrayList<FileStatus> file=new ArrayList<FileStatus>(1);
+                        if(filter.accept(top.getPath())) file.add(top);
+                        emit(file);
+                    }
+                }catch (RuntimeException e){
+                    fail(new IOException("Error listing "+top.getPath(), e));
+                }finally{
+                    publish(END);
+                    finished=true;
+                    pool.shutdown();
+                }
+            }
+        });
+    }
+
+    public static boolean isHidden(Path p){
+        String name=p.getName();
+        return name.startsWith("_")||name.startsWith(".");
+    }
+
+    private boolean accept(Path p){
+        return !(pruneHidden&&isHidden(p))&&filter.accept(p);
+    }
+
+    private boolean stopped(){
+        return closed||failure!=null;
+    }
+
+    private void fail(IOException e){
+        if(failure==null) failure=e;
+    }
+
+    /* lists one directory; its files are located here, its subdirectories forked */
+    private class Walk extends RecursiveAction{
+        private static final long serialVersionUID=1L;
+
+        private final Path dir;
+
+        Walk(Path dir){
+            this.dir=dir;
+        }
+
+        protected void compute(){
+            ArrayList<Walk> subdirs=new ArrayList<Walk>();
+            RemoteIterator<FileStatus> entries=null;
+            try{
+                entries=volume.listStatusIterator(dir);
+                ArrayList<FileStatus> files=new ArrayList<FileStatus>(batchSize);
+                while(!stopped()&&entries.hasNext()){
+                    FileStatus s=entries.next();
+                    if(!accept(s.getPath())) continue;
+                    if(s.isDirectory()){
+                        Walk w=new Walk(s.getPath());
+                        w.fork();
+                        subdirs.add(w);
+                    }else{
+                        files.add(s);
+                        if(files.size()>=batchSize){
+                            emit(files);
+                            files.clear();
+                        }
+                    }
+                }
+                emit(files);
+            }catch (FileNotFoundException e){
+                log.debug("Directory gone while listing: "+dir);
+            }catch (IOException e){
+                fail(e);
+            }finally{
+                if(entries instanceof Closeable){
+                    try{
+                        ((Closeable) entries).close();
+                    }catch (IOException e){
+                        // nothing left to read
+                    }
+                }
+            }
+            for(Walk w : subdirs)
+                w.join();
+        }
+    }
+
+    /* a batch of files with their locations, hostless where the lookup fails */
+    private void emit(ArrayList<FileStatus> files){
+        if(files.isEmpty()||stopped()) return;
+        FileStatus[] batch=files.toArray(new FileStatus[files.size()]);
+        BlockLocation[][] locations=null;
+        try{
+            locations=volume.getFileBlockLocations(batch);
+        }catch (IOException e){
+            log.warn("GLUSTERFS: Problem getting block locations for "+batch.length+" files, listing them without hosts: "+e);
+        }catch (RuntimeException e){
+            log.warn("GLUSTERFS: Problem getting block locations for "+batch.length+" files, listing them without hosts: "+e);
+        }
+        for(int i=0;i<batch.length;i++){
+            BlockLocation[] located=locations==null||locations[i]==null ? GlusterFSLocatedStatusIterator.hostless(batch[i]) : locations[i];
+            try{
+                publish(new LocatedFileStatus(batch[i], located));
+            }catch (IOException e){
+                fail(e);
+            }
+        }
+    }
+
+    /* waits for room, gives up once the caller has closed or stopped reading the listing */
+    private void publish(LocatedFileStatus s){
+        try{
+            while(!closed&&!abandoned){
+                if(results.offer(s, 100, TimeUnit.MILLISECONDS)) return;
+                if(stallTimeout>0&&System.currentTimeMillis()-lastRead>stallTimeout){
+                    fail(new IOException("Listing abandoned: nothing read for "+stallTimeout+"ms"));
+                    abandoned=true;
+                    log.warn("GLUSTERFS: Recursive listing not read for "+stallTimeout+"ms, stopping the walk");
+                }
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            closed=true;
+        }
+    }
+
+    public boolean hasNext() throws IOException{
+        if(next!=null) return true;
+        if(done) return false;
+        LocatedFileStatus s=null;
+        try{
+            while(s==null){
+                lastRead=System.currentTimeMillis();
+                /* a walk that finished without queueing END was abandoned */
+                boolean ended=finished;
+                s=results.poll(100, TimeUnit.MILLISECONDS);
+                if(s==null&&ended) s=END;
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted listing files");
+        }
+        lastRead=System.currentTimeMillis();
+        if(s==END){
+            done=true;
+            if(failure!=null) throw failure;
+            return false;
+        }
+        next=s;
+        return true;
+    }
+
+    public LocatedFileStatus next() throws IOException{
+        if(!hasNext()) throw new NoSuchElementException("No more files");
+        LocatedFileStatus s=next;
+        next=null;
+        return s;
+    }
+
+    /* stops the walk, for callers that don't read to the end */
+    public void close(){
+        closed=true;
+        done=true;
+        results.clear();
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Locations for files on volumes with features.shard.  The base file holds
+ * only the first shard; shard N lives in /.shard/<gfid>.N, placed by DHT
+ * like any other file, so each shard's part of a range is looked up on its
+ * own.  Shards that can't be found (holes in sparse files) are reported on
+ * the base file's hosts.  Shard pathinfo is kept in the block location cache
+ * under the shard's name, which is the gfid and shard index, for the base
+ * file's mtime and length, which the shard translator updates on every write.
+ *
+ * The shard translator doesn't serve trusted.glusterfs.shard.* to clients,
+ * so a file's own shard size can't be read off the mount.  The volume's
+ * shard-block-size (from the volfile, or fs.glusterfs.shard.block.size) is
+ * taken for every file: any file longer than that is sharded.  Files written
+ * before the volume's shard size was changed keep their old size and are
+ * located as if cut at the new one.
+ */
+public class GlusterFSShardLocator{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSShardLocator.class);
+
+    public static final String GFID_XATTR="glusterfs.gfid.string";
+    public static final String SHARD_DIR="/.shard";
+    public static final String SHARD_BLOCK_SIZE_KEY="fs.glusterfs.shard.block.size";
+
+    private final String mountRoot;
+    private final GlusterFSXattrReader reader;
+    private final GlusterFSDhtLocator dht;
+    private final Map<String,Integer> redundancy;
+    private final long shardSize;
+    private final GlusterFSBlockLocationCache cache;
+
+    public GlusterFSShardLocator(String mountRoot,GlusterFSXattrReader reader,GlusterFSDhtLocator dht,Map<String,Integer> redundancy,
+            long shardSize){
+        this(mountRoot, reader, dht, redundancy, shardSize, new GlusterFSBlockLocationCache(0, 0));
+    }
+
+    /*
+     * dht may be null, then shards are located through their pathinfo on the mount.
+     * redundancy is as for GlusterFSPathInfo, may be null.
+     */
+    public GlusterFSShardLocator(String mountRoot,GlusterFSXattrReader reader,GlusterFSDhtLocator dht,Map<String,Integer> redundancy,
+            long shardSize,GlusterFSBlockLocationCache cache){
+        this.mountRoot=mountRoot;
+        this.reader=reader;
+        this.dht=dht;
+        this.redundancy=redundancy;
+        this.shardSize=shardSize;
+        this.cache=cache;
+    }
+
+    /* shard size of a file this long, 0 if it fits in its base file */
+    public long getShardSize(long length){
+        return length>shardSize ? shardSize : 0;
+    }
+
+    /*
+     * Locations for [start, start+len) of a sharded file, cut at shard and block
+     * boundaries.  base is the base file's pathinfo, which covers shard 0, mtime
+     * and length are the base file's.  Returns null if the file's shards can't be
+     * found at all.
+     */
+    public BlockLocation[] getBlockLocations(String file,long mtime,long length,GlusterFSPathInfo base,long shardSize,long start,long len,
+            long blockSize) throws IOException{
+        long end=start+len;
+        int first=(int) (start/shardSize);
+        int last=len<=0 ? first : (int) ((end-1)/shardSize);
+        if(last==0) return base.getBlockLocations(start, len, blockSize);
+
+        String gfid=reader.getXattr(file, GFID_XATTR);
+        if(gfid==null){
+            log.debug("No gfid for sharded file "+file);
+            return null;
+        }
+        gfid=gfid.trim();
+
+        GlusterFSPathInfo[] shards=new GlusterFSPathInfo[last-first+1];
+        String[][] placed=new String[shards.length][];
+        locateShards(gfid, first, mtime, length, shards, placed);
+
+        ArrayList<BlockLocation> blocks=new ArrayList<BlockLocation>();
+        for(int i=first;i<=last;i++){
+            long from=Math.max(start, i*shardSize);
+            long to=Math.min(end, (i+1)*shardSize);
+            GlusterFSPathInfo shard=i==0 ? base : shards[i-first];
+            if(shard!=null){
+                blocks.addAll(Arrays.asList(shard.getBlockLocations(from, to-from, blockSize)));
+            }else{
+                String[] hosts=placed[i-first]!=null ? placed[i-first] : base.getHosts(0);
+                blocks.addAll(Arrays.asList(GlusterFSXattr.splitBlocks(hosts, from, to-from, blockSize)));
+            }
+        }
+        return blocks.toArray(new BlockLocation[blocks.size()]);
+    }
+
+    /* DHT placement where the layout of /.shard is known, then the cache, one pathinfo batch for the rest */
+    private void locateShards(String gfid,int first,long mtime,long length,GlusterFSPathInfo[] shards,String[][] placed) throws IOException{
+        ArrayList<Integer> unplaced=new ArrayList<Integer>();
+        for(int i=0;i<shards.length;i++){
+            int shard=first+i;
+            if(shard==0) continue;
+            if(dht!=null) placed[i]=dht.getHosts(SHARD_DIR+"/"+gfid+"."+shard);
+            if(placed[i]!=null) continue;
+            String cached=cache.get(mountRoot+SHARD_DIR+"/"+gfid+"."+shard, mtime, length);
+            if(cached!=null) shards[i]=GlusterFSPathInfo.parse(cached, redundancy);
+            if(shards[i]==null) unplaced.add(i);
+        }
+        if(unplaced.isEmpty()) return;
+
+        String[] names=new String[unplaced.size()];
+        for(int i=0;i<names.length;i++)
+            names[i]=mountRoot+SHARD_DIR+"/"+gfid+"."+(first+unplaced.get(i));
+        String[] values=reader.getXattrs(names, GlusterFSXattr.PATHINFO_XATTR);
+        for(int i=0;i<names.length;i++){
+            shards[unplaced.get(i)]=GlusterFSPathInfo.parse(values[i], redundancy);
+            if(shards[unplaced.get(i)]!=null) cache.put(names[i], mtime, length, values[i]);
+        }
+    }
+
+    public String toString(){
+        return mountRoot+" shards of "+shardSize+(dht==null ? " (pathinfo)" : " (dht)");
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+
+/*
+ * Bounded LRU cache of file statuses and small directory listings, keyed by
+ * path on the mount, for jobs that look up the same paths over and over.
+ * Paths found missing are cached too, so repeated exists() checks for
+ * markers like _SUCCESS don't go to the volume either.  The keys are also
+ * kept sorted, so dropping a directory's entries is a range, not a scan.
+ *
+ * Entries live for fs.glusterfs.stat.cache.ttl and are dropped when this
+ * client changes the path; changes made by other clients, and writes still
+ * in progress, show after at most the ttl.
+ */
+public class GlusterFSStatCache{
+
+    public static final String CACHE_SIZE_KEY="fs.glusterfs.stat.cache.size";
+    public static final int DEFAULT_CACHE_SIZE=0;
+    public static final String CACHE_TTL_KEY="fs.glusterfs.stat.cache.ttl";
+    public static final long DEFAULT_CACHE_TTL=1000;
+
+    /* larger listings are not kept */
+    public static final int MAX_CACHED_LISTING=1000;
+
+    static class Entry{
+        final FileStatus status;
+        final FileStatus[] listing;
+        final long expires;
+
+        Entry(FileStatus status,FileStatus[] listing,long expires){
+            this.status=status;
+            this.listing=listing;
+            this.expires=expires;
+        }
+
+        /* the path didn't exist */
+        boolean isMissing(){
+            return status==null;
+        }
+
+        FileStatus getStatus(){
+            return status;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttl;
+    private final LinkedHashMap<String,Entry> statuses;
+    private final LinkedHashMap<String,Entry> listings;
+    private final TreeSet<String> statusKeys=new TreeSet<String>();
+    private final TreeSet<String> listingKeys=new TreeSet<String>();
+
+    private final AtomicLong hits=new AtomicLong();
+    private final AtomicLong negativeHits=new AtomicLong();
+    private final AtomicLong misses=new AtomicLong();
+    private final AtomicLong listingHits=new AtomicLong();
+    private final AtomicLong listingMisses=new AtomicLong();
+    private final AtomicLong evictions=new AtomicLong();
+    private final AtomicLong invalidations=new AtomicLong();
+
+    public GlusterFSStatCache(Configuration conf){
+        this(conf.getInt(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE), conf.getLong(CACHE_TTL_KEY, DEFAULT_CACHE_TTL));
+    }
+
+    /* maxEntries of 0 disables the cache; statuses and listings are bounded separately */
+    public GlusterFSStatCache(int maxEntries,long ttl){
+        this.maxEntries=maxEntries;
+        this.ttl=ttl;
+        this.statuses=lru(maxEntries, statusKeys);
+        this.listings=lru(maxEntries, listingKeys);
+    }
+
+    private LinkedHashMap<String,Entry> lru(final int max,final TreeSet<String> keys){
+        return new LinkedHashMap<String,Entry>(16, 0.75f, true){
+            private static final long serialVersionUID=1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest){
+                if(size()>max){
+                    keys.remove(eldest.getKey());
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled(){
+        return maxEntries>0;
+    }
+
+    private Entry lookup(LinkedHashMap<String,Entry> map,TreeSet<String> keys,String file){
+        synchronized(this){
+            Entry e=map.get(file);
+            if(e!=null&&System.currentTimeMillis()>e.expires){
+                map.remove(file);
+                keys.remove(file);
+                e=null;
+            }
+            return e;
+        }
+    }
+
+    /* the cached status or missing marker, null if not cached */
+    Entry getStatus(String file){
+        if(!isEnabled()) return null;
+        Entry e=lookup(statuses, statusKeys, file);
+        if(e==null){
+            misses.incrementAndGet();
+        }else if(e.isMissing()){
+            negativeHits.incrementAndGet();
+        }else{
+            hits.incrementAndGet();
+        }
+        return e;
+    }
+
+    public void putStatus(String file,FileStatus status){
+        if(!isEnabled()) return;
+        Entry e=new Entry(status, null, System.currentTimeMillis()+ttl);
+        synchronized(this){
+            if(statuses.put(file, e)==null) statusKeys.add(file);
+        }
+    }
+
+    public void putMissing(String file){
+        putStatus(file, null);
+    }
+
+    /* a copy of the cached listing, or null */
+    public FileStatus[] getListing(String dir){
+        if(!isEnabled()) return null;
+        Entry e=lookup(listings, listingKeys, dir);
+        if(e==null){
+            listingMisses.incrementAndGet();
+            return null;
+        }
+        listingHits.incrementAndGet();
+        return e.listing.clone();
+    }
+
+    public void putListing(String dir,FileStatus[] listing){
+        if(!isEnabled()||listing==null||listing.length>MAX_CACHED_LISTING) return;
+        Entry e=new Entry(null, listing.clone(), System.currentTimeMillis()+ttl);
+        synchronized(this){
+            if(listings.put(dir, e)==null) listingKeys.add(dir);
+        }
+    }
+
+    /*
+     * drops the path and its listing, and the status and listing of its parent,
+     * whose mtime and entries change with it.
+     */
+    public void invalidate(String file){
+        if(!isEnabled()) return;
+        String parent=new File(file).getParent();
+        synchronized(this){
+            remove(file);
+            if(parent!=null) remove(parent);
+        }
+    }
+
+    /* as invalidate, and everything below the path if it is a directory */
+    public void invalidateTree(String file){
+        if(!isEnabled()) return;
+        invalidate(file);
+        String prefix=file.endsWith("/") ? file : file+"/";
+        synchronized(this){
+            removeRange(statuses, statusKeys, prefix);
+            removeRange(listings, listingKeys, prefix);
+        }
+    }
+
+    private void remove(String file){
+        if(statuses.remove(file)!=null){
+            statusKeys.remove(file);
+            invalidations.incrementAndGet();
+        }
+        if(listings.remove(file)!=null){
+            listingKeys.remove(file);
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /* the keys below the directory sort between "dir/" and "dir0" */
+    private void removeRange(LinkedHashMap<String,Entry> map,TreeSet<String> keys,String prefix){
+        Iterator<String> it=keys.subSet(prefix, true, prefix.substring(0, prefix.length()-1)+'0', false).iterator();
+        while(it.hasNext()){
+            map.remove(it.next());
+            it.remove();
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public synchronized void clear(){
+        statuses.clear();
+        listings.clear();
+        statusKeys.clear();
+        listingKeys.clear();
+    }
+
+    public synchronized int size(){
+        return statuses.size()+listings.size();
+    }
+
+    public long getHits(){
+        return hits.get();
+    }
+
+    public long getNegativeHits(){
+        return negativeHits.get();
+    }
+
+    public long getMisses(){
+        return misses.get();
+    }
+
+    public long getListingHits(){
+        return listingHits.get();
+    }
+
+    public long getListingMisses(){
+        return listingMisses.get();
+    }
+
+    public long getEvictions(){
+        return evictions.get();
+    }
+
+    public long getInvalidations(){
+        return invalidations.get();
+    }
+
+    /* share of status lookups answered from the cache, missing paths included */
+    public double getHitRatio(){
+        return ratio(getHits()+getNegativeHits(), getMisses());
+    }
+
+    public double getListingHitRatio(){
+        return ratio(getListingHits(), getListingMisses());
+    }
+
+    private static double ratio(long hit,long miss){
+        return hit+miss==0 ? 0 : (double) hit/(hit+miss);
+    }
+
+    public String toString(){
+        if(!isEnabled()) return "disabled";
+        return "size="+size()+" max="+maxEntries+" ttl="+ttl+"ms hits="+getHits()+" negativeHits="+getNegativeHits()+" misses="
+                +getMisses()+" listingHits="+getListingHits()+" listingMisses="+getListingMisses()+" evictions="+getEvictions()
+                +" invalidations="+getInvalidations()+String.format(" hitRatio=%.2f listingHitRatio=%.2f", getHitRatio(), getListingHitRatio());
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.RemoteIterator;
+
+/*
+ * Statuses of a directory's entries, a page at a time.  Entries are read from
+ * the directory stream as pages are needed and stat'ed a page at a time, so
+ * memory is bounded by the page size and the first entries are available
+ * before the directory has been read through.
+ *
+ * When listings are sorted by name, the names are read up front and sorted,
+ * and only the statuses are paged.
+ *
+ * The directory is closed once read through or on the first failure.  A
+ * caller that stops early must close the iterator.
+ */
+public class GlusterFSStatusIterator implements RemoteIterator<FileStatus>, Closeable{
+
+    private final GlusterVolume volume;
+    private final DirectoryStream<java.nio.file.Path> stream;
+    private final Iterator<java.nio.file.Path> streamed;
+    private final Iterator<File> sorted;
+
+    private final File[] names;
+    private final FileStatus[] page;
+    private int pageLength=0;
+    private int next=0;
+
+    GlusterFSStatusIterator(GlusterVolume volume,DirectoryStream<java.nio.file.Path> stream,int pageSize){
+        this.volume=volume;
+        this.stream=stream;
+        this.streamed=stream.iterator();
+        this.sorted=null;
+        this.names=new File[Math.max(1, pageSize)];
+        this.page=new FileStatus[names.length];
+    }
+
+    GlusterFSStatusIterator(GlusterVolume volume,File[] entries,int pageSize){
+        this.volume=volume;
+        this.stream=null;
+        this.streamed=null;
+        this.sorted=Arrays.asList(entries).iterator();
+        this.names=new File[Math.max(1, pageSize)];
+        this.page=new FileStatus[names.length];
+    }
+
+    public boolean hasNext() throws IOException{
+        while(next>=pageLength){
+            if(!fill()) return false;
+        }
+        return true;
+    }
+
+    public FileStatus next() throws IOException{
+        if(!hasNext()) throw new NoSuchElementException("No more entries");
+        FileStatus status=page[next];
+        page[next++]=null;
+        return status;
+    }
+
+    /* next page of names, then their statuses; false at the end of the directory, which is then closed, as on any failure */
+    private boolean fill() throws IOException{
+        boolean done=true;
+        try{
+            int n=0;
+            try{
+                while(n<names.length&&(sorted!=null ? sorted.hasNext() : streamed.hasNext())){
+                    names[n++]=sorted!=null ? sorted.next() : streamed.next().toFile();
+                }
+            }catch (DirectoryIteratorException e){
+                throw e.getCause();
+            }
+            if(n==0) return false;
+
+            pageLength=0;
+            next=0;
+            for(int i=0;i<n;i++){
+                FileStatus status=volume.getEntryStatus(names[i]);
+                if(status!=null) page[pageLength++]=status;
+                names[i]=null;
+            }
+            done=false;
+            return true;
+        }finally{
+            if(done) close();
+        }
+    }
+
+    public void close() throws IOException{
+        if(stream!=null) stream.close();
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The parts of a glusterd client volfile (/var/lib/glusterd/vols/<vol>/<vol>-fuse.vol)
+ * needed to place files: the children of the distribute translator, in order, and the
+ * bricks under each of them.
+ */
+public class GlusterFSVolfile{
+
+    /* features.shard-block-size when the volume doesn't set it */
+    public static final long DEFAULT_SHARD_BLOCK_SIZE=64*1024*1024;
+
+    static class Xlator{
+        final String name;
+        String type=null;
+        final Map<String,String> options=new HashMap<String,String>();
+        final List<String> subvolumes=new ArrayList<String>();
+
+        Xlator(String name){
+            this.name=name;
+        }
+    }
+
+    private final List<String> subvolumes=new ArrayList<String>();
+    private final List<GlusterFSBrickRepl> replicas=new ArrayList<GlusterFSBrickRepl>();
+    private final List<List<GlusterFSBrickClass>> bricks=new ArrayList<List<GlusterFSBrickClass>>();
+    private final List<Boolean> whole=new ArrayList<Boolean>();
+    private boolean sharded=false;
+    private long shardBlockSize=0;
+    private final Map<String,Integer> redundancy=new HashMap<String,Integer>();
+
+    public static GlusterFSVolfile load(String file) throws IOException{
+        Reader in=new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"));
+        try{
+            return new GlusterFSVolfile(in);
+        }finally{
+            in.close();
+        }
+    }
+
+    public static GlusterFSVolfile parse(String volfile) throws IOException{
+        return new GlusterFSVolfile(new StringReader(volfile));
+    }
+
+    GlusterFSVolfile(Reader volfile) throws IOException{
+        Map<String,Xlator> xlators=new HashMap<String,Xlator>();
+        Xlator distribute=null;
+        Xlator current=null;
+
+        BufferedReader in=new BufferedReader(volfile);
+        String line;
+        while((line=in.readLine())!=null){
+            int comment=line.indexOf('#');
+            if(comment>=0) line=line.substring(0, comment);
+            String[] tok=line.trim().split("\\s+");
+            if(tok.length==0||tok[0].length()==0) continue;
+
+            if("volume".equals(tok[0])&&tok.length>1){
+                current=new Xlator(tok[1]);
+                xlators.put(current.name, current);
+            }else if("end-volume".equals(tok[0])){
+                current=null;
+            }else if(current==null){
+                throw new IOException("volfile statement outside a volume: "+line);
+            }else if("type".equals(tok[0])&&tok.length>1){
+                current.type=tok[1];
+                if(distribute==null&&("cluster/distribute".equals(tok[1])||"cluster/dht".equals(tok[1]))){
+                    distribute=current;
+                }
+            }else if("option".equals(tok[0])&&tok.length>2){
+                current.options.put(tok[1], tok[2]);
+            }else if("subvolumes".equals(tok[0])){
+                for(int i=1;i<tok.length;i++)
+                    current.subvolumes.add(tok[i]);
+            }
+        }
+
+        for(Xlator x : xlators.values()){
+            if("features/shard".equals(x.type)){
+                sharded=true;
+                String size=x.options.get("shard-block-size");
+                shardBlockSize=size==null ? DEFAULT_SHARD_BLOCK_SIZE : parseSize(size);
+                if(shardBlockSize<=0) throw new IOException("bad shard-block-size in "+x.name+": "+size);
+            }
+            String r=x.options.get("redundancy");
+            if("cluster/disperse".equals(x.type)&&r!=null){
+                try{
+                    redundancy.put(x.name, Integer.valueOf(r));
+                }catch (NumberFormatException e){
+                    throw new IOException("bad redundancy in "+x.name+": "+r);
+                }
+            }
+        }
+
+        if(distribute==null){
+            /* a single brick or replica set, no distribute translator: one subvolume */
+            Xlator top=findTop(xlators);
+            if(top==null) throw new IOException("volfile has no translators");
+            addSubvolume(top.name, xlators);
+        }else{
+            for(String child : distribute.subvolumes)
+                addSubvolume(child, xlators);
+        }
+    }
+
+    /* the translator nothing else names as a subvolume */
+    private static Xlator findTop(Map<String,Xlator> xlators){
+        ArrayList<String> children=new ArrayList<String>();
+        for(Xlator x : xlators.values())
+            children.addAll(x.subvolumes);
+        Xlator top=null;
+        for(Xlator x : xlators.values()){
+            if(!children.contains(x.name)&&(top==null||"protocol/client".equals(top.type))) top=x;
+        }
+        return top;
+    }
+
+    private void addSubvolume(String name,Map<String,Xlator> xlators) throws IOException{
+        List<GlusterFSBrickClass> leaves=new ArrayList<GlusterFSBrickClass>();
+        collectBricks(name, xlators, leaves, 0);
+
+        GlusterFSBrickRepl repl=new GlusterFSBrickRepl(leaves.size(), 0, 0);
+        for(GlusterFSBrickClass b : leaves)
+            repl.addHost(b.host);
+
+        subvolumes.add(name);
+        replicas.add(repl);
+        bricks.add(leaves);
+        whole.add(holdsWholeFiles(name, xlators, 0));
+    }
+
+    /* false below disperse or stripe, whose bricks each hold only part of a file */
+    private static boolean holdsWholeFiles(String name,Map<String,Xlator> xlators,int depth){
+        Xlator x=xlators.get(name);
+        if(x==null||depth>32) return false;
+        if("cluster/disperse".equals(x.type)||"cluster/stripe".equals(x.type)) return false;
+        for(String child : x.subvolumes){
+            if(!holdsWholeFiles(child, xlators, depth+1)) return false;
+        }
+        return true;
+    }
+
+    private static void collectBricks(String name,Map<String,Xlator> xlators,List<GlusterFSBrickClass> leaves,int depth) throws IOException{
+        Xlator x=xlators.get(name);
+        if(x==null) throw new IOException("volfile names undefined subvolume "+name);
+        if(depth>32) throw new IOException("volfile graph too deep at "+name);
+
+        if("protocol/client".equals(x.type)){
+            String host=x.options.get("remote-host");
+            String path=x.options.get("remote-subvolume");
+            if(host==null||path==null) throw new IOException("client "+name+" has no remote-host/remote-subvolume");
+            leaves.add(new GlusterFSBrickClass(host+":"+path, 0, 0, false, 0, 0, -1));
+            return;
+        }
+        for(String child : x.subvolumes)
+            collectBricks(child, xlators, leaves, depth+1);
+    }
+
+    /* true when the volume has the shard translator (features.shard on) */
+    public boolean isSharded(){
+        return sharded;
+    }
+
+    /* the shard translator's shard-block-size, 0 when the volume isn't sharded */
+    public long getShardBlockSize(){
+        return shardBlockSize;
+    }
+
+    /* a size as gluster writes options: bytes, or a count with KB, MB, GB, TB or PB (powers of 1024); -1 if garbled */
+    static long parseSize(String size){
+        String s=size.trim().toUpperCase();
+        if(s.endsWith("B")) s=s.substring(0, s.length()-1);
+        int shift=0;
+        int unit="KMGTP".indexOf(s.isEmpty() ? ' ' : s.charAt(s.length()-1));
+        if(unit>=0){
+            shift=10*(unit+1);
+            s=s.substring(0, s.length()-1).trim();
+        }
+        try{
+            return Long.parseLong(s)<<shift;
+        }catch (NumberFormatException e){
+            return -1;
+        }
+    }
+
+    /* redundancy count of each disperse translator, by name */
+    public Map<String,Integer> getDisperseRedundancy(){
+        return redundancy;
+    }
+
+    /* number of distribute subvolumes */
+    public int size(){
+        return subvolumes.size();
+    }
+
+    public String getSubvolumeName(int i){
+        return subvolumes.get(i);
+    }
+
+    /* hosts holding a copy of subvolume i */
+    public String[] getHosts(int i){
+        return replicas.get(i).getReplHosts();
+    }
+
+    /* true when every brick of subvolume i holds whole files: a single brick or replica set */
+    public boolean holdsWholeFiles(int i){
+        return whole.get(i);
+    }
+
+    public List<GlusterFSBrickClass> getBricks(int i){
+        return bricks.get(i);
+    }
+}
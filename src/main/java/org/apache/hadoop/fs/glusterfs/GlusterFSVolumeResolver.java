@@ -0,0 +1,136 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.Path;
+
+/*
+ * Maps volume names to FUSE mount points and files on the mounts back to
+ * volume paths.  Built once from the configuration and never changed, so it
+ * is read without locking on every file system call.
+ *
+ * Files are matched to the mount with the longest prefix ending at a path
+ * separator, so a volume mounted inside another's mount, or mounts like
+ * /mnt/vol and /mnt/vol2, resolve to the right volume.
+ */
+public class GlusterFSVolumeResolver{
+
+    public static final String SCHEME="glusterfs";
+
+    private final String defaultVolume;
+    private final Map<String,String> mounts;
+    private final Set<String> volumes;
+
+    /* mount points, absolute, longest first, and their volumes */
+    private final String[] roots;
+    private final String[] rootVolumes;
+
+    /* volumes in configuration order, the first is the default */
+    public GlusterFSVolumeResolver(Map<String,String> volumeMounts){
+        if(volumeMounts.isEmpty()) throw new IllegalArgumentException("No volumes");
+        HashMap<String,String> m=new HashMap<String,String>();
+        for(Map.Entry<String,String> e : volumeMounts.entrySet())
+            m.put(e.getKey(), new File(e.getValue()).getPath());
+        this.mounts=m;
+        this.volumes=Collections.unmodifiableSet(new LinkedHashSet<String>(volumeMounts.keySet()));
+        this.defaultVolume=volumes.iterator().next();
+
+        String[][] byLength=new String[m.size()][];
+        int i=0;
+        for(String v : volumes)
+            byLength[i++]=new String[]{ new File(m.get(v)).getAbsolutePath(), v };
+        /* stable, so of two volumes on one mount the first configured wins */
+        Arrays.sort(byLength, new Comparator<String[]>(){
+            public int compare(String[] a,String[] b){
+                return b[0].length()-a[0].length();
+            }
+        });
+        roots=new String[byLength.length];
+        rootVolumes=new String[byLength.length];
+        for(i=0;i<byLength.length;i++){
+            /* "/" is kept as "", so every root is followed by a separator */
+            roots[i]="/".equals(byLength[i][0]) ? "" : byLength[i][0];
+            rootVolumes[i]=byLength[i][1];
+        }
+    }
+
+    public String getDefaultVolume(){
+        return defaultVolume;
+    }
+
+    public Set<String> getVolumes(){
+        return volumes;
+    }
+
+    /* the mount point of a volume, null if it isn't configured */
+    public String getMount(String volume){
+        return mounts.get(volume==null ? defaultVolume : volume);
+    }
+
+    /* the file for a path on a volume (null for the default volume), null if the volume is unknown */
+    public File toFile(String volume,String path){
+        String mount=mounts.get(volume==null ? defaultVolume : volume);
+        if(mount==null) return null;
+        if(path.length()==0||path.charAt(0)!='/') return new File(mount, path);
+        return new File(mount.concat(path));
+    }
+
+    /* the volume a file is on, null if it is on no mount */
+    public String toVolume(File file){
+        int i=match(file.getAbsolutePath());
+        return i<0 ? null : rootVolumes[i];
+    }
+
+    /* the path of a file on a mount, without authority on the default volume; null if it is on no mount */
+    public Path toPath(File file){
+        String raw=file.getAbsolutePath();
+        int i=match(raw);
+        if(i<0) return null;
+        String volume=rootVolumes[i];
+        String path=raw.length()==roots[i].length() ? "/" : raw.substring(roots[i].length());
+        return new Path(SCHEME, defaultVolume.equalsIgnoreCase(volume) ? "" : volume, path);
+    }
+
+    private int match(String raw){
+        for(int i=0;i<roots.length;i++){
+            String root=roots[i];
+            if(raw.startsWith(root)&&(raw.length()==root.length()||raw.charAt(root.length())=='/')) return i;
+        }
+        return -1;
+    }
+
+    public String toString(){
+        StringBuilder sb=new StringBuilder();
+        for(String v : volumes){
+            if(sb.length()>0) sb.append(", ");
+            sb.append(v).append(" at ").append(mounts.get(v));
+        }
+        return sb.append(" (default ").append(defaultVolume).append(")").toString();
+    }
+}
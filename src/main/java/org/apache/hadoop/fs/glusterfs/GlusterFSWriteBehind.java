@@ -0,0 +1,138 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+
+/*
+ * Write-behind for files created on the mount.  Streams opened with
+ * fs.glusterfs.output.writebehind fill a buffer while the ones filled before
+ * it are written to the file on this volume's flusher threads, so a task's
+ * computation goes on during the FUSE writes instead of waiting for each one.
+ * A stream has at most fs.glusterfs.output.writebehind.buffers full buffers
+ * waiting to be written, and one more being filled; a writer that gets that
+ * far ahead waits for the oldest.  A failed write is thrown by the next write,
+ * flush, hflush or close of the stream.
+ */
+public class GlusterFSWriteBehind{
+
+    public static final String WRITE_BEHIND_KEY="fs.glusterfs.output.writebehind";
+    public static final String BUFFERS_KEY="fs.glusterfs.output.writebehind.buffers";
+    public static final String THREADS_KEY="fs.glusterfs.output.writebehind.threads";
+    public static final int DEFAULT_BUFFERS=2;
+    public static final int DEFAULT_THREADS=8;
+
+    private final boolean enabled;
+    private final int buffers;
+    private final int threads;
+    private ThreadPoolExecutor executor=null;
+
+    private final AtomicLong buffersWritten=new AtomicLong();
+    private final AtomicLong bytesWritten=new AtomicLong();
+    private final AtomicLong stalls=new AtomicLong();
+    private final AtomicLong failures=new AtomicLong();
+
+    public GlusterFSWriteBehind(Configuration conf){
+        this(conf.getBoolean(WRITE_BEHIND_KEY, false), conf.getInt(BUFFERS_KEY, DEFAULT_BUFFERS), conf.getInt(THREADS_KEY, DEFAULT_THREADS));
+    }
+
+    public GlusterFSWriteBehind(boolean enabled,int buffers,int threads){
+        this.enabled=enabled;
+        this.buffers=Math.max(1, buffers);
+        this.threads=Math.max(1, threads);
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /* full buffers a stream may have waiting to be written */
+    public int getBuffers(){
+        return buffers;
+    }
+
+    /* a stream's writes, one stream on a thread at a time; never interrupted */
+    synchronized void execute(Runnable flush){
+        if(executor==null){
+            final AtomicInteger count=new AtomicInteger();
+            executor=new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+                public Thread newThread(Runnable r){
+                    Thread t=new Thread(r, "glusterfs-flusher-"+count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        executor.execute(flush);
+    }
+
+    /* streams still open write the rest of what they are given themselves */
+    public synchronized void close(){
+        if(executor!=null){
+            executor.shutdown();
+            executor=null;
+        }
+    }
+
+    void written(int bytes){
+        buffersWritten.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+    }
+
+    void stalled(){
+        stalls.incrementAndGet();
+    }
+
+    void failed(){
+        failures.incrementAndGet();
+    }
+
+    public long getBuffersWritten(){
+        return buffersWritten.get();
+    }
+
+    public long getBytesWritten(){
+        return bytesWritten.get();
+    }
+
+    /* times a writer waited for a buffer to be written before it could go on */
+    public long getStalls(){
+        return stalls.get();
+    }
+
+    /* writes that failed, each failing its stream */
+    public long getFailures(){
+        return failures.get();
+    }
+
+    public String toString(){
+        if(!enabled) return "off";
+        return buffers+" buffers a stream, "+threads+" threads, written="+getBuffersWritten()+" bytes="+getBytesWritten()+" stalls="+getStalls()
+                +" failures="+getFailures();
+    }
+}
@@ -23,76 +23,167 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.util.ReflectionUtils;
 
 public class GlusterFSXattr{
 
-   private String getFattrCmdBase = null;
+   public static final String PATHINFO_XATTR = "trusted.glusterfs.pathinfo";
+   public static final String XATTR_READER_KEY = "fs.glusterfs.xattr.reader";
+   public static final String XATTR_FALLBACK_KEY = "fs.glusterfs.xattr.fallback";
+
+   private static final GlusterFSXattrReader DEFAULT_READER =
+           new GlusterFSXattrFallbackReader(new GlusterFSXattrHelperReader(), new GlusterFSXattrShellReader());
+
+   private GlusterFSXattrReader reader = null;
+   private long blockSize = GlusterVolume.DEFAULT_BLOCK_SIZE;
    private String filename = null;
    private String xattrValue = null;
    
    public GlusterFSXattr(String fileName) {
-      this(fileName,  "sudo getfattr -m . -n trusted.glusterfs.pathinfo");
+      this(fileName, DEFAULT_READER);
    }
   
-   public GlusterFSXattr(String fileName, String getAttr){
-	   getFattrCmdBase=getAttr;
+   public GlusterFSXattr(String fileName, GlusterFSXattrReader reader){
+	   this.reader = reader;
 	   this.filename = fileName;
    }
+   
+   public static GlusterFSXattrReader getDefaultReader(){
+	   return DEFAULT_READER;
+   }
+   
+   /*
+    * Builds the reader chain named by fs.glusterfs.xattr.reader (the privileged helper by default,
+    * trusted.* keys can't be read in the JVM), a comma separated list tried in order.  Unless fs.glusterfs.xattr.fallback is false, the getfattr
+    * shell reader is tried last.
+    */
+   public static GlusterFSXattrReader createReader(Configuration conf){
+       Class<?>[] classes = conf.getClasses(XATTR_READER_KEY);
+       if(classes.length == 0)
+           classes = new Class<?>[]{ GlusterFSXattrHelperReader.class };
+       ArrayList<GlusterFSXattrReader> chain = new ArrayList<GlusterFSXattrReader>();
+       for(Class<?> c : classes){
+           if(!GlusterFSXattrReader.class.isAssignableFrom(c))
+               throw new RuntimeException(c + " is not a " + GlusterFSXattrReader.class.getName());
+           chain.add((GlusterFSXattrReader)ReflectionUtils.newInstance(c, conf));
+       }
+       
+       if(conf.getBoolean(XATTR_FALLBACK_KEY, true) && !(chain.get(chain.size()-1) instanceof GlusterFSXattrShellReader))
+           chain.add(ReflectionUtils.newInstance(GlusterFSXattrShellReader.class, conf));
+       
+       GlusterFSXattrReader reader = chain.get(chain.size()-1);
+       for(int i=chain.size()-2;i>=0;i--)
+           reader = new GlusterFSXattrFallbackReader(chain.get(i), reader);
+       return reader;
+   }
     
    public void reset(){
 	   xattrValue=null;  
    }
    
    public static String shellToString(String shellCommand) throws IOException{
-	 
-       Process p=Runtime.getRuntime().exec(shellCommand);
+       return shellToString(Runtime.getRuntime().exec(shellCommand));
+   }
+   
+   public static String shellToString(String[] shellCommand) throws IOException{
+       return shellToString(Runtime.getRuntime().exec(shellCommand));
+   }
+   
+   private static String shellToString(Process p) throws IOException{
        BufferedReader brInput=null;
        String s=null;
        
        brInput=new BufferedReader(new InputStreamReader(p.getInputStream()));
 
-       String value="";
+       StringBuilder value=new StringBuilder();
        while ((s=brInput.readLine())!=null)
-       	value+=s;
+       	value.append(s);
        
-       return value;
+       return value.toString();
    }
    
     /* Caches the xattr value.  Must call reset() to re-query */
     public String execGetFattr() throws IOException{
     	if(xattrValue==null){
-	        xattrValue=shellToString(this.getFattrCmdBase + " " + filename);
+	        xattrValue=reader.getXattr(filename, PATHINFO_XATTR);
     	}
        
     	return xattrValue;
     }
     
+	public void setBlockSize(long blockSize){
+		this.blockSize = blockSize;
+	}
+	
 	public BlockLocation[] getPathInfo(long start, long len) {
 		String xattr = null;
-		Pattern blockReg = Pattern.compile("<POSIX\\(.*?\\):(.*?):.*?>");
 		try {
 			xattr = execGetFattr();
 		} catch (IOException e) {
 			// problem executing getfattr command, fail gracefully.
 		}
 		
-		Matcher matcher = blockReg.matcher(xattr);
-		ArrayList<String> list = new ArrayList<String>();
-		while(matcher.find()){
-			list.add(matcher.group(1));
-		}
+		return parsePathInfo(xattr, start, len, blockSize);
+	}
+	
+	/*
+	 * One location per block of the range, blockSize long.  On striped volumes each
+	 * block lists the bricks holding its stripe units.
+	 */
+	static BlockLocation[] parsePathInfo(String xattr, long start, long len, long blockSize) {
+		GlusterFSPathInfo pathinfo = GlusterFSPathInfo.parse(xattr);
+		if(pathinfo == null)
+			return null;
+		return pathinfo.getBlockLocations(start, len, blockSize);
+	}
+	
+	static BlockLocation[] splitBlocks(String[] hosts, long start, long len, long blockSize) {
+		if(len <= 0 || blockSize <= 0)
+			return new BlockLocation[]{ new BlockLocation(null, hosts, start, len) };
 		
-		/* no pathinfo found*/
-		if(list.size() == 0)
+		ArrayList<BlockLocation> blocks = new ArrayList<BlockLocation>();
+		long end = start + len;
+		for(long off = start; off < end;){
+			long next = Math.min(end, (off / blockSize + 1) * blockSize);
+			blocks.add(new BlockLocation(null, hosts, off, next - off));
+			off = next;
+		}
+		return blocks.toArray(new BlockLocation[blocks.size()]);
+	}
+	
+	/*
+	 * Big endian 64 bit counts packed in a binary xattr, as getfattr shows it
+	 * (0x hex or 0s base64).  null when the value isn't encoded that way or
+	 * isn't a whole number of counts.
+	 */
+	static long[] decodeLongs(String value) {
+		if(value == null)
 			return null;
-			
-		String hosts[] = list.toArray(new String[list.size()]);
-		return new BlockLocation[]{ new BlockLocation(null, hosts, start, len) };
-
+		String v = value.trim();
+		byte[] raw;
+		try{
+			if(v.startsWith("0x") || v.startsWith("0X"))
+				raw = Hex.decodeHex(v.substring(2).toCharArray());
+			else if(v.startsWith("0s") || v.startsWith("0S"))
+				raw = Base64.decodeBase64(v.substring(2));
+			else
+				return null;
+		}catch(DecoderException e){
+			return null;
+		}
+		if(raw.length == 0 || raw.length % 8 != 0)
+			return null;
+		
+		long[] counts = new long[raw.length / 8];
+		for(int i = 0; i < raw.length; i++)
+			counts[i / 8] = (counts[i / 8] << 8) | (raw[i] & 0xff);
+		return counts;
 	}
-    
-}
\ No newline at end of file
+	
+}
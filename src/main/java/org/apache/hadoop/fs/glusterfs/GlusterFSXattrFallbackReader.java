@@ -0,0 +1,104 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Tries the primary reader first and only asks the fallback when the primary
+ * has no answer.  A primary that isn't supported on this platform is switched
+ * off for the life of the reader.
+ */
+public class GlusterFSXattrFallbackReader implements GlusterFSXattrReader{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSXattrFallbackReader.class);
+
+    private final GlusterFSXattrReader primary;
+    private final GlusterFSXattrReader fallback;
+    private volatile boolean primaryEnabled=true;
+
+    public GlusterFSXattrFallbackReader(GlusterFSXattrReader primary,GlusterFSXattrReader fallback){
+        this.primary=primary;
+        this.fallback=fallback;
+    }
+
+    public String getXattr(String fileName,String name) throws IOException{
+        if(primaryEnabled){
+            try{
+                String value=primary.getXattr(fileName, name);
+                if(value!=null) return value;
+            }catch (UnsupportedOperationException e){
+                log.warn("xattr reader "+primary+" not supported, using "+fallback+" from now on: "+e.getMessage());
+                primaryEnabled=false;
+            }catch (IOException e){
+                log.debug("xattr reader "+primary+" failed for "+fileName+", trying "+fallback, e);
+            }
+        }
+        return fallback.getXattr(fileName, name);
+    }
+
+    public String[] getXattrs(String[] fileNames,String name) throws IOException{
+        String[] values=null;
+        if(primaryEnabled){
+            try{
+                values=primary.getXattrs(fileNames, name);
+            }catch (UnsupportedOperationException e){
+                log.warn("xattr reader "+primary+" not supported, using "+fallback+" from now on: "+e.getMessage());
+                primaryEnabled=false;
+            }catch (IOException e){
+                log.debug("xattr reader "+primary+" failed for a batch of "+fileNames.length+", trying "+fallback, e);
+            }
+        }
+        if(values==null){
+            return fallback.getXattrs(fileNames, name);
+        }
+
+        int misses=0;
+        for(int i=0;i<values.length;i++){
+            if(values[i]==null) misses++;
+        }
+        if(misses==0) return values;
+
+        String[] missed=new String[misses];
+        for(int i=0,j=0;i<values.length;i++){
+            if(values[i]==null) missed[j++]=fileNames[i];
+        }
+        String[] retried=fallback.getXattrs(missed, name);
+        for(int i=0,j=0;i<values.length;i++){
+            if(values[i]==null) values[i]=retried[j++];
+        }
+        return values;
+    }
+
+    public GlusterFSXattrReader getPrimary(){
+        return primary;
+    }
+
+    public GlusterFSXattrReader getFallback(){
+        return fallback;
+    }
+
+    public String toString(){
+        return primary+(primaryEnabled ? "" : "(disabled)")+" -> "+fallback;
+    }
+}
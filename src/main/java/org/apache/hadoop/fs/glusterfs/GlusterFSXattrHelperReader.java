@@ -0,0 +1,297 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Reads trusted.* attributes through one long lived privileged helper process
+ * (tools/glusterfs-xattr-helper.py) instead of a sudo getfattr per file.
+ *
+ * Requests are streamed to the helper as newline delimited lines and matched
+ * to answers by id, so any number can be in flight and a batch costs a single
+ * round trip.  All readers with the same command share a helper for the JVM.
+ * A helper that dies or stops answering is killed, its outstanding requests
+ * fail, and the next request starts a new one.
+ */
+public class GlusterFSXattrHelperReader extends Configured implements GlusterFSXattrReader{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSXattrHelperReader.class);
+
+    public static final String HELPER_COMMAND_KEY="fs.glusterfs.xattr.helper.command";
+    public static final String DEFAULT_HELPER_COMMAND="sudo /usr/libexec/glusterfs-hadoop/glusterfs-xattr-helper";
+    public static final String HELPER_TIMEOUT_KEY="fs.glusterfs.xattr.helper.timeout";
+    public static final long DEFAULT_HELPER_TIMEOUT=30000;
+
+    static final Charset UTF8=Charset.forName("UTF-8");
+
+    /* restarts in a row without a single answer before backing off */
+    static final int MAX_FAILED_STARTS=3;
+    static final long RESTART_BACKOFF=60000;
+
+    private static final Map<String,Helper> helpers=new HashMap<String,Helper>();
+
+    private Helper helper=null;
+    private long timeout=DEFAULT_HELPER_TIMEOUT;
+
+    public GlusterFSXattrHelperReader(){}
+
+    public GlusterFSXattrHelperReader(String[] command,long timeout){
+        this.helper=getHelper(command);
+        this.timeout=timeout;
+    }
+
+    public void setConf(Configuration conf){
+        super.setConf(conf);
+        if(conf!=null){
+            helper=getHelper(conf.get(HELPER_COMMAND_KEY, DEFAULT_HELPER_COMMAND).trim().split("\\s+"));
+            timeout=conf.getLong(HELPER_TIMEOUT_KEY, DEFAULT_HELPER_TIMEOUT);
+        }
+    }
+
+    static Helper getHelper(String[] command){
+        String key=Arrays.toString(command);
+        synchronized(helpers){
+            Helper h=helpers.get(key);
+            if(h==null){
+                h=new Helper(command);
+                helpers.put(key, h);
+            }
+            return h;
+        }
+    }
+
+    public String getXattr(String fileName,String name) throws IOException{
+        return getXattrs(new String[]{fileName}, name)[0];
+    }
+
+    public String[] getXattrs(String[] fileNames,String name) throws IOException{
+        if(helper==null){
+            helper=getHelper(DEFAULT_HELPER_COMMAND.split("\\s+"));
+        }
+        return helper.request(fileNames, name, timeout);
+    }
+
+    /* number of helper processes started so far, including restarts */
+    public int getStarts(){
+        return helper==null ? 0 : helper.starts;
+    }
+
+    public String toString(){
+        return "helper";
+    }
+
+    static String escape(String s){
+        StringBuilder b=new StringBuilder(s.length()+8);
+        for(int i=0;i<s.length();i++){
+            char c=s.charAt(i);
+            switch(c){
+            case '\\': b.append("\\\\"); break;
+            case '\t': b.append("\\t"); break;
+            case '\n': b.append("\\n"); break;
+            default: b.append(c);
+            }
+        }
+        return b.toString();
+    }
+
+    static String unescape(String s){
+        if(s.indexOf('\\')<0) return s;
+        StringBuilder b=new StringBuilder(s.length());
+        for(int i=0;i<s.length();i++){
+            char c=s.charAt(i);
+            if(c=='\\'&&i+1<s.length()){
+                c=s.charAt(++i);
+                if(c=='t') c='\t';
+                else if(c=='n') c='\n';
+            }
+            b.append(c);
+        }
+        return b.toString();
+    }
+
+    static class Request{
+        final Process owner;
+        final CountDownLatch done=new CountDownLatch(1);
+        String value=null;
+        IOException error=null;
+
+        Request(Process owner){
+            this.owner=owner;
+        }
+    }
+
+    static class Helper{
+        final String[] command;
+        final Map<Long,Request> inFlight=new ConcurrentHashMap<Long,Request>();
+
+        private Process process=null;
+        private OutputStream out=null;
+        private long nextId=0;
+        private int failedStarts=0;
+        private long lastFailure=0;
+        volatile int starts=0;
+
+        Helper(String[] command){
+            this.command=command;
+        }
+
+        private void start() throws IOException{
+            if(process!=null) return;
+
+            if(failedStarts>=MAX_FAILED_STARTS&&System.currentTimeMillis()-lastFailure<RESTART_BACKOFF){
+                throw new IOException("xattr helper "+Arrays.toString(command)+" keeps failing, not restarting yet");
+            }
+
+            ProcessBuilder pb=new ProcessBuilder(command);
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+            final Process p;
+            try{
+                p=pb.start();
+            }catch (IOException e){
+                /* not installed, say: back off like a helper that dies at once */
+                failedStarts++;
+                lastFailure=System.currentTimeMillis();
+                throw e;
+            }
+            process=p;
+            out=new BufferedOutputStream(p.getOutputStream());
+            failedStarts++;
+            starts++;
+            log.info("Started xattr helper "+Arrays.toString(command)+(starts>1 ? " (restart "+(starts-1)+")" : ""));
+
+            Thread reader=new Thread(new Runnable(){
+                public void run(){
+                    readResponses(p);
+                }
+            }, "glusterfs-xattr-helper");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        String[] request(String[] fileNames,String name,long timeout) throws IOException{
+            Request[] requests=new Request[fileNames.length];
+            String escapedName=escape(name);
+
+            synchronized(this){
+                start();
+                Process p=process;
+                try{
+                    for(int i=0;i<fileNames.length;i++){
+                        long id=nextId++;
+                        requests[i]=new Request(p);
+                        inFlight.put(id, requests[i]);
+                        out.write((id+"\t"+escapedName+"\t"+escape(fileNames[i])+"\n").getBytes(UTF8));
+                    }
+                    out.flush();
+                }catch (IOException e){
+                    died(p, e);
+                    throw e;
+                }
+            }
+
+            String[] values=new String[fileNames.length];
+            long deadline=System.currentTimeMillis()+timeout;
+            for(int i=0;i<requests.length;i++){
+                Request r=requests[i];
+                try{
+                    long wait=Math.max(0, deadline-System.currentTimeMillis());
+                    if(!r.done.await(wait, TimeUnit.MILLISECONDS)){
+                        died(r.owner, new IOException("xattr helper did not answer within "+timeout+"ms"));
+                    }
+                }catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted waiting for xattr helper");
+                }
+                if(r.error!=null) throw r.error;
+                values[i]=r.value;
+            }
+            return values;
+        }
+
+        private void readResponses(Process p){
+            IOException cause=null;
+            try{
+                BufferedReader in=new BufferedReader(new InputStreamReader(p.getInputStream(), UTF8));
+                String line;
+                while((line=in.readLine())!=null){
+                    int tab=line.indexOf('\t');
+                    if(tab<0||tab+1>=line.length()) continue;
+                    Request r=inFlight.remove(Long.parseLong(line.substring(0, tab)));
+                    if(r==null) continue;
+                    /* '+' carries a value, '-' an errno meaning there is none */
+                    if(line.charAt(tab+1)=='+'){
+                        r.value=unescape(line.substring(tab+2));
+                    }
+                    r.done.countDown();
+                    synchronized(this){
+                        failedStarts=0;
+                    }
+                }
+                cause=new IOException("xattr helper exited");
+            }catch (IOException e){
+                cause=e;
+            }catch (NumberFormatException e){
+                cause=new IOException("garbled answer from xattr helper: "+e.getMessage());
+            }
+            died(p, cause);
+        }
+
+        /* forget a helper process and fail whatever it still owed us */
+        private void died(Process p,IOException cause){
+            synchronized(this){
+                if(process==p){
+                    process=null;
+                    out=null;
+                    lastFailure=System.currentTimeMillis();
+                    log.warn("xattr helper "+Arrays.toString(command)+" lost: "+cause.getMessage());
+                }
+            }
+            p.destroy();
+
+            Iterator<Request> it=inFlight.values().iterator();
+            while(it.hasNext()){
+                Request r=it.next();
+                if(r.owner==p){
+                    it.remove();
+                    r.error=cause;
+                    r.done.countDown();
+                }
+            }
+        }
+    }
+}
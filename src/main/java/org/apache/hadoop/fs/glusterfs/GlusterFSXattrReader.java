@@ -0,0 +1,36 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+
+/*
+ * Reads extended attributes off files on the FUSE mount.  Implementations are
+ * selected with fs.glusterfs.xattr.reader.
+ */
+public interface GlusterFSXattrReader{
+
+    /* returns the attribute value, or null if this reader cannot supply it for the file */
+    public String getXattr(String fileName,String name) throws IOException;
+
+    /* batch form of getXattr, entries are null where there is no answer */
+    public String[] getXattrs(String[] fileNames,String name) throws IOException;
+
+}
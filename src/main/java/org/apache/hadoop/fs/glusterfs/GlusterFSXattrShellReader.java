@@ -0,0 +1,75 @@
+/**
+ *
+ * Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+
+/*
+ * Reads extended attributes by forking getfattr (through sudo by default, trusted.*
+ * keys need root).  One process per call, so this is the fallback path only.
+ */
+public class GlusterFSXattrShellReader extends GlusterFSAbstractXattrReader{
+
+    public static final String GETFATTR_COMMAND_KEY="fs.glusterfs.getfattr.command";
+    public static final String DEFAULT_GETFATTR_COMMAND="sudo getfattr -m . -n";
+
+    private String[] command=DEFAULT_GETFATTR_COMMAND.split("\\s+");
+
+    public GlusterFSXattrShellReader(){}
+
+    public GlusterFSXattrShellReader(String command){
+        this.command=command.trim().split("\\s+");
+    }
+
+    public void setConf(Configuration conf){
+        super.setConf(conf);
+        if(conf!=null){
+            command=conf.get(GETFATTR_COMMAND_KEY, DEFAULT_GETFATTR_COMMAND).trim().split("\\s+");
+        }
+    }
+
+    public String getXattr(String fileName,String name) throws IOException{
+        String[] args=new String[command.length+2];
+        System.arraycopy(command, 0, args, 0, command.length);
+        args[command.length]=name;
+        args[command.length+1]=fileName;
+
+        String output=GlusterFSXattr.shellToString(args);
+        if(output==null||output.length()==0) return null;
+
+        /* getfattr prints '# file: ...' followed by name="text", or name=0x... / name=0s... for binary values */
+        String marker=name+"=";
+        int begin=output.indexOf(marker);
+        if(begin<0) return output;
+        begin+=marker.length();
+        if(begin<output.length()&&output.charAt(begin)=='"'){
+            begin++;
+            int end=output.lastIndexOf('"');
+            return end>=begin ? output.substring(begin, end) : output.substring(begin);
+        }
+        return output.substring(begin).trim();
+    }
+
+    public String toString(){
+        return "shell";
+    }
+}
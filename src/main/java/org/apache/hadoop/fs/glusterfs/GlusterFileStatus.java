@@ -26,6 +26,9 @@ package org.apache.hadoop.fs.glusterfs;
 import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.StringTokenizer;
 
 import org.apache.hadoop.fs.FileStatus;
@@ -56,39 +59,80 @@ public class GlusterFileStatus extends FileStatus{
         this.fs=fs;
     }
 
+    /* owner, group and mode are copied from the stat that gave length and mtime, the attributes aren't kept */
+    GlusterFileStatus(File f, PosixFileAttributes attrs, long defaultBlockSize, GlusterVolume fs){
+        super(attrs.size(), attrs.isDirectory(), 1, defaultBlockSize, fs.trimTimestamp(attrs.lastModifiedTime().toMillis()), fs.fileToPath(f));
+        this.fs=fs;
+        setPermissionInfo(attrs);
+    }
+
     GlusterFileStatus(File f, GlusterVolume fs){
        this(f,f.length(),fs);
     }
     
     @Override
     public FsPermission getPermission(){
-        if(!isPermissionLoaded()){
-            loadPermissionInfo();
-        }
+        ensurePermissionInfo();
         return super.getPermission();
     }
 
     @Override
     public String getOwner(){
-        if(!isPermissionLoaded()){
-            loadPermissionInfo();
-        }
+        ensurePermissionInfo();
         return super.getOwner();
     }
 
     @Override
     public String getGroup(){
+        ensurePermissionInfo();
+        return super.getGroup();
+    }
+
+    /* statuses are shared through the stat cache, so the lazy load is done under the lock */
+    private synchronized void ensurePermissionInfo(){
         if(!isPermissionLoaded()){
             loadPermissionInfo();
         }
-        return super.getGroup();
     }
 
-    // / loads permissions, owner, and group from `ls -ld`
+    private void setPermissionInfo(PosixFileAttributes a){
+        String permission=(a.isDirectory() ? "d" : "-")+PosixFilePermissions.toString(a.permissions());
+        /* the sticky bit isn't among the POSIX permissions, it matters on shared directories like /tmp */
+        if(a.isDirectory()&&a instanceof GlusterFSFileAttributes&&((GlusterFSFileAttributes) a).isSticky()){
+            permission=permission.substring(0, 9)+(permission.charAt(9)=='x' ? 't' : 'T');
+        }
+        setPermission(FsPermission.valueOf(permission));
+        setOwner(a.owner().getName());
+        setGroup(a.group().getName());
+    }
+
+    /*
+     * loads permissions, owner, and group with a stat of the file, or from `ls -ld`
+     * where the platform has no POSIX attribute view.
+     */
     private void loadPermissionInfo(){
+        File f=fs.pathToFile(getPath());
+        try{
+            PosixFileAttributes a=fs.readAttributes(f);
+            if(a==null){
+                loadPermissionInfoFromLs(f);
+                return;
+            }
+            setPermissionInfo(a);
+        }catch (NoSuchFileException nsfe){
+            setPermission(null);
+            setOwner(null);
+            setGroup(null);
+        }catch (IOException e){
+            throw new RuntimeException("Error while reading file permissions : "+StringUtils.stringifyException(e));
+        }
+    }
+
+    // / loads permissions, owner, and group from `ls -ld`
+    private void loadPermissionInfoFromLs(File f){
         IOException e=null;
         try{
-            StringTokenizer t=new StringTokenizer(Util.execCommand(fs.pathToFile(getPath()), Util.getGET_PERMISSION_COMMAND()));
+            StringTokenizer t=new StringTokenizer(Util.execCommand(f, Util.getGET_PERMISSION_COMMAND()));
             // expected format
             // -rw------- 1 username groupname ...
             String permission=t.nextToken();
@@ -118,9 +162,7 @@ public class GlusterFileStatus extends FileStatus{
 
     @Override
     public void write(DataOutput out) throws IOException{
-        if(!isPermissionLoaded()){
-            loadPermissionInfo();
-        }
+        ensurePermissionInfo();
         super.write(out);
     }
 
@@ -33,17 +33,25 @@ import java.io.IOException;
 import java.net.URI;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumFileSystem;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.util.Progressable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class GlusterFileSystem extends FilterFileSystem{
 
     protected static final Logger log=LoggerFactory.getLogger(GlusterFileSystem.class);
+
+    public static final String PARALLEL_LOCAL_COPY_KEY="fs.glusterfs.copy.local.parallel";
    
     public GlusterFileSystem(){
         super(new GlusterVolume());
@@ -62,12 +70,36 @@ public class GlusterFileSystem extends FilterFileSystem{
      * Get file status.
      */
     public boolean exists(Path f) throws IOException{
-        File path=pathToFile(f);
-        if(path.exists()){
-            return true;
-        }else{
-            return false;
-        }
+        return fs.exists(f);
+    }
+
+    /**
+     * Directory listing a page at a time, see GlusterVolume.listStatusIterator.
+     */
+    public RemoteIterator<FileStatus> listStatusIterator(Path f) throws IOException{
+        return ((GlusterVolume) fs).listStatusIterator(f);
+    }
+
+    /**
+     * Recursive listings walk the tree in parallel, see GlusterVolume.listFiles.
+     */
+    public RemoteIterator<LocatedFileStatus> listFiles(Path f, boolean recursive) throws IOException{
+        return fs.listFiles(f, recursive);
+    }
+
+    public RemoteIterator<LocatedFileStatus> listFiles(Path f, PathFilter filter, boolean pruneHidden) throws IOException{
+        return ((GlusterVolume) fs).listFiles(f, filter, pruneHidden);
+    }
+
+    /**
+     * Copies between paths of the volume within the mount, see GlusterVolume.copy.
+     */
+    public boolean copy(Path src, Path dst, boolean deleteSource, boolean overwrite, Progressable progress) throws IOException{
+        return ((GlusterVolume) fs).copy(src, dst, deleteSource, overwrite, progress);
+    }
+
+    public boolean copy(Path src, Path dst, boolean deleteSource, boolean overwrite, boolean preserve, Progressable progress) throws IOException{
+        return ((GlusterVolume) fs).copy(src, dst, deleteSource, overwrite, preserve, progress);
     }
 
     public void setConf(Configuration conf){
@@ -83,17 +115,53 @@ public class GlusterFileSystem extends FilterFileSystem{
      */
 
     public void copyFromLocalFile(boolean delSrc,Path src,Path dst) throws IOException{
+        copyFromLocalFile(delSrc, true, src, dst);
+    }
+
+    /*
+     * With fs.glusterfs.copy.local.parallel on, files are copied onto this volume by
+     * the volume's copy threads, large files in ranges (see GlusterFSCopier), without
+     * checking the local .crc files; elsewhere, and by default, one stream through
+     * FileUtil.copy.
+     */
+    public void copyFromLocalFile(boolean delSrc,boolean overwrite,Path src,Path dst) throws IOException{
+        if(isParallelCopy(dst)){
+            ((GlusterVolume) fs).copyFromLocal(new File(src.toUri().getPath()), dst, delSrc, overwrite, null);
+            return;
+        }
         FileSystem srcFs=new Path("file:/"+src.toString()).getFileSystem(getConf());
         FileSystem dstFs=dst.getFileSystem(getConf());
-        FileUtil.copy(srcFs, src, dstFs, dst, delSrc, getConf());
+        FileUtil.copy(srcFs, src, dstFs, dst, delSrc, overwrite, getConf());
+    }
+
+    public void copyFromLocalFile(boolean delSrc,boolean overwrite,Path[] srcs,Path dst) throws IOException{
+        if(srcs.length>1 && !(exists(dst) && getFileStatus(dst).isDirectory())){
+            throw new IOException("copying multiple files, but last argument `"+dst+"' is not a directory");
+        }
+        for(Path src : srcs)
+            copyFromLocalFile(delSrc, overwrite, src, dst);
     }
 
     public void copyToLocalFile(boolean delSrc,Path src,Path dst) throws IOException{
+        copyToLocalFile(delSrc, src, dst, false);
+    }
+
+    /* the parallel copy writes no .crc files, so a checksummed local file system gets the single stream */
+    public void copyToLocalFile(boolean delSrc,Path src,Path dst,boolean useRawLocalFileSystem) throws IOException{
+        FileSystem dstFs=useRawLocalFileSystem ? getLocal(getConf()).getRawFileSystem() : new Path("file:/"+dst.toString()).getFileSystem(getConf());
+        if(!(dstFs instanceof ChecksumFileSystem) && isParallelCopy(src)){
+            ((GlusterVolume) fs).copyToLocal(src, new File(dst.toUri().getPath()), delSrc, true, null);
+            return;
+        }
         FileSystem srcFs=src.getFileSystem(getConf());
-        FileSystem dstFs=new Path("file:/"+dst.toString()).getFileSystem(getConf());
         FileUtil.copy(srcFs, src, dstFs, dst, delSrc, getConf());
     }
 
+    /* the path is on this volume, where the copy engine can reach it through the mount */
+    private boolean isParallelCopy(Path p){
+        return getConf().getBoolean(PARALLEL_LOCAL_COPY_KEY, false) && ((GlusterVolume) fs).sameVolume(makeQualified(p));
+    }
+
     @Override
     public boolean mkdirs(Path f) throws IOException {
         return mkdirs(f, FsPermission.getDirDefault().applyUMask(FsPermission.getUMask(getConf())));
@@ -26,19 +26,52 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Hashtable;
-import java.util.Vector;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.net.CachedDNSToSwitchMapping;
+import org.apache.hadoop.net.DNSToSwitchMapping;
+import org.apache.hadoop.net.NodeBase;
+import org.apache.hadoop.net.ScriptBasedMapping;
+import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,15 +87,56 @@ public class GlusterVolume extends RawLocalFileSystem{
     public static final int OVERRIDE_WRITE_BUFFER_SIZE = 1024 * 4;
     public static final int OPTIMAL_WRITE_BUFFER_SIZE = 1024 * 128;
     public static final int DEFAULT_BLOCK_SIZE = 64 * 1024 * 1024;
+    public static final String SORT_LISTING_KEY = "fs.glusterfs.sort.directory.listing";
+    public static final String LIST_PAGE_SIZE_KEY = "fs.glusterfs.list.page.size";
+    public static final String RECURSIVE_THREADS_KEY = "fs.glusterfs.list.recursive.threads";
+    public static final String RECURSIVE_STALL_TIMEOUT_KEY = "fs.glusterfs.list.recursive.stall.timeout";
+    public static final String PRUNE_HIDDEN_KEY = "fs.glusterfs.list.recursive.prune.hidden";
+    public static final String LOCATED_THREADS_KEY = "fs.glusterfs.list.located.threads";
+    public static final String LOCATED_BATCH_KEY = "fs.glusterfs.list.located.batch";
+    public static final String COPY_THREADS_KEY = "fs.glusterfs.copy.threads";
+    public static final String DELETE_THREADS_KEY = "fs.glusterfs.delete.threads";
+    public static final String CHANNEL_INPUT_KEY = "fs.glusterfs.input.channel";
     
     protected URI NAME = null;
  
-    protected Hashtable<String,String> volumes=new Hashtable<String,String>();
+    protected GlusterFSVolumeResolver resolver = null;
     protected String default_volume = null;
+    /* authority of paths on this instance's volume, and whether paths without one are on it */
+    private String localAuthority = null;
+    private boolean localWithoutAuthority = false;
     protected boolean sortDirectoryListing = false;
+    protected boolean sortDirectoryListingByName = false;
     protected int tsPrecisionChop;
+    /* off once the platform turns out to have no unix attribute view */
+    private volatile boolean unixAttributes = true;
     
-    protected static GlusterFSXattr attr = null;
+    protected GlusterFSXattrReader xattrReader = null;
+    protected GlusterFSBlockLocationCache blockLocationCache = new GlusterFSBlockLocationCache(0, 0);
+    protected GlusterFSStatCache statCache = new GlusterFSStatCache(0, 0);
+    protected Hashtable<String,GlusterFSDhtLocator> dhtLocators=new Hashtable<String,GlusterFSDhtLocator>();
+    protected Hashtable<String,GlusterFSShardLocator> shardLocators=new Hashtable<String,GlusterFSShardLocator>();
+    protected Hashtable<String,Map<String,Integer>> disperseRedundancy=new Hashtable<String,Map<String,Integer>>();
+    protected DNSToSwitchMapping topology = null;
+    protected int listPageSize = 1000;
+    protected int locatedThreads = 8;
+    protected int locatedBatch = 100;
+    private ThreadPoolExecutor locationExecutor = null;
+    protected int recursiveThreads = 8;
+    protected long recursiveStallTimeout = 0;
+    protected boolean pruneHidden = false;
+    private ForkJoinPool listingPool = null;
+    protected int copyThreads = 8;
+    private ForkJoinPool copyPool = null;
+    protected GlusterFSCopier copier = new GlusterFSCopier(this, GlusterFSCopier.DEFAULT_RANGE_SIZE, GlusterFSCopier.DEFAULT_BUFFER_SIZE);
+    protected int deleteThreads = 8;
+    private ForkJoinPool deletePool = null;
+    protected GlusterFSDeleter deleter = new GlusterFSDeleter(this, false, 0);
+    protected GlusterFSBufferPool bufferPool = new GlusterFSBufferPool(0, 0, false);
+    protected boolean channelInput = true;
+    protected GlusterFSPrefetcher prefetcher = new GlusterFSPrefetcher(false, 1, 0, 0, 1);
+    protected GlusterFSWriteBehind writeBehind = new GlusterFSWriteBehind(false, 1, 1);
+    protected GlusterFSContentSummarizer contentSummarizer = new GlusterFSContentSummarizer(this, false);
     
     public GlusterVolume(){}
     
@@ -125,7 +199,7 @@ public class GlusterVolume extends RawLocalFileSystem{
                 }
                 String[] v=r.split(",");
                 
-                default_volume = v[0];
+                Map<String,String> mounts = new LinkedHashMap<String,String>();
                 for(int i=0;i<v.length;i++){
                     String vol = conf.get("fs.glusterfs.volume.fuse." + v[i] , null);
                     
@@ -135,8 +209,19 @@ public class GlusterVolume extends RawLocalFileSystem{
                         throw new RuntimeException("Invalid volume name: " + v[i]
                         		+ ", No mount point available for the volume.");
                     }
-                    volumes.put(v[i],vol);
-                    log.info("Gluster volume: " + v[i] + " at : " + volumes.get(v[i]));
+                    mounts.put(v[i],vol);
+                    log.info("Gluster volume: " + v[i] + " at : " + vol);
+                }
+                resolver = new GlusterFSVolumeResolver(mounts);
+                default_volume = resolver.getDefaultVolume();
+                
+                /* as checkPath would decide, worked out once for pathToFile's fast path */
+                localAuthority = canonicalizeUri(getUri()).getAuthority();
+                try{
+                    checkPath(new Path(getUri().getScheme(), null, "/"));
+                    localWithoutAuthority = true;
+                }catch(IllegalArgumentException e){
+                    localWithoutAuthority = false;
                 }
 
                 String jtSysDir = conf.get("mapreduce.jobtracker.system.dir", null);
@@ -187,9 +272,15 @@ public class GlusterVolume extends RawLocalFileSystem{
                 }
                 log.info("Default block size : " +conf.getInt("fs.local.block.size",-1)) ;
                 
-                sortDirectoryListing=conf.getBoolean("fs.glusterfs.sort.directory.listing",false);
+                /*
+                 * "true" sorts the statuses of a listing, "name" orders the entries by name
+                 * before they are stat'ed, so a listing can be handed out in order as it goes.
+                 */
+                String sortMode=conf.getTrimmed(SORT_LISTING_KEY, "false");
+                sortDirectoryListingByName="name".equalsIgnoreCase(sortMode);
+                sortDirectoryListing=sortDirectoryListingByName || "true".equalsIgnoreCase(sortMode);
                 
-                log.info("Directory list order : " + (sortDirectoryListing?"sorted":"fs ordering")) ;
+                log.info("Directory list order : " + (sortDirectoryListingByName?"sorted by name":sortDirectoryListing?"sorted":"fs ordering")) ;
                 
                 /* 
                  * Chops the specified number of least-significant-digits from the timestamp.
@@ -200,6 +291,94 @@ public class GlusterVolume extends RawLocalFileSystem{
                 tsPrecisionChop=conf.getInt("fs.glusterfs.timestamp.trim", 0);
                 log.info("File timestamp lease significant digits removed : " + tsPrecisionChop) ;
                 
+                xattrReader = GlusterFSXattr.createReader(conf);
+                log.info("Extended attribute reader : " + xattrReader) ;
+                
+                blockLocationCache = new GlusterFSBlockLocationCache(conf);
+                log.info("Block location cache : " + blockLocationCache) ;
+                
+                statCache = new GlusterFSStatCache(conf);
+                log.info("Stat cache : " + statCache) ;
+                
+                /*
+                 * Block locations from the DHT layout, for volumes with a local copy of the volfile,
+                 * and per shard on sharded volumes.
+                 */
+                for(int i=0;i<v.length;i++){
+                    String volfilePath = conf.get(GlusterFSDhtLocator.VOLFILE_KEY_PREFIX + v[i], null);
+                    GlusterFSVolfile volfile = volfilePath==null ? null : GlusterFSVolfile.load(volfilePath);
+                    
+                    GlusterFSDhtLocator locator = null;
+                    if(volfile!=null){
+                        locator = new GlusterFSDhtLocator(volfile, xattrReader, conf);
+                        dhtLocators.put(v[i], locator);
+                        disperseRedundancy.put(v[i], volfile.getDisperseRedundancy());
+                        log.info("DHT placement for " + v[i] + " from " + volfilePath + " : " + locator) ;
+                    }
+                    
+                    long shardSize = volfile!=null ? volfile.getShardBlockSize() : conf.getLongBytes(GlusterFSShardLocator.SHARD_BLOCK_SIZE_KEY, 0);
+                    if(shardSize>0){
+                        GlusterFSShardLocator shards = new GlusterFSShardLocator(resolver.getMount(v[i]), xattrReader, locator, disperseRedundancy.get(v[i]), shardSize, blockLocationCache);
+                        shardLocators.put(v[i], shards);
+                        log.info("Shard locations for " + v[i] + " : " + shards) ;
+                    }
+                }
+                
+                /*
+                 * Rack of each block location host, from the cluster's topology mapping.
+                 */
+                Class<? extends DNSToSwitchMapping> mapping = conf.getClass(CommonConfigurationKeysPublic.NET_TOPOLOGY_NODE_SWITCH_MAPPING_IMPL_KEY,
+                        ScriptBasedMapping.class, DNSToSwitchMapping.class);
+                topology = ReflectionUtils.newInstance(mapping, conf);
+                if(!(topology instanceof CachedDNSToSwitchMapping))
+                    topology = new CachedDNSToSwitchMapping(topology);
+                log.info("Block location topology : " + topology) ;
+                
+                listPageSize = Math.max(1, conf.getInt(LIST_PAGE_SIZE_KEY, 1000));
+                log.info("Directory listing page size : " + listPageSize) ;
+                
+                /*
+                 * Located listings look up block locations in batches, on a few threads.
+                 */
+                locatedThreads = Math.max(1, conf.getInt(LOCATED_THREADS_KEY, 8));
+                locatedBatch = Math.max(1, conf.getInt(LOCATED_BATCH_KEY, 100));
+                log.info("Located listing : " + locatedThreads + " threads, batches of " + locatedBatch) ;
+                
+                recursiveThreads = Math.max(1, conf.getInt(RECURSIVE_THREADS_KEY, 8));
+                recursiveStallTimeout = conf.getLong(RECURSIVE_STALL_TIMEOUT_KEY, 0);
+                pruneHidden = conf.getBoolean(PRUNE_HIDDEN_KEY, false);
+                log.info("Recursive listing : " + recursiveThreads + " threads" + (recursiveStallTimeout > 0 ? ", given up after " + recursiveStallTimeout + "ms unread" : "") + (pruneHidden ? ", hidden files pruned" : "")) ;
+                
+                contentSummarizer = new GlusterFSContentSummarizer(this, conf.getBoolean(GlusterFSContentSummarizer.QUOTA_SUMMARY_KEY, false));
+                log.info("Content summaries : " + contentSummarizer) ;
+                
+                copyThreads = Math.max(1, conf.getInt(COPY_THREADS_KEY, 8));
+                copier = new GlusterFSCopier(this, conf);
+                log.info("Copies : " + copyThreads + " threads, " + copier) ;
+                
+                deleteThreads = Math.max(1, conf.getInt(DELETE_THREADS_KEY, 8));
+                deleter.close();
+                deleter = new GlusterFSDeleter(this, conf);
+                log.info("Recursive deletes : " + deleteThreads + " threads, " + deleter) ;
+                if(deleter.isAsync()){
+                    for(String volume : resolver.getVolumes())
+                        deleter.purgeTrashIfDue(resolver.getMount(volume));
+                }
+                
+                bufferPool.close();
+                bufferPool = new GlusterFSBufferPool(conf);
+                log.info("Stream buffers : " + bufferPool) ;
+                
+                channelInput = conf.getBoolean(CHANNEL_INPUT_KEY, true);
+                log.info("Input streams : " + (channelInput ? "file channel, lock-free positional reads" : "local file system")) ;
+                prefetcher.close();
+                prefetcher = new GlusterFSPrefetcher(conf);
+                log.info("Sequential read ahead : " + (channelInput ? prefetcher.toString() : "off, needs file channel input")) ;
+                
+                writeBehind.close();
+                writeBehind = new GlusterFSWriteBehind(conf);
+                log.info("Write behind : " + writeBehind) ;
+                
             }
             catch (Exception e){
                 throw new RuntimeException(e);
@@ -222,6 +401,13 @@ public class GlusterVolume extends RawLocalFileSystem{
       
       if(path==null) return null;
       
+      /* qualified absolute paths on this volume need no checks or qualifying */
+      URI uri = path.toUri();
+      if(isLocal(uri)){
+          File f = resolver.toFile(uri.getAuthority(), uri.getPath());
+          if(f!=null) return f;
+      }
+      
       checkPath(path);
       
       if (!path.isAbsolute()) {
@@ -234,15 +420,21 @@ public class GlusterVolume extends RawLocalFileSystem{
       if(scheme==null || "".equals(scheme)){
          return pathToFile(path.makeQualified(this));
         
-      }else if(volume==null){
-          volume = default_volume;
       }
-      String volPath = this.volumes.get(volume);
-      if(volPath==null){
+      File f = resolver==null ? null : resolver.toFile(volume, path.toUri().getPath());
+      if(f==null){
           throw new RuntimeException("Error undefined volume:" + volume + " in path: " + path);
       }
-              
-      return new File(volPath + "/" + path.toUri().getPath());
+      return f;
+    }
+    
+    private boolean isLocal(URI uri){
+        String scheme = uri.getScheme();
+        String path = uri.getPath();
+        if(scheme==null || resolver==null || path==null || !path.startsWith("/")) return false;
+        if(!scheme.equalsIgnoreCase(NAME==null ? GlusterFSVolumeResolver.SCHEME : NAME.getScheme())) return false;
+        String auth = uri.getAuthority();
+        return auth==null ? localWithoutAuthority : auth.equalsIgnoreCase(localAuthority);
     }
     
     protected Path getInitialWorkingDirectory() {
@@ -251,40 +443,33 @@ public class GlusterVolume extends RawLocalFileSystem{
 	}
     
 	public Path fileToPath(File path) {
-	    Enumeration<String> all = volumes.keys();
-	    String rawPath = path.getAbsolutePath();
-	    
-	    String volume = null;
-	    String root = null;
-	    
-	    while(volume==null && all.hasMoreElements()){
-	        String nextVolume = all.nextElement();
-	        String nextPath = volumes.get(nextVolume);
-	        if(rawPath.startsWith(nextPath)){
-	            volume = nextVolume;
-	            root = nextPath;
-	        }
-	    }
-	  
-	    if(volume==null){
+	    Path p = resolver==null ? null : resolver.toPath(path);
+	    if(p==null){
 	        throw new RuntimeException("No volume matching path: " + path);
 	    }
-	    
-	    if(default_volume.equalsIgnoreCase(volume))
-	        volume = "";
-	    return new Path("glusterfs://" + volume + "/" + rawPath.substring(root.length()));
+	    return p;
      }
 
      public boolean rename(Path src, Path dst) throws IOException {
 		File dest = pathToFile(dst);
+		File source = pathToFile(src);
+		blockLocationCache.invalidateTree(source.getPath());
+		blockLocationCache.invalidateTree(dest.getPath());
+		invalidateDhtLayout(src);
 		
-		/* two HCFS semantics java.io.File doesn't honor */
-		if(dest.exists() && dest.isFile() || !(new File(dest.getParent()).exists())) return false;
-		
-		if (!dest.exists() && pathToFile(src).renameTo(dest)) {
-	      return true;
-	    }
-	    return FileUtil.copy(this, src, this, dst, true, getConf());
+		try{
+    		/* two HCFS semantics java.io.File doesn't honor */
+    		if(dest.exists() && dest.isFile() || !(new File(dest.getParent()).exists())) return false;
+    		
+    		if (!dest.exists() && source.renameTo(dest)) {
+    	      return true;
+    	    }
+    	    /* across what renameTo can't move, copy within the mount and remove the source, overwriting as FileUtil.copy did */
+    	    return copy(src, dst, true, true, true, null);
+		}finally{
+		    statCache.invalidateTree(source.getPath());
+		    statCache.invalidateTree(dest.getPath());
+		}
 	}
 	  /**
 	   * Delete the given path to a file or directory.
@@ -296,16 +481,138 @@ public class GlusterVolume extends RawLocalFileSystem{
 	@Override
 	public boolean delete(Path p, boolean recursive) throws IOException {
 	    File f = pathToFile(p);
-	    if(!f.exists()){
-	    	/* HCFS semantics expect 'false' if attempted file deletion on non existent file */
-	    	return false;
-	    }else if (f.isFile()) {
-	      return f.delete();
-	    } else if (!recursive && f.isDirectory() && 
-	        (FileUtil.listFiles(f).length != 0)) {
-	      throw new IOException("Directory " + f.toString() + " is not empty");
+	    blockLocationCache.invalidateTree(f.getPath());
+	    invalidateDhtLayout(p);
+	    try{
+    	    if(!f.exists()){
+    	    	/* HCFS semantics expect 'false' if attempted file deletion on non existent file */
+    	    	return false;
+    	    }else if (f.isFile()) {
+    	      return f.delete();
+    	    } else if (!recursive && f.isDirectory() && 
+    	        (FileUtil.listFiles(f).length != 0)) {
+    	      throw new IOException("Directory " + f.toString() + " is not empty");
+    	    }
+    	    if(deleter.isAsync() && f.isDirectory() && deleter.deleteLater(f, resolver.getMount(resolver.toVolume(f)))){
+    	        return true;
+    	    }
+    	    return deleter.delete(f);
+	    }finally{
+	        statCache.invalidateTree(f.getPath());
+	    }
+	}
+	
+	/* FileChannel streams, whose positional reads don't serialize concurrent readers, reading ahead of sequential scans if prefetch is on */
+	public FSDataInputStream open(Path f, int bufferSize) throws IOException {
+	    if(!channelInput) return super.open(f, bufferSize);
+	    if(prefetcher.isEnabled()) return new FSDataInputStream(new GlusterFSPrefetchInputStream(pathToFile(f), bufferSize, statistics, bufferPool, prefetcher));
+	    return new FSDataInputStream(new GlusterFSInputStream(pathToFile(f), bufferSize, statistics, bufferPool));
+	}
+	
+	public FSDataOutputStream create(Path f, boolean overwrite, int bufferSize, short replication, long blockSize,
+	        Progressable progress) throws IOException {
+	    String file = pathToFile(f).getPath();
+	    blockLocationCache.invalidate(file);
+	    try{
+	        if(writeBehind.isEnabled()) return invalidating(createWriteBehind(f, overwrite, true, bufferSize), file);
+	        return invalidating(super.create(f, overwrite, bufferSize, replication, blockSize, progress), file);
+	    }finally{
+	        statCache.invalidate(file);
+	    }
+	}
+	
+	public FSDataOutputStream create(Path f, FsPermission permission, boolean overwrite, int bufferSize, short replication,
+	        long blockSize, Progressable progress) throws IOException {
+	    if(!writeBehind.isEnabled()) return super.create(f, permission, overwrite, bufferSize, replication, blockSize, progress);
+	    FSDataOutputStream out = create(f, overwrite, bufferSize, replication, blockSize, progress);
+	    setPermission(f, permission);
+	    return out;
+	}
+	
+	/* the local file system's create, with a stream that writes behind the caller */
+	private FSDataOutputStream createWriteBehind(Path f, boolean overwrite, boolean createParent, int bufferSize) throws IOException {
+	    if(exists(f) && !overwrite){
+	        throw new IOException("File already exists: " + f);
+	    }
+	    Path parent = f.getParent();
+	    if(createParent && parent != null && !mkdirs(parent)){
+	        throw new IOException("Mkdirs failed to create " + parent);
+	    }
+	    return new FSDataOutputStream(new GlusterFSOutputStream(pathToFile(f), false, bufferSize, bufferPool, writeBehind), statistics);
+	}
+	
+	public FSDataOutputStream createNonRecursive(Path f, FsPermission permission, boolean overwrite, int bufferSize,
+	        short replication, long blockSize, Progressable progress) throws IOException {
+	    String file = pathToFile(f).getPath();
+	    blockLocationCache.invalidate(file);
+	    try{
+	        if(writeBehind.isEnabled()){
+	            FSDataOutputStream out = createWriteBehind(f, overwrite, false, bufferSize);
+	            setPermission(f, permission);
+	            return invalidating(out, file);
+	        }
+	        return invalidating(super.createNonRecursive(f, permission, overwrite, bufferSize, replication, blockSize, progress), file);
+	    }finally{
+	        statCache.invalidate(file);
+	    }
+	}
+	
+	public FSDataOutputStream append(Path f, int bufferSize, Progressable progress) throws IOException {
+	    String file = pathToFile(f).getPath();
+	    blockLocationCache.invalidate(file);
+	    try{
+	        if(writeBehind.isEnabled()){
+	            if(!exists(f)){
+	                throw new FileNotFoundException("File " + f + " not found");
+	            }
+	            if(getFileStatus(f).isDirectory()){
+	                throw new IOException("Cannot append to a directory (=" + f + " )");
+	            }
+	            return invalidating(new FSDataOutputStream(new GlusterFSOutputStream(pathToFile(f), true, bufferSize, bufferPool, writeBehind), statistics), file);
+	        }
+	        return invalidating(super.append(f, bufferSize, progress), file);
+	    }finally{
+	        statCache.invalidate(file);
+	    }
+	}
+	
+	private FSDataOutputStream invalidating(FSDataOutputStream out, String file) throws IOException {
+	    return new InvalidatingOutputStream(out, file);
+	}
+	
+	/* what a stream writes is seen once it is flushed or closed, so the caches forget the file then too */
+	private class InvalidatingOutputStream extends FSDataOutputStream {
+	    private final String file;
+	    
+	    InvalidatingOutputStream(FSDataOutputStream out, String file) throws IOException {
+	        super(out.getWrappedStream(), statistics, out.getPos());
+	        this.file = file;
+	    }
+	    
+	    public void close() throws IOException {
+	        try{
+	            super.close();
+	        }finally{
+	            blockLocationCache.invalidate(file);
+	            statCache.invalidate(file);
+	        }
+	    }
+	    
+	    public void hflush() throws IOException {
+	        try{
+	            super.hflush();
+	        }finally{
+	            statCache.invalidate(file);
+	        }
+	    }
+	    
+	    public void hsync() throws IOException {
+	        try{
+	            super.hsync();
+	        }finally{
+	            statCache.invalidate(file);
+	        }
 	    }
-	    return FileUtil.fullyDelete(f);
 	}
 	
 	public boolean mkdirs(Path f) throws IOException {
@@ -315,14 +622,169 @@ public class GlusterVolume extends RawLocalFileSystem{
 	      
 	      f = f.makeQualified(this);
 	      
-	      return super.mkdirs(f);
+	      /* parents are made through here too, a cached directory ends the climb */
+	      if(statCache.isEnabled()){
+	          try{
+	              if(getFileStatus(f).isDirectory()) return true;
+	          }catch(FileNotFoundException e){
+	              // made below
+	          }
+	      }
+	      
+	      try{
+	          return super.mkdirs(f);
+	      }finally{
+	          statCache.invalidate(pathToFile(f).getPath());
+	      }
 	}
 	  
+	/*
+	 * One readdir pass and one stat per entry, which gives a complete status; with
+	 * FUSE readdirplus the stats are answered from the attributes the readdir brought.
+	 */
 	public FileStatus[] listStatus(Path f) throws IOException {
         File localf = pathToFile(f);
-        Vector<FileStatus> results = new Vector<FileStatus>();
+        FileStatus[] listing = statCache.getListing(localf.getPath());
+        if(listing!=null) return listing;
         
-   
+        listing = listStatus(f, localf);
+        if(listing!=null && statCache.isEnabled()){
+            statCache.putListing(localf.getPath(), listing);
+            for(FileStatus s : listing){
+                statCache.putStatus(pathToFile(s.getPath()).getPath(), s);
+            }
+        }
+        return listing;
+    }
+    
+    private FileStatus[] listStatus(Path f, File localf) throws IOException {
+
+        PosixFileAttributes attrs;
+        try{
+            attrs = readAttributes(localf);
+        }catch(FileSystemException e){
+            // missing, or not a directory on the way
+            throw new FileNotFoundException("File " + f + " does not exist");
+        }
+        if(attrs==null){
+            return listStatusByFile(f, localf);
+        }
+        if (!attrs.isDirectory()) {
+          return new FileStatus[] {
+            new GlusterFileStatus(localf, attrs, getDefaultBlockSize(), this) };
+        }
+        
+        File[] names = listEntries(f, localf);
+        ArrayList<FileStatus> results = new ArrayList<FileStatus>(names.length);
+        for (int i = 0; i < names.length; i++) {
+          FileStatus listing = getEntryStatus(names[i]);
+          if(listing!=null) results.add(listing);
+        }
+
+        return sortListing(results.toArray(new FileStatus[results.size()]));
+        
+    }
+    
+    /*
+     * Directory listing a page at a time (fs.glusterfs.list.page.size entries), for
+     * directories too large to hold as one array.  Listings sorted by status are
+     * sorted as a whole, as listStatus does.
+     */
+    public RemoteIterator<FileStatus> listStatusIterator(final Path f) throws IOException {
+        File localf = pathToFile(f);
+        
+        PosixFileAttributes attrs;
+        try{
+            attrs = readAttributes(localf);
+        }catch(FileSystemException e){
+            throw new FileNotFoundException("File " + f + " does not exist");
+        }
+        if(attrs==null || !attrs.isDirectory() || (sortDirectoryListing && !sortDirectoryListingByName)){
+            final FileStatus[] listing = listStatus(f);
+            return new RemoteIterator<FileStatus>(){
+                private int i = 0;
+                public boolean hasNext(){
+                    return i<listing.length;
+                }
+                public FileStatus next(){
+                    if(!hasNext()) throw new NoSuchElementException("No more entries");
+                    return listing[i++];
+                }
+            };
+        }
+        
+        if(sortDirectoryListingByName){
+            return new GlusterFSStatusIterator(this, listEntries(f, localf), listPageSize);
+        }
+        return new GlusterFSStatusIterator(this, openDirectory(f, localf), listPageSize);
+    }
+    
+    /* complete status of a listed entry, null if it has gone since the readdir */
+    protected FileStatus getEntryStatus(File name) throws IOException {
+        try {
+            PosixFileAttributes attrs = readAttributes(name);
+            if(attrs==null) return getFileStatus(fileToPath(name));
+            return new GlusterFileStatus(name, attrs, getDefaultBlockSize(), this);
+        } catch (NoSuchFileException e) {
+            log.info("ignoring invisible path :  " + name);
+        } catch (FileNotFoundException e) {
+            log.info("ignoring invisible path :  " + name);
+        }
+        return null;
+    }
+    
+    protected DirectoryStream<java.nio.file.Path> openDirectory(Path f, File dir) throws IOException {
+        try{
+            return Files.newDirectoryStream(dir.toPath());
+        }catch(AccessDeniedException e){
+            throw new IOException("Access denied : " + f.toString());
+        }catch(NoSuchFileException e){
+            throw new FileNotFoundException("File " + f + " does not exist");
+        }
+    }
+    
+    /*
+     * Entries of a directory in one readdir pass, in name order when listings are
+     * sorted by name.
+     */
+    protected File[] listEntries(Path f, File dir) throws IOException {
+        ArrayList<File> names = new ArrayList<File>();
+        DirectoryStream<java.nio.file.Path> entries = openDirectory(f, dir);
+        
+        try{
+            for (java.nio.file.Path entry : entries) {
+              names.add(entry.toFile());
+            }
+        }catch(DirectoryIteratorException e){
+            throw e.getCause();
+        }finally{
+            entries.close();
+        }
+        
+        File[] result = names.toArray(new File[names.size()]);
+        if(sortDirectoryListingByName){
+            Arrays.sort(result, BY_NAME);
+        }
+        return result;
+    }
+    
+    /* entries of one directory, all with the same parent */
+    private static final Comparator<File> BY_NAME = new Comparator<File>(){
+        public int compare(File a, File b){
+            return a.getName().compareTo(b.getName());
+        }
+    };
+    
+    /* one sort of the whole listing, unless the entries were already taken in name order */
+    private FileStatus[] sortListing(FileStatus[] results){
+        if(sortDirectoryListing && !sortDirectoryListingByName){
+            Arrays.sort(results);
+        }
+        return results;
+    }
+    
+    /* without POSIX attributes, a status per listed file */
+    private FileStatus[] listStatusByFile(Path f, File localf) throws IOException {
         if (!localf.exists()) {
           throw new FileNotFoundException("File " + f + " does not exist");
         }
@@ -339,33 +801,42 @@ public class GlusterVolume extends RawLocalFileSystem{
         if (names == null) {
           return null;
         }
+        if(sortDirectoryListingByName){
+            Arrays.sort(names, BY_NAME);
+        }
         
+        ArrayList<FileStatus> results = new ArrayList<FileStatus>(names.length);
         for (int i = 0; i < names.length; i++) {
           try {
-            FileStatus listing = getFileStatus(fileToPath(names[i]));
-            if(sortDirectoryListing){
-                int j;
-                for(j=0;j<results.size();j++){
-                    
-                        if(results.get(j).compareTo(listing)>0){
-                            results.insertElementAt(listing,j);
-                            break;
-                        }
-                
-                }
-                if(results.size()==j)
-                    results.add(listing);
-            }else{
-                results.add(listing);
-            }
-            
+            results.add(getFileStatus(fileToPath(names[i])));
           } catch (FileNotFoundException e) {
         	  log.info("ignoring invisible path :  " + names[i]);
           }
         }
 
-        return results.toArray(new FileStatus[results.size()]);
-        
+        return sortListing(results.toArray(new FileStatus[results.size()]));
+    }
+    
+    /* 
+     * Type, length, mtime and permissions, with the sticky bit where the platform has a
+     * unix view, in one stat, following links as File does.  null where the platform has
+     * no POSIX attributes.
+     */
+    protected PosixFileAttributes readAttributes(File f) throws IOException {
+        if(unixAttributes){
+            try{
+                return GlusterFSFileAttributes.read(f.toPath());
+            }catch(UnsupportedOperationException e){
+                unixAttributes = false;
+            }catch(IllegalArgumentException e){
+                unixAttributes = false;
+            }
+        }
+        try{
+            return Files.readAttributes(f.toPath(), PosixFileAttributes.class);
+        }catch(UnsupportedOperationException e){
+            return null;
+        }
     }
     
     public FileStatus getFileStatus(Path f) throws IOException {
@@ -378,8 +849,38 @@ public class GlusterVolume extends RawLocalFileSystem{
             throw new FileNotFoundException( "File " + f + " does not exist on this volume." + ex);
         }
         
+        if(!statCache.isEnabled()) return getFileStatus(f, path);
+        
+        GlusterFSStatCache.Entry cached = statCache.getStatus(path.getPath());
+        if(cached!=null){
+            if(cached.isMissing()) throw new FileNotFoundException( "File " + f + " does not exist.");
+            return cached.getStatus();
+        }
+        try{
+            FileStatus status = getFileStatus(f, path);
+            statCache.putStatus(path.getPath(), status);
+            return status;
+        }catch(FileNotFoundException e){
+            statCache.putMissing(path.getPath());
+            throw e;
+        }
+    }
+    
+    private FileStatus getFileStatus(Path f, File path) throws IOException {
+        
+        /* one stat for length, mtime, type and permissions */
+        try{
+            PosixFileAttributes attrs = readAttributes(path);
+            if(attrs!=null)
+                return new GlusterFileStatus(path, attrs, getDefaultBlockSize(), this);
+        }catch(NoSuchFileException e){
+            throw new FileNotFoundException( "File " + f + " does not exist.");
+        }catch(IOException e){
+            // not a directory on the way, access denied: answered as before below
+        }
+        
         if (path.exists()) {
-          return new GlusterFileStatus(pathToFile(f), getDefaultBlockSize(), this);
+          return new GlusterFileStatus(path, getDefaultBlockSize(), this);
         } else {
           throw new FileNotFoundException( "File " + f + " does not exist.");
         }
@@ -391,23 +892,486 @@ public class GlusterVolume extends RawLocalFileSystem{
     
     public void setOwner(Path p, String username, String groupname)
             throws IOException {
-    	super.setOwner(p,username,groupname);
-    	
+    	try{
+    	    super.setOwner(p,username,groupname);
+    	}finally{
+    	    statCache.invalidate(pathToFile(p).getPath());
+    	}
     }
     
     public void setPermission(Path p, FsPermission permission)
             throws IOException {
-    	super.setPermission(p,permission);
+    	try{
+    	    super.setPermission(p,permission);
+    	}finally{
+    	    statCache.invalidate(pathToFile(p).getPath());
+    	}
+    }
+    
+    public void setTimes(Path p, long mtime, long atime) throws IOException {
+        try{
+            super.setTimes(p, mtime, atime);
+        }finally{
+            statCache.invalidate(pathToFile(p).getPath());
+        }
+    }
+    
+    /* through the stat cache when it is on, missing paths included */
+    public boolean exists(Path f) throws IOException {
+        if(!statCache.isEnabled()) return pathToFile(f).exists();
+        try{
+            getFileStatus(f);
+            return true;
+        }catch(FileNotFoundException e){
+            return false;
+        }
+    }
+
+    protected GlusterFSXattrReader getXattrReader(){
+        return xattrReader==null ? GlusterFSXattr.getDefaultReader() : xattrReader;
     }
 
     public BlockLocation[] getFileBlockLocations(FileStatus file,long start,long len) throws IOException{
         File f=pathToFile(file.getPath());
-        BlockLocation[] result = new GlusterFSXattr(f.getPath()).getPathInfo(start, len);
+        long shardSize = getShardSizes(new FileStatus[]{ file })[0];
+        
+        String[] hosts = shardSize>0 ? null : getDhtHosts(file.getPath());
+        if(hosts!=null){
+            return addTopology(new BlockLocation[][]{ GlusterFSXattr.splitBlocks(hosts, start, len, getBlockSize(file)) })[0];
+        }
+        
+        String pathinfo = getPathInfo(new String[]{ f.getPath() }, new FileStatus[]{ file })[0];
+        BlockLocation[] result = getBlockLocations(f, file, pathinfo, shardSize, start, len);
         if(result==null){
             log.info("GLUSTERFS: Problem getting host/block location for file "+f.getPath());
         }
         
-        return result;
+        return addTopology(new BlockLocation[][]{ result })[0];
+    }
+    
+    /*
+     * Locations for a set of files, each covering the whole file, looked up in one batch.
+     * Entries are null where the location isn't known.
+     */
+    public BlockLocation[][] getFileBlockLocations(FileStatus[] files) throws IOException{
+        BlockLocation[][] locations = new BlockLocation[files.length][];
+        long[] shardSizes = getShardSizes(files);
+        
+        int misses = 0;
+        for(int i=0;i<files.length;i++){
+            String[] hosts = shardSizes[i]>0 ? null : getDhtHosts(files[i].getPath());
+            if(hosts!=null){
+                locations[i] = GlusterFSXattr.splitBlocks(hosts, 0, files[i].getLen(), getBlockSize(files[i]));
+            }else{
+                misses++;
+            }
+        }
+        if(misses==0) return addTopology(locations);
+        
+        String[] names = new String[misses];
+        FileStatus[] missed = new FileStatus[misses];
+        for(int i=0,j=0;i<files.length;i++){
+            if(locations[i]!=null) continue;
+            names[j] = pathToFile(files[i].getPath()).getPath();
+            missed[j++] = files[i];
+        }
+        
+        String[] pathinfo = getPathInfo(names, missed);
+        for(int i=0,j=0;i<files.length;i++){
+            if(locations[i]!=null) continue;
+            locations[i] = getBlockLocations(new File(names[j]), missed[j], pathinfo[j], shardSizes[i], 0, missed[j].getLen());
+            j++;
+        }
+        return addTopology(locations);
+    }
+    
+    /*
+     * Fills in names and topology paths (/rack/host) of the locations, resolving
+     * each distinct host once, so schedulers can place tasks rack-locally.
+     */
+    protected BlockLocation[][] addTopology(BlockLocation[][] locations){
+        if(topology==null) return locations;
+        
+        LinkedHashMap<String,String> racks = new LinkedHashMap<String,String>();
+        for(BlockLocation[] blocks : locations){
+            if(blocks==null) continue;
+            for(BlockLocation b : blocks){
+                for(String host : getHosts(b))
+                    racks.put(host, null);
+            }
+        }
+        if(racks.isEmpty()) return locations;
+        
+        ArrayList<String> hosts = new ArrayList<String>(racks.keySet());
+        List<String> resolved = topology.resolve(hosts);
+        if(resolved==null || resolved.size()!=hosts.size()){
+            log.debug("GLUSTERFS: Can't resolve racks of " + hosts);
+            return locations;
+        }
+        for(int i=0;i<hosts.size();i++)
+            racks.put(hosts.get(i), resolved.get(i));
+        
+        for(BlockLocation[] blocks : locations){
+            if(blocks==null) continue;
+            for(BlockLocation b : blocks){
+                String[] h = getHosts(b);
+                String[] paths = new String[h.length];
+                for(int i=0;i<h.length;i++)
+                    paths[i] = NodeBase.normalize(racks.get(h[i])) + NodeBase.PATH_SEPARATOR_STR + h[i];
+                try{
+                    b.setNames(h);
+                    b.setTopologyPaths(paths);
+                }catch(IOException e){
+                    // BlockLocation setters declare it, nothing to fail on
+                }
+            }
+        }
+        return locations;
+    }
+    
+    private static String[] getHosts(BlockLocation b){
+        try{
+            return b.getHosts();
+        }catch(IOException e){
+            return new String[0];
+        }
+    }
+    
+    /* locations from the file's pathinfo, or per shard when the file is sharded */
+    private BlockLocation[] getBlockLocations(File f,FileStatus file,String pathinfo,long shardSize,long start,long len){
+        GlusterFSPathInfo parsed = GlusterFSPathInfo.parse(pathinfo, disperseRedundancy.get(getVolumeName(file.getPath())));
+        if(parsed==null) return null;
+        
+        if(shardSize>0){
+            try{
+                BlockLocation[] shards = getShardLocator(file.getPath()).getBlockLocations(f.getPath(), file.getModificationTime(), file.getLen(), parsed, shardSize, start, len, getBlockSize(file));
+                if(shards!=null) return shards;
+            }catch(IOException e){
+                log.debug("GLUSTERFS: Problem locating shards of "+f.getPath()+": "+e.getMessage());
+            }
+        }
+        return parsed.getBlockLocations(start, len, getBlockSize(file));
+    }
+    
+    /* shard size of each file, 0 where the volume or file isn't sharded */
+    protected long[] getShardSizes(FileStatus[] files){
+        long[] sizes = new long[files.length];
+        if(shardLocators.isEmpty()) return sizes;
+        
+        for(int i=0;i<files.length;i++){
+            GlusterFSShardLocator locator = getShardLocator(files[i].getPath());
+            if(locator!=null && !files[i].isDirectory()) sizes[i] = locator.getShardSize(files[i].getLen());
+        }
+        return sizes;
+    }
+    
+    private long getBlockSize(FileStatus file){
+        return file.getBlockSize()>0 ? file.getBlockSize() : getDefaultBlockSize();
+    }
+    
+    /* hosts for the file from its directory's DHT layout, null if the volume has no volfile or the layout can't place it */
+    protected String[] getDhtHosts(Path p){
+        GlusterFSDhtLocator locator = getDhtLocator(p);
+        return locator==null ? null : locator.getHosts(p.toUri().getPath());
+    }
+    
+    protected void invalidateDhtLayout(Path p){
+        GlusterFSDhtLocator locator = getDhtLocator(p);
+        if(locator!=null) locator.invalidate(p.toUri().getPath());
+    }
+    
+    private GlusterFSDhtLocator getDhtLocator(Path p){
+        if(dhtLocators.isEmpty()) return null;
+        return dhtLocators.get(getVolumeName(p));
+    }
+    
+    private GlusterFSShardLocator getShardLocator(Path p){
+        if(shardLocators.isEmpty()) return null;
+        return shardLocators.get(getVolumeName(p));
+    }
+    
+    private String getVolumeName(Path p){
+        if(!p.isAbsolute()) p = new Path(getWorkingDirectory(), p);
+        String volume = p.toUri().getAuthority();
+        if(volume==null || "".equals(volume)) volume = default_volume;
+        return volume;
+    }
+    
+    /* pathinfo for each file, from the block location cache where possible and one reader batch for the rest */
+    protected String[] getPathInfo(String[] names, FileStatus[] files){
+        String[] pathinfo = new String[names.length];
+        int misses = 0;
+        for(int i=0;i<names.length;i++){
+            pathinfo[i] = blockLocationCache.get(names[i], files[i].getModificationTime(), files[i].getLen());
+            if(pathinfo[i]==null) misses++;
+        }
+        if(misses==0) return pathinfo;
+        
+        String[] missed = new String[misses];
+        for(int i=0,j=0;i<names.length;i++){
+            if(pathinfo[i]==null) missed[j++] = names[i];
+        }
+        
+        String[] read;
+        try{
+            read = getXattrReader().getXattrs(missed, GlusterFSXattr.PATHINFO_XATTR);
+        }catch(IOException e){
+            // problem reading pathinfo, fail gracefully.
+            return pathinfo;
+        }
+        
+        for(int i=0,j=0;i<names.length;i++){
+            if(pathinfo[i]==null){
+                pathinfo[i] = read[j++];
+                blockLocationCache.put(names[i], files[i].getModificationTime(), files[i].getLen(), pathinfo[i]);
+            }
+        }
+        return pathinfo;
+    }
+    
+    /*
+     * Directory listing with block locations, as used by FileInputFormat and listFiles.
+     * Entries are paged from the directory and located in batches ahead of the caller;
+     * lookups that fail leave those files with a location without hosts.
+     */
+    protected RemoteIterator<LocatedFileStatus> listLocatedStatus(final Path f, final PathFilter filter) throws IOException{
+        return new GlusterFSLocatedStatusIterator(this, listStatusIterator(f), filter,
+                getLocationExecutor(), locatedBatch, 2*locatedThreads);
+    }
+    
+    /*
+     * Recursive listings walk the tree in parallel and return files in no particular
+     * order; listings of one directory are as FileSystem does them.
+     */
+    public RemoteIterator<LocatedFileStatus> listFiles(Path f, boolean recursive) throws IOException{
+        if(!recursive) return super.listFiles(f, false);
+        return listFiles(f, ACCEPT_ALL, pruneHidden);
+    }
+    
+    /* all files under f that filter accepts, without hidden (_ or .) files and directories if pruneHidden */
+    public RemoteIterator<LocatedFileStatus> listFiles(Path f, PathFilter filter, boolean pruneHidden) throws IOException{
+        /* a pool per listing: a caller that stops reading blocks no one else's walk */
+        return new GlusterFSRecursiveLister(this, f, filter, pruneHidden, newForkJoinPool(recursiveThreads, "glusterfs-lister-"),
+                locatedBatch, listPageSize, recursiveStallTimeout);
+    }
+    
+    private static final PathFilter ACCEPT_ALL = new PathFilter(){
+        public boolean accept(Path p){
+            return true;
+        }
+    };
+    
+    /* content summaries, which never wait on a caller */
+    protected synchronized ForkJoinPool getListingPool(){
+        if(listingPool==null){
+            listingPool = newForkJoinPool(recursiveThreads, "glusterfs-summary-");
+        }
+        return listingPool;
+    }
+    
+    protected synchronized ForkJoinPool getDeletePool(){
+        if(deletePool==null){
+            deletePool = newForkJoinPool(deleteThreads, "glusterfs-deleter-");
+        }
+        return deletePool;
+    }
+    
+    protected synchronized ForkJoinPool getCopyPool(){
+        if(copyPool==null){
+            copyPool = newForkJoinPool(copyThreads, "glusterfs-copier-");
+        }
+        return copyPool;
+    }
+    
+    static ForkJoinPool newForkJoinPool(int threads, final String name){
+        return new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory(){
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool){
+                ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName(name + t.getPoolIndex());
+                return t;
+            }
+        }, null, false);
+    }
+    
+    /* shared by all listings of this volume, threads exit when idle */
+    protected synchronized ThreadPoolExecutor getLocationExecutor(){
+        if(locationExecutor==null){
+            final AtomicInteger count = new AtomicInteger();
+            locationExecutor = new ThreadPoolExecutor(locatedThreads, locatedThreads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+                        public Thread newThread(Runnable r){
+                            Thread t = new Thread(r, "glusterfs-locations-" + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            locationExecutor.allowCoreThreadTimeOut(true);
+        }
+        return locationExecutor;
+    }
+    
+    public void close() throws IOException{
+        synchronized(this){
+            if(locationExecutor!=null){
+                locationExecutor.shutdown();
+                locationExecutor = null;
+            }
+            if(listingPool!=null){
+                listingPool.shutdown();
+                listingPool = null;
+            }
+            if(copyPool!=null){
+                copyPool.shutdown();
+                copyPool = null;
+            }
+            deleter.close();
+            prefetcher.close();
+            writeBehind.close();
+            bufferPool.close();
+            if(deletePool!=null){
+                deletePool.shutdown();
+                deletePool = null;
+            }
+        }
+        super.close();
+    }
+    
+    /* du and count from directory quota where it is kept, else a parallel walk */
+    public ContentSummary getContentSummary(Path f) throws IOException{
+        return contentSummarizer.getContentSummary(f);
+    }
+    
+    public GlusterFSContentSummarizer getContentSummarizer(){
+        return contentSummarizer;
+    }
+    
+    public GlusterFSStatCache getStatCache(){
+        return statCache;
+    }
+    
+    /*
+     * Copies a file or directory tree to another path of this volume, within the mount.
+     * As FileUtil.copy, a directory dst receives src under its own name, and an existing
+     * target is an error unless overwrite.  With preserve, copies keep permissions and
+     * modification times, as a rename does.
+     */
+    public boolean copy(Path src, Path dst, boolean deleteSource, boolean overwrite, Progressable progress) throws IOException{
+        return copy(src, dst, deleteSource, overwrite, false, progress);
+    }
+    
+    public boolean copy(Path src, Path dst, boolean deleteSource, boolean overwrite, boolean preserve, Progressable progress) throws IOException{
+        File source = pathToFile(src);
+        File dest = pathToFile(dst);
+        if(dest.isDirectory()) dst = new Path(dst, source.getName());
+        else if(source.exists()) mkdirs(dst.getParent());
+        
+        blockLocationCache.invalidateTree(pathToFile(dst).getPath());
+        try{
+            copyFiles(source, src, dest, dst, preserve, overwrite, progress);
+        }finally{
+            statCache.invalidateTree(pathToFile(dst).getPath());
+        }
+        return deleteSource ? delete(src, true) : true;
+    }
+    
+    /* copies a local file or directory tree onto the mount, in parallel ranges and files */
+    public boolean copyFromLocal(File source, Path dst, boolean deleteSource, boolean overwrite, Progressable progress) throws IOException{
+        Path src = new Path(source.toURI());
+        File dest = pathToFile(dst);
+        if(dest.isDirectory()) dst = new Path(dst, source.getName());
+        else if(source.exists()) mkdirs(dst.getParent());
+        
+        try{
+            copyFiles(source, src, dest, dst, false, overwrite, progress);
+        }finally{
+            statCache.invalidateTree(pathToFile(dst).getPath());
+        }
+        return deleteSource ? FileUtil.fullyDelete(source) : true;
+    }
+    
+    /* copies a file or directory tree of the mount to local disk, in parallel ranges and files */
+    public boolean copyToLocal(Path src, File dest, boolean deleteSource, boolean overwrite, Progressable progress) throws IOException{
+        File source = pathToFile(src);
+        Path dst = new Path(dest.toURI());
+        File parent = dest.getAbsoluteFile().getParentFile();
+        if(source.exists() && !dest.isDirectory() && parent!=null && !parent.isDirectory() && !parent.mkdirs()){
+            throw new IOException("Can't create directory " + parent);
+        }
+        copyFiles(source, src, dest, dst, false, overwrite, progress);
+        return deleteSource ? delete(src, true) : true;
+    }
+    
+    /* the checks of FileUtil.copy, then the copy; paths are for messages */
+    private void copyFiles(File source, Path src, File dest, Path dst, boolean preserve, boolean overwrite, Progressable progress) throws IOException{
+        if(!source.exists()){
+            throw new FileNotFoundException("File " + src + " does not exist");
+        }
+        if(dest.isDirectory()){
+            dest = new File(dest, source.getName());
+        }
+        if(dest.exists() && !overwrite){
+            throw new IOException("Target " + dst + " already exists");
+        }
+        if(source.isDirectory() && (dest.getAbsolutePath() + "/").startsWith(source.getAbsolutePath() + "/")){
+            throw new IOException("Cannot copy " + src + " to its subdirectory " + dst);
+        }
+        copier.copy(source, dest, preserve, progress);
+    }
+    
+    /* appends the sources to the target and deletes them, as HDFS concat */
+    public void concat(Path trg, Path[] psrcs) throws IOException{
+        File target = pathToFile(trg);
+        if(!target.isFile()){
+            throw new FileNotFoundException("Target " + trg + " is not an existing file");
+        }
+        File[] sources = new File[psrcs.length];
+        Set<File> seen = new HashSet<File>();
+        seen.add(target);
+        for(int i=0;i<psrcs.length;i++){
+            sources[i] = pathToFile(psrcs[i]);
+            if(!sources[i].isFile()){
+                throw new FileNotFoundException("Source " + psrcs[i] + " is not an existing file");
+            }
+            if(!seen.add(sources[i])){
+                throw new IOException("Source " + psrcs[i] + " is the target or given twice");
+            }
+        }
+        
+        blockLocationCache.invalidate(target.getPath());
+        try{
+            copier.append(target, sources, null);
+        }finally{
+            statCache.invalidate(target.getPath());
+        }
+        for(int i=0;i<psrcs.length;i++){
+            if(!delete(psrcs[i], false)){
+                throw new IOException("Can't delete " + psrcs[i] + " after appending it to " + trg);
+            }
+        }
+    }
+    
+    public GlusterFSCopier getCopier(){
+        return copier;
+    }
+    
+    public GlusterFSDeleter getDeleter(){
+        return deleter;
+    }
+    
+    public GlusterFSPrefetcher getPrefetcher(){
+        return prefetcher;
+    }
+    
+    public GlusterFSWriteBehind getWriteBehind(){
+        return writeBehind;
+    }
+    
+    public GlusterFSBufferPool getBufferPool(){
+        return bufferPool;
+    }
+    
+    public GlusterFSBlockLocationCache getBlockLocationCache(){
+        return blockLocationCache;
     }
     
     public String toString(){
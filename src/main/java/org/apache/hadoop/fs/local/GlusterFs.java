@@ -34,7 +34,10 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FilterFs;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 
 public class GlusterFs extends FilterFs{
 
@@ -46,5 +49,10 @@ public class GlusterFs extends FilterFs{
         this(conf);
     }
 
+    /* paged, FilterFs would list the whole directory first */
+    @Override
+    public RemoteIterator<FileStatus> listStatusIterator(Path f) throws IOException{
+        return getMyFs().listStatusIterator(f);
+    }
 
 }
@@ -5,9 +5,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FsConstants;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.glusterfs.GlusterFileSystemCRC;
 import org.apache.hadoop.fs.glusterfs.GlusterVolume;
 import org.slf4j.Logger;
@@ -37,6 +39,13 @@ public class GlusterVol extends RawLocalFsG{
         super(theUri, new GlusterVolume(), conf, false);
     }
     
+    /* a page of the directory at a time, see GlusterVolume.listStatusIterator */
+    @Override
+    public RemoteIterator<FileStatus> listStatusIterator(Path f) throws IOException{
+        checkPath(f);
+        return ((GlusterVolume) fsImpl).listStatusIterator(f);
+    }
+    
     
     
     
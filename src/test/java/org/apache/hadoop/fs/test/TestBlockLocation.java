@@ -2,15 +2,28 @@ package org.apache.hadoop.fs.test;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSPathInfo;
 import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrReader;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
 import org.apache.hadoop.fs.test.connector.HcfsTestConnectorFactory;
 import org.apache.hadoop.fs.test.connector.HcfsTestConnectorInterface;
+import org.apache.hadoop.net.DNSToSwitchMapping;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -61,6 +74,133 @@ public class TestBlockLocation {
 		assertTrue(hosts[1].equals("vm-1"));
 	}
 
+	/*
+	 * Large ranges come back as one location per block, so splits can be spread.
+	 */
+	@Test
+	public void testPerBlockLocations() throws IOException {
+		String xattr = "(<DISTRIBUTE:HadoopVol-dht> (<REPLICATE:HadoopVol-replicate-0> <POSIX(/mnt/brick1/HadoopVol):vm-2:/mnt/brick1/HadoopVol/tmp/a> <POSIX(/mnt/brick1/HadoopVol):vm-1:/mnt/brick1/HadoopVol/tmp/a>))";
+		TestBlockLocationHarnace tbl = new TestBlockLocationHarnace(xattr);
+		tbl.setBlockSize(4096);
+		BlockLocation[] blocks = tbl.getPathInfo(1000, 10000);
+
+		assertEquals(3, blocks.length);
+		assertEquals(1000, blocks[0].getOffset());
+		assertEquals(3096, blocks[0].getLength());
+		assertEquals(4096, blocks[1].getOffset());
+		assertEquals(4096, blocks[1].getLength());
+		assertEquals(8192, blocks[2].getOffset());
+		assertEquals(2808, blocks[2].getLength());
+		for (BlockLocation b : blocks)
+			assertEquals(2, b.getHosts().length);
+	}
+
+	/*
+	 * One location per block, listing the bricks that hold its stripe units,
+	 * round robin over the stripe's children.
+	 */
+	@Test
+	public void testStripeUnits() throws IOException {
+		String xattr = "(<DISTRIBUTE:sv-dht> (<STRIPE:sv-stripe-0:[131072]> <POSIX(/b1):vm-1:/b1/f> <POSIX(/b2):vm-2:/b2/f> <POSIX(/b3):vm-3:/b3/f>))";
+		TestBlockLocationHarnace tbl = new TestBlockLocationHarnace(xattr);
+		tbl.setBlockSize(2 * 131072);
+		BlockLocation[] blocks = tbl.getPathInfo(0, 4 * 131072 + 10);
+
+		assertEquals(3, blocks.length);
+		String[][] expected = { { "vm-1", "vm-2" }, { "vm-3", "vm-1" }, { "vm-2" } };
+		for (int i = 0; i < blocks.length; i++) {
+			assertEquals(i * 2 * 131072L, blocks[i].getOffset());
+			assertArrayEquals(expected[i], blocks[i].getHosts());
+		}
+		assertEquals(10, blocks[2].getLength());
+	}
+
+	@Test
+	public void testReplicatedStripeUnits() throws IOException {
+		String xattr = "(<DISTRIBUTE:sv-dht> (<STRIPE:sv-stripe-0:[65536]> (<REPLICATE:sv-replicate-0> <POSIX(/b1):vm-1:/b1/f> <POSIX(/b2):vm-2:/b2/f>)(<REPLICATE:sv-replicate-1> <POSIX(/b3):vm-3:/b3/f> <POSIX(/b4):vm-4:/b4/f>)))";
+		TestBlockLocationHarnace tbl = new TestBlockLocationHarnace(xattr);
+		BlockLocation[] blocks = tbl.getPathInfo(65536, 65536 * 2);
+
+		assertEquals(1, blocks.length);
+		assertArrayEquals(new String[] { "vm-3", "vm-4", "vm-1", "vm-2" }, blocks[0].getHosts());
+
+		/* a block within one unit lists only that unit's bricks */
+		tbl.setBlockSize(65536);
+		blocks = tbl.getPathInfo(65536, 65536 * 2);
+		assertEquals(2, blocks.length);
+		assertArrayEquals(new String[] { "vm-3", "vm-4" }, blocks[0].getHosts());
+		assertArrayEquals(new String[] { "vm-1", "vm-2" }, blocks[1].getHosts());
+	}
+
+	/* 4+2 disperse set, vm-1 holding two fragments */
+	static final String DISPERSE = "(<DISTRIBUTE:ec-dht> (<EC:ec-disperse-0> <POSIX(/b1):vm-2:/b1/f> <POSIX(/b2):vm-1:/b2/f> <POSIX(/b3):vm-3:/b3/f> <POSIX(/b4):vm-1:/b4/f> <POSIX(/b5):vm-5:/b5/f> <POSIX(/b6):vm-6:/b6/f>))";
+
+	/*
+	 * Data fragment hosts only, those with the most fragments first.
+	 */
+	@Test
+	public void testDisperseVolume() throws IOException {
+		Map<String, Integer> redundancy = new HashMap<String, Integer>();
+		redundancy.put("ec-disperse-0", 2);
+		GlusterFSPathInfo pathinfo = new GlusterFSPathInfo(DISPERSE, redundancy);
+		assertArrayEquals(new String[] { "vm-1", "vm-2", "vm-3" }, pathinfo.getHosts(0));
+
+		/* without the redundancy every fragment counts */
+		pathinfo = new GlusterFSPathInfo(DISPERSE.replace("<EC:", "<DISPERSE:"));
+		assertArrayEquals(new String[] { "vm-1", "vm-2", "vm-3", "vm-5", "vm-6" }, pathinfo.getHosts(0));
+	}
+
+	public static class DisperseReader implements GlusterFSXattrReader {
+		public String getXattr(String file, String name) {
+			return DISPERSE;
+		}
+
+		public String[] getXattrs(String[] files, String name) {
+			String[] v = new String[files.length];
+			Arrays.fill(v, DISPERSE);
+			return v;
+		}
+	}
+
+	/* vm-1 and vm-2 share a rack */
+	public static class RackMapping implements DNSToSwitchMapping {
+		public List<String> resolve(List<String> names) {
+			ArrayList<String> racks = new ArrayList<String>();
+			for (String n : names)
+				racks.add(n.equals("vm-1") || n.equals("vm-2") ? "/rack1" : "/rack2");
+			return racks;
+		}
+
+		public void reloadCachedMappings() {
+		}
+
+		public void reloadCachedMappings(List<String> names) {
+		}
+	}
+
+	@Test
+	public void testTopologyPaths() throws IOException {
+		GlusterTestVolume testVolume = new GlusterTestVolume("ec");
+		try {
+			new FileOutputStream(new File(testVolume.getMount(), "f")).close();
+
+			Configuration conf = testVolume.createConfiguration();
+			conf.set(GlusterFSXattr.XATTR_READER_KEY, DisperseReader.class.getName());
+			conf.setBoolean(GlusterFSXattr.XATTR_FALLBACK_KEY, false);
+			conf.set("net.topology.node.switch.mapping.impl", RackMapping.class.getName());
+			GlusterVolume volume = testVolume.create(conf);
+
+			FileStatus status = volume.getFileStatus(new Path("glusterfs:///f"));
+			BlockLocation[] blocks = volume.getFileBlockLocations(status, 0, 1);
+			assertEquals(1, blocks.length);
+			assertArrayEquals(new String[] { "/rack1/vm-1", "/rack1/vm-2", "/rack2/vm-3", "/rack2/vm-5", "/rack2/vm-6" },
+					blocks[0].getTopologyPaths());
+			assertArrayEquals(blocks[0].getHosts(), blocks[0].getNames());
+		} finally {
+			testVolume.delete();
+		}
+	}
+
 	/*
 	 * Make sure the xattr code fails gracefull when the input is garbage.
 	 */
@@ -85,18 +225,54 @@ public class TestBlockLocation {
 	}
 
 	/*
-	 * 
-	 * stripe not yet supported.trusted.pathinfo is incorrect in gluster:
+	 * Striped replicas, with the closing parenthesis some servers leave off:
 	 * https://bugzilla.redhat.com/show_bug.cgi?id=1200914
 	 */
-
-	public void testStripeVolume() {
+	@Test
+	public void testStripeVolume() throws IOException {
 		String xattr = "trusted.glusterfs.pathinfo=\"(<DISTRIBUTE:yuck-dht> (<STRIPE:yuck-stripe-0:[131072]> (<REPLICATE:yuck-replicate-0> <POSIX(/tmp/yuck_brick1):questor:/tmp/yuck_brick1/testfile> <POSIX(/tmp/yuck_brick2):questor:/tmp/yuck_brick2/testfile>)(<REPLICATE:yuck-replicate-1> <POSIX(/tmp/yuck_brick3):questor:/tmp/yuck_brick3/testfile> <POSIX(/tmp/yuck_brick4):questor:/tmp/yuck_brick4/testfile>)(<REPLICATE:yuck-replicate-2> <POSIX(/tmp/yuck_brick5):questor:/tmp/yuck_brick5/testfile> <POSIX(/tmp/yuck_brick6):questor:/tmp/yuck_brick6/testfile>))\"";
 		;
 		xattr = xattr.substring(28, xattr.length() - 1);
 		TestBlockLocationHarnace tbl = new TestBlockLocationHarnace(xattr);
 		BlockLocation[] blocks = tbl.getPathInfo(0, 10000);
 
+		assertEquals(1, blocks.length);
+		assertArrayEquals(new String[] { "questor" }, blocks[0].getHosts());
+
+		GlusterFSPathInfo pathinfo = new GlusterFSPathInfo(xattr);
+		assertEquals(131072, pathinfo.getStripeSize());
+		assertEquals(6, pathinfo.getBricks().size());
+		assertTrue(pathinfo.getBricks().get(0).isChunked());
+	}
+
+	/*
+	 * Stripe sets spread over a distribute, as seen on a directory, with
+	 * brick paths containing ':'.
+	 */
+	@Test
+	public void testNestedStripes() throws IOException {
+		String xattr = "(<DISTRIBUTE:sv-dht> (<STRIPE:sv-stripe-0:[1024]> <POSIX(/b1):vm-1:/b1/d:1> <POSIX(/b2):vm-2:/b2/d:1>) (<STRIPE:sv-stripe-1:[1024]> <POSIX(/b3):vm-3:/b3/d:1> <POSIX(/b4):vm-4:/b4/d:1>))";
+		GlusterFSPathInfo pathinfo = new GlusterFSPathInfo(xattr);
+		assertArrayEquals(new String[] { "vm-1", "vm-3" }, pathinfo.getHosts(0));
+		assertArrayEquals(new String[] { "vm-2", "vm-4" }, pathinfo.getHosts(1024));
+		BlockLocation[] blocks = pathinfo.getBlockLocations(0, 2500, 4096);
+		assertEquals(1, blocks.length);
+		assertArrayEquals(new String[] { "vm-1", "vm-3", "vm-2", "vm-4" }, blocks[0].getHosts());
+	}
+
+	/*
+	 * Host names are shared between parses rather than copied per file.
+	 */
+	@Test
+	public void testHostsInterned() throws IOException {
+		String a = "(<DISTRIBUTE:v-dht> <POSIX(/b1):" + new String("vm-1") + ":/b1/a>)";
+		String b = "(<DISTRIBUTE:v-dht> <POSIX(/b1):" + new String("vm-1") + ":/b1/b>)";
+		assertSame(new GlusterFSPathInfo(a).getHosts(0)[0], new GlusterFSPathInfo(b).getHosts(0)[0]);
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnterminatedBrick() throws IOException {
+		new GlusterFSPathInfo("(<DISTRIBUTE:v-dht> <POSIX(/b1):vm-1:/b1/f");
 	}
 
 }
@@ -0,0 +1,100 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.glusterfs.GlusterFSBlockLocationCache;
+import org.junit.Test;
+
+public class TestBlockLocationCache {
+
+	static final String PATHINFO = "(<DISTRIBUTE:HadoopVol-dht> <POSIX(/mnt/brick1/HadoopVol):vm-1:/mnt/brick1/HadoopVol/a>)";
+
+	@Test
+	public void testHitAndMiss() {
+		GlusterFSBlockLocationCache cache = new GlusterFSBlockLocationCache(10, 0);
+		assertNull(cache.get("/mnt/gv0/a", 100, 10));
+		cache.put("/mnt/gv0/a", 100, 10, PATHINFO);
+		assertEquals(PATHINFO, cache.get("/mnt/gv0/a", 100, 10));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	/*
+	 * A rewritten file must not be answered from the old entry.
+	 */
+	@Test
+	public void testVersionMismatch() {
+		GlusterFSBlockLocationCache cache = new GlusterFSBlockLocationCache(10, 0);
+		cache.put("/mnt/gv0/a", 100, 10, PATHINFO);
+		assertNull(cache.get("/mnt/gv0/a", 101, 10));
+		cache.put("/mnt/gv0/a", 100, 10, PATHINFO);
+		assertNull(cache.get("/mnt/gv0/a", 100, 11));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testLruEviction() {
+		GlusterFSBlockLocationCache cache = new GlusterFSBlockLocationCache(2, 0);
+		cache.put("/mnt/gv0/a", 1, 1, PATHINFO);
+		cache.put("/mnt/gv0/b", 1, 1, PATHINFO);
+		/* touch a, so b is the eldest */
+		assertNotNull(cache.get("/mnt/gv0/a", 1, 1));
+		cache.put("/mnt/gv0/c", 1, 1, PATHINFO);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertNotNull(cache.get("/mnt/gv0/a", 1, 1));
+		assertNull(cache.get("/mnt/gv0/b", 1, 1));
+		/* the evicted key left the sorted index too */
+		cache.invalidateTree("/mnt/gv0");
+		assertEquals(0, cache.size());
+		assertEquals(2, cache.getInvalidations());
+	}
+
+	@Test
+	public void testTtl() throws InterruptedException {
+		GlusterFSBlockLocationCache cache = new GlusterFSBlockLocationCache(10, 1);
+		cache.put("/mnt/gv0/a", 1, 1, PATHINFO);
+		Thread.sleep(20);
+		assertNull(cache.get("/mnt/gv0/a", 1, 1));
+	}
+
+	@Test
+	public void testInvalidateDirectory() {
+		GlusterFSBlockLocationCache cache = new GlusterFSBlockLocationCache(10, 0);
+		cache.put("/mnt/gv0/dir/a", 1, 1, PATHINFO);
+		cache.put("/mnt/gv0/dir/sub/b", 1, 1, PATHINFO);
+		cache.put("/mnt/gv0/dir2", 1, 1, PATHINFO);
+
+		/* a file operation only drops the exact path */
+		cache.invalidate("/mnt/gv0/dir");
+		assertEquals(3, cache.size());
+		assertEquals(0, cache.getInvalidations());
+
+		cache.invalidateTree("/mnt/gv0/dir");
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.getInvalidations());
+		assertNotNull(cache.get("/mnt/gv0/dir2", 1, 1));
+	}
+
+	@Test
+	public void testNormalizedKeys() {
+		GlusterFSBlockLocationCache cache = new GlusterFSBlockLocationCache(10, 0);
+		cache.put("/mnt/gv0//dir/./a", 1, 1, PATHINFO);
+		assertEquals(PATHINFO, cache.get("/mnt/gv0/dir/a", 1, 1));
+		assertEquals(PATHINFO, cache.get("/mnt/gv0/dir/sub/../a", 1, 1));
+		cache.invalidateTree("/mnt/gv0/dir/");
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testDisabled() {
+		Configuration conf = new Configuration();
+		conf.setInt(GlusterFSBlockLocationCache.CACHE_SIZE_KEY, 0);
+		GlusterFSBlockLocationCache cache = new GlusterFSBlockLocationCache(conf);
+		cache.put("/mnt/gv0/a", 1, 1, PATHINFO);
+		assertNull(cache.get("/mnt/gv0/a", 1, 1));
+		assertEquals(0, cache.getMisses());
+	}
+}
@@ -0,0 +1,152 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.fs.glusterfs.GlusterFSBufferPool;
+import org.junit.Test;
+
+public class TestBufferPool {
+
+	@Test
+	public void testSizeClasses() {
+		GlusterFSBufferPool pool = new GlusterFSBufferPool(1 << 20, 65536, false);
+		ByteBuffer b = pool.acquire(5000);
+		assertTrue(b.isDirect());
+		assertEquals(8192, b.capacity());
+		assertEquals(0, b.position());
+		assertEquals(5000, b.limit());
+		assertEquals(4096, pool.acquire(1).capacity());
+		assertEquals(65536, pool.acquire(65536).capacity());
+	}
+
+	@Test
+	public void testReuse() {
+		GlusterFSBufferPool pool = new GlusterFSBufferPool(1 << 20, 65536, false);
+		ByteBuffer b = pool.acquire(8000);
+		b.put(new byte[100]);
+		pool.release(b);
+		assertEquals(8192, pool.getPooledBytes());
+
+		ByteBuffer again = pool.acquire(5000);
+		assertSame(b, again);
+		assertEquals(0, again.position());
+		assertEquals(5000, again.limit());
+		assertEquals(1, pool.getHits());
+		assertEquals(1, pool.getAllocated());
+		assertEquals(0, pool.getPooledBytes());
+		/* another size class allocates */
+		assertNotSame(b, pool.acquire(3000));
+		assertEquals(2, pool.getAllocated());
+	}
+
+	/* past the pool's size buffers are heap buffers, left to the collector */
+	@Test
+	public void testBounded() {
+		GlusterFSBufferPool pool = new GlusterFSBufferPool(16384, 65536, false);
+		ByteBuffer[] b = { pool.acquire(8192), pool.acquire(8192), pool.acquire(8192) };
+		assertTrue(b[1].isDirect());
+		assertFalse(b[2].isDirect());
+		assertEquals(16384, pool.getDirectBytes());
+		assertEquals(1, pool.getHeapAllocated());
+		for (ByteBuffer buffer : b)
+			pool.release(buffer);
+		assertEquals(16384, pool.getPooledBytes());
+		assertEquals(1, pool.getDropped());
+		assertEquals(0, pool.getOutstanding());
+
+		/* given back, the direct buffers are handed out again */
+		assertTrue(pool.acquire(8192).isDirect());
+		assertEquals(1, pool.getHits());
+		assertEquals(16384, pool.getDirectBytes());
+	}
+
+	@Test
+	public void testLarge() {
+		GlusterFSBufferPool pool = new GlusterFSBufferPool(1 << 20, 65536, false);
+		ByteBuffer b = pool.acquire(100000);
+		assertEquals(100000, b.capacity());
+		assertFalse(b.isDirect());
+		assertEquals(0, pool.getDirectBytes());
+		pool.release(b);
+		assertEquals(0, pool.getPooledBytes());
+		assertEquals(1, pool.getDropped());
+	}
+
+	@Test
+	public void testDisabled() {
+		GlusterFSBufferPool pool = new GlusterFSBufferPool(0, 65536, false);
+		assertFalse(pool.isEnabled());
+		ByteBuffer b = pool.acquire(5000);
+		assertFalse(b.isDirect());
+		assertEquals(5000, b.capacity());
+		pool.release(b);
+		assertEquals(0, pool.getPooledBytes());
+	}
+
+	@Test
+	public void testLeaks() {
+		GlusterFSBufferPool pool = new GlusterFSBufferPool(1 << 20, 65536, true);
+		ByteBuffer b = pool.acquire(100);
+		pool.acquire(200);
+		pool.release(b);
+		assertEquals(1, pool.getLeaks().size());
+		assertTrue(pool.getLeaks().get(0).getMessage().contains("200 bytes"));
+		/* taken here */
+		assertEquals("testLeaks", pool.getLeaks().get(0).getStackTrace()[1].getMethodName());
+		try {
+			pool.release(b);
+			fail("released twice");
+		} catch (IllegalStateException e) {
+			// twice
+		}
+		try {
+			pool.release(ByteBuffer.allocateDirect(4096));
+			fail("released a buffer from elsewhere");
+		} catch (IllegalStateException e) {
+			// not from the pool
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testConcurrent() throws Exception {
+		final GlusterFSBufferPool pool = new GlusterFSBufferPool(256 * 1024, 65536, true);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < 8; t++) {
+				final Random random = new Random(t);
+				results.add(threads.submit(new Callable<Integer>() {
+					public Integer call() {
+						for (int i = 0; i < 5000; i++) {
+							int size = 1 + random.nextInt(65536);
+							ByteBuffer b = pool.acquire(size);
+							assertEquals(size, b.remaining());
+							b.put(0, (byte) 1);
+							pool.release(b);
+						}
+						return 5000;
+					}
+				}));
+			}
+			for (Future<Integer> r : results)
+				assertEquals(5000, r.get().intValue());
+		} finally {
+			threads.shutdownNow();
+		}
+		assertEquals(0, pool.getOutstanding());
+		assertTrue(pool.getLeaks().isEmpty());
+		assertTrue(pool.getPooledBytes() <= 256 * 1024);
+		assertEquals(pool.getPooledBytes(), pool.getDirectBytes());
+		assertEquals(40000, pool.getAcquired());
+		assertTrue(pool.getHits() > 0);
+	}
+}
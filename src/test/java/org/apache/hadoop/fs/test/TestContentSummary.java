@@ -0,0 +1,151 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSContentSummarizer;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrReader;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestContentSummary {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	GlusterVolume volume;
+
+	/* inode quota on directories named "quota", size-only quota on "oldquota" */
+	public static class QuotaReader implements GlusterFSXattrReader {
+		public String getXattr(String file, String name) {
+			if (!GlusterFSContentSummarizer.QUOTA_SIZE_XATTR.equals(name))
+				return null;
+			if (file.endsWith("/quota"))
+				return "0x" + "0000000000100000" + "000000000000002a" + "0000000000000007";
+			if (file.endsWith("/oldquota"))
+				return "0x0000000000100000";
+			return null;
+		}
+
+		public String[] getXattrs(String[] files, String name) {
+			String[] v = new String[files.length];
+			for (int i = 0; i < files.length; i++)
+				v[i] = getXattr(files[i], name);
+			return v;
+		}
+	}
+
+	void write(File f, int len) throws IOException {
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(new byte[len]);
+		out.close();
+	}
+
+	/* tree/{a,b}/{c,d} with a 10 byte file in each directory */
+	void tree(File root) throws IOException {
+		for (String d : new String[] { "a/c", "a/d", "b/c", "b/d" })
+			assertTrue(new File(root, d).mkdirs());
+		for (String d : new String[] { "", "a", "b", "a/c", "a/d", "b/c", "b/d" })
+			write(new File(root, d + "/f"), 10);
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("summary");
+		mount = testVolume.getMount();
+		tree(new File(mount, "tree"));
+		tree(new File(mount, "quota"));
+		tree(new File(mount, "oldquota"));
+
+		Configuration conf = testVolume.createConfiguration();
+		conf.set(GlusterFSXattr.XATTR_READER_KEY, QuotaReader.class.getName());
+		conf.setBoolean(GlusterFSXattr.XATTR_FALLBACK_KEY, false);
+		conf.setBoolean(GlusterFSContentSummarizer.QUOTA_SUMMARY_KEY, true);
+		conf.setInt(GlusterVolume.RECURSIVE_THREADS_KEY, 3);
+		conf.setInt(GlusterVolume.LIST_PAGE_SIZE_KEY, 2);
+		volume = testVolume.create(conf);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		volume.close();
+		testVolume.delete();
+	}
+
+	@Test
+	public void testWalked() throws IOException {
+		ContentSummary summary = volume.getContentSummary(new Path("glusterfs:///tree"));
+		assertEquals(70, summary.getLength());
+		assertEquals(7, summary.getFileCount());
+		assertEquals(7, summary.getDirectoryCount());
+		assertEquals(1, volume.getContentSummarizer().getWalkedSummaries());
+		assertEquals(7, volume.getContentSummarizer().getWalkedDirectories());
+	}
+
+	@Test
+	public void testFromQuota() throws IOException {
+		ContentSummary summary = volume.getContentSummary(new Path("glusterfs:///quota"));
+		assertEquals(1024 * 1024, summary.getLength());
+		assertEquals(42, summary.getFileCount());
+		assertEquals(7, summary.getDirectoryCount());
+		assertEquals(1, volume.getContentSummarizer().getQuotaSummaries());
+		assertEquals(0, volume.getContentSummarizer().getWalkedSummaries());
+	}
+
+	/* quota sizes aren't lengths, so it is only asked when configured */
+	@Test
+	public void testQuotaOffByDefault() throws IOException {
+		Configuration conf = new Configuration(volume.getConf());
+		conf.unset(GlusterFSContentSummarizer.QUOTA_SUMMARY_KEY);
+		GlusterVolume plain = testVolume.create(conf);
+		try {
+			ContentSummary summary = plain.getContentSummary(new Path("glusterfs:///quota"));
+			assertEquals(70, summary.getLength());
+			assertEquals(7, summary.getFileCount());
+			assertEquals(0, plain.getContentSummarizer().getQuotaSummaries());
+		} finally {
+			plain.close();
+		}
+	}
+
+	/* quota without file and directory counts can't answer */
+	@Test
+	public void testSizeOnlyQuotaWalked() throws IOException {
+		ContentSummary summary = volume.getContentSummary(new Path("glusterfs:///oldquota"));
+		assertEquals(70, summary.getLength());
+		assertEquals(0, volume.getContentSummarizer().getQuotaSummaries());
+		assertEquals(1, volume.getContentSummarizer().getWalkedSummaries());
+	}
+
+	@Test
+	public void testWholeVolume() throws IOException {
+		ContentSummary summary = volume.getContentSummary(new Path("glusterfs:///"));
+		/* quota/ is walked too, only the top directory is asked for its quota */
+		assertEquals(210, summary.getLength());
+		assertEquals(21, summary.getFileCount());
+		assertEquals(22, summary.getDirectoryCount());
+	}
+
+	@Test
+	public void testFile() throws IOException {
+		ContentSummary summary = volume.getContentSummary(new Path("glusterfs:///tree/f"));
+		assertEquals(10, summary.getLength());
+		assertEquals(1, summary.getFileCount());
+		assertEquals(0, summary.getDirectoryCount());
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testMissing() throws IOException {
+		volume.getContentSummary(new Path("glusterfs:///missing"));
+	}
+}
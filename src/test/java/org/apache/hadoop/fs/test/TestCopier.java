@@ -0,0 +1,178 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCopier {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	GlusterVolume volume;
+
+	void write(File f, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(content.getBytes("UTF-8"));
+		out.close();
+	}
+
+	String read(File f) throws IOException {
+		return new String(Files.readAllBytes(f.toPath()), "UTF-8");
+	}
+
+	/* src/{a,b}/{c,d} with a file named after its directory in each */
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("copier");
+		mount = testVolume.getMount();
+		for (String d : new String[] { "a/c", "a/d", "b/c", "b/d" })
+			assertTrue(new File(mount, "src/" + d).mkdirs());
+		for (String d : new String[] { "", "a", "b", "a/c", "a/d", "b/c", "b/d" })
+			write(new File(mount, "src/" + d + "/f"), "data in " + d);
+
+		Configuration conf = testVolume.createConfiguration();
+		conf.setInt(GlusterVolume.COPY_THREADS_KEY, 3);
+		volume = testVolume.create(conf);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		volume.close();
+		testVolume.delete();
+	}
+
+	void assertTree(File root) throws IOException {
+		for (String d : new String[] { "", "a", "b", "a/c", "a/d", "b/c", "b/d" })
+			assertEquals("data in " + d, read(new File(root, d + "/f")));
+	}
+
+	@Test
+	public void testCopyTree() throws IOException {
+		final AtomicInteger progress = new AtomicInteger();
+		assertTrue(volume.copy(new Path("glusterfs:///src"), new Path("glusterfs:///dst"), false, false, new Progressable() {
+			public void progress() {
+				progress.incrementAndGet();
+			}
+		}));
+		assertTree(new File(mount, "dst"));
+		assertTree(new File(mount, "src"));
+		assertEquals(7, volume.getCopier().getFilesCopied());
+		assertEquals(7, volume.getCopier().getDirectoriesCopied());
+		assertTrue(progress.get() >= 14);
+	}
+
+	/* as FileUtil.copy, into an existing directory under the source's name */
+	@Test
+	public void testCopyIntoDirectory() throws IOException {
+		assertTrue(new File(mount, "dst").mkdir());
+		volume.copy(new Path("glusterfs:///src/a"), new Path("glusterfs:///dst"), false, false, null);
+		assertEquals("data in a/c", read(new File(mount, "dst/a/c/f")));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTargetExists() throws IOException {
+		write(new File(mount, "g"), "other");
+		volume.copy(new Path("glusterfs:///src/f"), new Path("glusterfs:///g"), false, false, null);
+	}
+
+	@Test
+	public void testOverwrite() throws IOException {
+		write(new File(mount, "g"), "a longer file that is replaced");
+		volume.copy(new Path("glusterfs:///src/f"), new Path("glusterfs:///g"), false, true, null);
+		assertEquals("data in ", read(new File(mount, "g")));
+	}
+
+	@Test(expected = IOException.class)
+	public void testIntoItself() throws IOException {
+		volume.copy(new Path("glusterfs:///src"), new Path("glusterfs:///src/a/c"), false, false, null);
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testMissingSource() throws IOException {
+		volume.copy(new Path("glusterfs:///nothing"), new Path("glusterfs:///dst"), false, false, null);
+	}
+
+	/* renameTo can't move onto an existing directory, so the tree is copied into it */
+	@Test
+	public void testRenameFallback() throws IOException {
+		volume.setPermission(new Path("glusterfs:///src/a/f"), new FsPermission((short) 0640));
+		long mtime = new File(mount, "src/a/f").lastModified() - 100000;
+		assertTrue(new File(mount, "src/a/f").setLastModified(mtime));
+		assertTrue(new File(mount, "dst").mkdir());
+
+		assertTrue(volume.rename(new Path("glusterfs:///src"), new Path("glusterfs:///dst")));
+		assertFalse(new File(mount, "src").exists());
+		assertTree(new File(mount, "dst/src"));
+		assertEquals(new FsPermission((short) 0640), volume.getFileStatus(new Path("glusterfs:///dst/src/a/f")).getPermission());
+		assertEquals(mtime / 1000, new File(mount, "dst/src/a/f").lastModified() / 1000);
+		assertEquals(7, volume.getCopier().getFilesCopied());
+	}
+
+	/* as the FileUtil.copy it replaces, the fallback overwrites what is already there */
+	@Test
+	public void testRenameOntoExisting() throws IOException {
+		assertTrue(new File(mount, "dst/src/a").mkdirs());
+		write(new File(mount, "dst/src/a/f"), "older data");
+		write(new File(mount, "dst/src/g"), "kept");
+
+		assertTrue(volume.rename(new Path("glusterfs:///src"), new Path("glusterfs:///dst")));
+		assertFalse(new File(mount, "src").exists());
+		assertTree(new File(mount, "dst/src"));
+		assertEquals("kept", read(new File(mount, "dst/src/g")));
+	}
+
+	@Test
+	public void testPreserve() throws IOException {
+		long mtime = new File(mount, "src/f").lastModified() - 100000;
+		assertTrue(new File(mount, "src/f").setLastModified(mtime));
+		volume.copy(new Path("glusterfs:///src/f"), new Path("glusterfs:///kept"), false, false, true, null);
+		volume.copy(new Path("glusterfs:///src/f"), new Path("glusterfs:///touched"), false, false, false, null);
+		assertEquals(mtime / 1000, new File(mount, "kept").lastModified() / 1000);
+		assertTrue(new File(mount, "touched").lastModified() / 1000 > mtime / 1000);
+		assertTrue(new File(mount, "src/f").exists());
+	}
+
+	@Test
+	public void testConcat() throws IOException {
+		volume.concat(new Path("glusterfs:///src/f"),
+				new Path[] { new Path("glusterfs:///src/a/f"), new Path("glusterfs:///src/b/f") });
+		assertEquals("data in data in adata in b", read(new File(mount, "src/f")));
+		assertFalse(new File(mount, "src/a/f").exists());
+		assertFalse(new File(mount, "src/b/f").exists());
+		assertEquals(1, volume.getCopier().getConcats());
+		assertEquals(26, volume.getFileStatus(new Path("glusterfs:///src/f")).getLen());
+	}
+
+	@Test
+	public void testConcatTargetAsSource() throws IOException {
+		try {
+			volume.concat(new Path("glusterfs:///src/f"), new Path[] { new Path("glusterfs:///src/a/f"), new Path("glusterfs:///src/f") });
+			fail();
+		} catch (IOException e) {
+		}
+		/* nothing is appended before the sources are checked */
+		assertEquals("data in ", read(new File(mount, "src/f")));
+		assertTrue(new File(mount, "src/a/f").exists());
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testConcatDirectory() throws IOException {
+		volume.concat(new Path("glusterfs:///src/f"), new Path[] { new Path("glusterfs:///src/a") });
+	}
+}
@@ -0,0 +1,184 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSDeleter;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDeleter {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	File outside;
+	GlusterVolume volume;
+
+	GlusterVolume volume(boolean async, int rate) throws IOException {
+		Configuration conf = testVolume.createConfiguration();
+		conf.setInt(GlusterVolume.DELETE_THREADS_KEY, 4);
+		conf.setBoolean(GlusterFSDeleter.ASYNC_KEY, async);
+		conf.setInt(GlusterFSDeleter.PURGE_RATE_KEY, rate);
+		return testVolume.create(conf);
+	}
+
+	/*
+	 * A job's output with its temporary attempts: a wide directory of 1500
+	 * files, a few nested ones, and a link to a directory outside the tree.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("deleter");
+		mount = testVolume.getMount();
+		outside = testVolume.getDirectory("outside");
+		new File(outside, "keep").createNewFile();
+
+		File temp = new File(mount, "out/_temporary/0");
+		assertTrue(new File(temp, "wide").mkdirs());
+		for (int i = 0; i < 1500; i++)
+			new File(temp, "wide/part-" + i).createNewFile();
+		for (int a = 0; a < 5; a++) {
+			File attempt = new File(temp, "attempt_" + a + "/sub");
+			assertTrue(attempt.mkdirs());
+			new File(attempt, "part-0").createNewFile();
+		}
+		Files.createSymbolicLink(new File(mount, "out/link").toPath(), outside.toPath());
+		volume = volume(false, 0);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		volume.close();
+		testVolume.delete();
+	}
+
+	@Test
+	public void testParallelDelete() throws IOException {
+		assertTrue(volume.delete(new Path("glusterfs:///out"), true));
+		assertFalse(new File(mount, "out").exists());
+		/* 1500 + 5 * 3 entries, wide, 0, _temporary, link and out */
+		assertEquals(1520, volume.getDeleter().getEntriesDeleted());
+		assertEquals(0, volume.getDeleter().getFailures());
+		/* links are removed, not followed */
+		assertTrue(new File(outside, "keep").exists());
+	}
+
+	@Test
+	public void testFile() throws IOException {
+		assertTrue(volume.delete(new Path("glusterfs:///out/_temporary/0/wide/part-7"), true));
+		assertFalse(new File(mount, "out/_temporary/0/wide/part-7").exists());
+		assertFalse(volume.delete(new Path("glusterfs:///out/_temporary/0/wide/part-7"), true));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotRecursive() throws IOException {
+		volume.delete(new Path("glusterfs:///out"), false);
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+		GlusterVolume async = volume(true, 0);
+		assertTrue(async.delete(new Path("glusterfs:///out"), true));
+		/* gone from its place at once */
+		assertFalse(async.exists(new Path("glusterfs:///out")));
+		assertEquals(1, async.getDeleter().getTreesDeferred());
+
+		assertTrue(async.getDeleter().awaitPurge(30, TimeUnit.SECONDS));
+		assertEquals(1, async.getDeleter().getTreesPurged());
+		assertArrayEquals(new String[0], async.getDeleter().getTrash(mount.getPath()).list());
+		assertTrue(new File(outside, "keep").exists());
+		/* shared as /tmp is, each user's trees in a directory of their own */
+		Path shared = new Path("glusterfs:///" + GlusterFSDeleter.TRASH_DIR);
+		assertEquals(new FsPermission((short) 01777), async.getFileStatus(shared).getPermission());
+		Path own = new Path(shared, System.getProperty("user.name"));
+		assertEquals(new FsPermission((short) 0700), async.getFileStatus(own).getPermission());
+		async.close();
+	}
+
+	/* a purge takes at least as long as its rate allows */
+	@Test
+	public void testPurgeRate() throws Exception {
+		GlusterVolume async = volume(true, 200);
+		long start = System.nanoTime();
+		assertTrue(async.delete(new Path("glusterfs:///out/_temporary/0/attempt_0"), true));
+		assertTrue(async.delete(new Path("glusterfs:///out/_temporary/0/attempt_1"), true));
+		assertTrue(async.getDeleter().awaitPurge(30, TimeUnit.SECONDS));
+		/* six entries at 200 a second */
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(25));
+		assertEquals(6, async.getDeleter().getEntriesDeleted());
+		async.close();
+	}
+
+	/* what a client left in the trash is purged by the next one of the same user */
+	@Test
+	public void testLeftovers() throws Exception {
+		File trash = new File(mount, GlusterFSDeleter.TRASH_DIR + "/" + System.getProperty("user.name"));
+		File others = new File(mount, GlusterFSDeleter.TRASH_DIR + "/someone-else");
+		assertTrue(trash.mkdirs());
+		assertTrue(others.mkdirs());
+		assertTrue(new File(mount, "out").renameTo(new File(trash, "out.left")));
+		assertTrue(new File(others, "theirs.left").createNewFile());
+		GlusterVolume async = volume(true, 0);
+		assertTrue(async.getDeleter().awaitPurge(30, TimeUnit.SECONDS));
+		assertArrayEquals(new String[] { ".purge-lease" }, trash.list());
+		assertTrue(new File(others, "theirs.left").exists());
+		assertEquals(0, async.getDeleter().getFailures());
+		async.close();
+	}
+
+	/* leftovers are taken on once per interval, not by every client that starts */
+	@Test
+	public void testPurgeLease() throws Exception {
+		File trash = new File(mount, GlusterFSDeleter.TRASH_DIR + "/" + System.getProperty("user.name"));
+		assertTrue(trash.mkdirs());
+		GlusterVolume first = volume(true, 0);
+		assertTrue(first.getDeleter().awaitPurge(30, TimeUnit.SECONDS));
+
+		assertTrue(new File(mount, "out").renameTo(new File(trash, "out.left")));
+		GlusterVolume second = volume(true, 0);
+		assertTrue(second.getDeleter().awaitPurge(30, TimeUnit.SECONDS));
+		assertTrue(new File(trash, "out.left").exists());
+		assertFalse(second.getDeleter().purgeTrashIfDue(mount.getPath()));
+
+		second.getDeleter().purgeTrash(mount.getPath());
+		assertTrue(second.getDeleter().awaitPurge(30, TimeUnit.SECONDS));
+		assertFalse(new File(trash, "out.left").exists());
+		first.close();
+		second.close();
+	}
+
+	/* a slow purge doesn't hold up deletes made now */
+	@Test(timeout = 20000)
+	public void testPurgeApart() throws Exception {
+		GlusterVolume async = volume(true, 10);
+		assertTrue(async.delete(new Path("glusterfs:///out/_temporary/0/wide"), true));
+		Thread.sleep(200);
+		assertEquals(1, async.getDeleter().getPending());
+		assertTrue(async.getDeleter().delete(new File(mount, "out/_temporary/0/attempt_0")));
+		assertTrue(async.getDeleter().delete(new File(mount, "out/_temporary/0/attempt_1")));
+		assertEquals(1, async.getDeleter().getPending());
+		async.close();
+	}
+
+	/* the trash itself is deleted in place */
+	@Test
+	public void testDeleteTrash() throws Exception {
+		GlusterVolume async = volume(true, 0);
+		assertTrue(async.delete(new Path("glusterfs:///out/_temporary/0/attempt_0"), true));
+		assertTrue(async.getDeleter().awaitPurge(30, TimeUnit.SECONDS));
+		assertTrue(async.delete(new Path("glusterfs:///" + GlusterFSDeleter.TRASH_DIR), true));
+		assertFalse(new File(mount, GlusterFSDeleter.TRASH_DIR).exists());
+		assertEquals(1, async.getDeleter().getTreesDeferred());
+		async.close();
+	}
+}
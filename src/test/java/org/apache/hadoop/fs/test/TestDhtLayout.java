@@ -0,0 +1,261 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.fs.glusterfs.GlusterFSDhtLayout;
+import org.apache.hadoop.fs.glusterfs.GlusterFSDhtLocator;
+import org.apache.hadoop.fs.glusterfs.GlusterFSVolfile;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrReader;
+import org.junit.Test;
+
+public class TestDhtLayout {
+
+	/* distribute over two replica pairs, as written by glusterd */
+	static final String VOLFILE =
+			"volume HadoopVol-client-0\n" +
+			"    type protocol/client\n" +
+			"    option remote-host vm-1\n" +
+			"    option remote-subvolume /mnt/brick1/HadoopVol\n" +
+			"end-volume\n\n" +
+			"volume HadoopVol-client-1\n" +
+			"    type protocol/client\n" +
+			"    option remote-host vm-2\n" +
+			"    option remote-subvolume /mnt/brick1/HadoopVol\n" +
+			"end-volume\n\n" +
+			"volume HadoopVol-client-2\n" +
+			"    type protocol/client\n" +
+			"    option remote-host vm-3\n" +
+			"    option remote-subvolume /mnt/brick1/HadoopVol\n" +
+			"end-volume\n\n" +
+			"volume HadoopVol-client-3\n" +
+			"    type protocol/client\n" +
+			"    option remote-host vm-4\n" +
+			"    option remote-subvolume /mnt/brick1/HadoopVol\n" +
+			"end-volume\n\n" +
+			"volume HadoopVol-replicate-0\n" +
+			"    type cluster/replicate\n" +
+			"    subvolumes HadoopVol-client-0 HadoopVol-client-1\n" +
+			"end-volume\n\n" +
+			"volume HadoopVol-replicate-1\n" +
+			"    type cluster/replicate\n" +
+			"    subvolumes HadoopVol-client-2 HadoopVol-client-3\n" +
+			"end-volume\n\n" +
+			"# placement only looks below distribute\n" +
+			"volume HadoopVol-dht\n" +
+			"    type cluster/distribute\n" +
+			"    subvolumes HadoopVol-replicate-0 HadoopVol-replicate-1\n" +
+			"end-volume\n\n" +
+			"volume HadoopVol\n" +
+			"    type debug/io-stats\n" +
+			"    subvolumes HadoopVol-dht\n" +
+			"end-volume\n";
+
+	/* first half and second half of the hash space */
+	static final String LOW = "0x000000010000000000000000" + "7ffffffe";
+	static final String HIGH = "0x00000001000000007fffffff" + "ffffffff";
+
+	/*
+	 * Reference values from gf_dm_hashfn, covering the tail bytes, a full
+	 * 16 byte round and multi-byte characters.
+	 */
+	@Test
+	public void testHash() {
+		assertEquals(0x3a17e4e6, GlusterFSDhtLayout.hash("a"));
+		assertEquals(0x158c2f4c, GlusterFSDhtLayout.hash("part-00000"));
+		assertEquals(0xa787fa82, GlusterFSDhtLayout.hash("file1"));
+		assertEquals(0xaadbd854, GlusterFSDhtLayout.hash("abcdefghijklmnopqrstu"));
+		assertEquals(0x9e089967, GlusterFSDhtLayout.hash("caf\u00e9"));
+	}
+
+	@Test
+	public void testRanges() throws IOException {
+		GlusterFSDhtLayout layout = new GlusterFSDhtLayout.Builder().add(0, LOW).add(1, HIGH).build();
+		assertTrue(layout.isComplete());
+		/* 0x3a17e4e6 is in the low half, 0xaadbd854 in the high half */
+		assertEquals(0, layout.getSubvolume("a", null));
+		assertEquals(1, layout.getSubvolume("abcdefghijklmnopqrstu", null));
+		assertEquals(0, layout.getSubvolume(0));
+		assertEquals(1, layout.getSubvolume(0xffffffff));
+	}
+
+	@Test
+	public void testPartialLayout() throws IOException {
+		GlusterFSDhtLayout layout = new GlusterFSDhtLayout.Builder().add(1, HIGH).add(0, 0, 0).build();
+		assertFalse(layout.isComplete());
+		assertEquals(-1, layout.getSubvolume("a", null));
+		assertEquals(1, layout.getSubvolume("abcdefghijklmnopqrstu", null));
+	}
+
+	@Test
+	public void testBase64Layout() throws IOException {
+		/* same as LOW */
+		GlusterFSDhtLayout layout = new GlusterFSDhtLayout.Builder().add(3, "0sAAAAAQAAAAAAAAAAf////g==").build();
+		assertEquals(3, layout.getSubvolume(0));
+		assertEquals(-1, layout.getSubvolume(0x7fffffff));
+	}
+
+	@Test(expected = IOException.class)
+	public void testBadLayout() throws IOException {
+		new GlusterFSDhtLayout.Builder().add(0, "0x0001");
+	}
+
+	@Test
+	public void testRsyncTempName() throws IOException {
+		Pattern rsync = Pattern.compile(GlusterFSDhtLayout.DEFAULT_RSYNC_HASH_REGEX);
+		GlusterFSDhtLayout layout = new GlusterFSDhtLayout.Builder().add(0, LOW).add(1, HIGH).build();
+		assertEquals(layout.getSubvolume("part-00000", null), layout.getSubvolume(".part-00000.Xy12Zq", rsync));
+		assertEquals(1, layout.getSubvolume("abcdefghijklmnopqrstu", rsync));
+	}
+
+	@Test
+	public void testVolfile() throws IOException {
+		GlusterFSVolfile volfile = GlusterFSVolfile.parse(VOLFILE);
+		assertEquals(2, volfile.size());
+		assertEquals("HadoopVol-replicate-0", volfile.getSubvolumeName(0));
+		assertEquals(Arrays.asList("vm-1", "vm-2"), Arrays.asList(volfile.getHosts(0)));
+		assertEquals(Arrays.asList("vm-3", "vm-4"), Arrays.asList(volfile.getHosts(1)));
+		assertEquals(2, volfile.getBricks(1).size());
+	}
+
+	@Test
+	public void testSingleBrickVolfile() throws IOException {
+		GlusterFSVolfile volfile = GlusterFSVolfile.parse(
+				"volume v-client-0\n type protocol/client\n option remote-host vm-1\n" +
+				" option remote-subvolume /b\nend-volume\n");
+		assertEquals(1, volfile.size());
+		assertEquals("vm-1", volfile.getHosts(0)[0]);
+	}
+
+	@Test(expected = IOException.class)
+	public void testUndefinedSubvolume() throws IOException {
+		GlusterFSVolfile.parse("volume dht\n type cluster/distribute\n subvolumes missing\nend-volume\n");
+	}
+
+	/*
+	 * A node with a brick in one replica set reads that set's range once per
+	 * directory, and can't place names hashing into the other range.
+	 */
+	@Test
+	public void testLocator() throws IOException {
+		CannedReader reader = new CannedReader();
+		reader.values.put("/mnt/brick1/HadoopVol/dir", LOW);
+		GlusterFSDhtLocator locator = new GlusterFSDhtLocator(GlusterFSVolfile.parse(VOLFILE), reader,
+				Arrays.asList("vm-1"), 10, 0, null);
+
+		/* only the low half is known on vm-1 */
+		assertEquals(Arrays.asList("vm-1", "vm-2"), Arrays.asList(locator.getHosts("/dir/a")));
+		assertNull(locator.getHosts("/dir/abcdefghijklmnopqrstu"));
+		assertEquals(1, locator.getLayoutReads());
+		assertEquals(1, locator.getPlaced());
+		assertEquals(1, locator.getUnplaced());
+		assertEquals(Arrays.asList("/mnt/brick1/HadoopVol/dir"), reader.reads);
+
+		locator.invalidate("/dir");
+		locator.getHosts("/dir/a");
+		assertEquals(2, locator.getLayoutReads());
+	}
+
+	@Test
+	public void testLocatorWithTwoLocalBricks() throws IOException {
+		/* both replica sets keep their bricks at the same path, the reader answers by brick order */
+		final String[] answers = { LOW, HIGH };
+		GlusterFSXattrReader reader = new GlusterFSXattrReader() {
+			int next = 0;
+
+			public String getXattr(String file, String name) {
+				return answers[next++ % 2];
+			}
+
+			public String[] getXattrs(String[] files, String name) {
+				String[] v = new String[files.length];
+				for (int i = 0; i < files.length; i++)
+					v[i] = getXattr(files[i], name);
+				return v;
+			}
+		};
+		GlusterFSDhtLocator locator = new GlusterFSDhtLocator(GlusterFSVolfile.parse(VOLFILE), reader,
+				Arrays.asList("vm-1", "vm-3"), 10, 0, null);
+		assertEquals("vm-1", locator.getHosts("/a")[0]);
+		assertEquals("vm-3", locator.getHosts("/abcdefghijklmnopqrstu")[0]);
+		assertEquals(1, locator.getLayoutReads());
+	}
+
+	static String client(int i) {
+		return "volume V-client-" + i + "\n    type protocol/client\n    option remote-host vm-" + (i + 1)
+				+ "\n    option remote-subvolume /mnt/brick1/V\nend-volume\n";
+	}
+
+	/* one subvolume of the given type over three bricks, under distribute */
+	static String volfile(String type, String option) {
+		return client(0) + client(1) + client(2) + "volume V-set-0\n    type " + type + "\n" + option
+				+ "    subvolumes V-client-0 V-client-1 V-client-2\nend-volume\n"
+				+ "volume V-dht\n    type cluster/distribute\n    subvolumes V-set-0\nend-volume\n";
+	}
+
+	/* the whole hash space */
+	static final String ALL = "0x000000010000000000000000" + "ffffffff";
+
+	GlusterFSDhtLocator locator(String volfile) throws IOException {
+		CannedReader reader = new CannedReader();
+		reader.values.put("/mnt/brick1/V/dir", ALL);
+		return new GlusterFSDhtLocator(GlusterFSVolfile.parse(volfile), reader, Arrays.asList("vm-1"), 10, 0, null);
+	}
+
+	@Test
+	public void testReplicatePlaced() throws IOException {
+		GlusterFSDhtLocator locator = locator(volfile("cluster/replicate", ""));
+		assertEquals(Arrays.asList("vm-1", "vm-2", "vm-3"), Arrays.asList(locator.getHosts("/dir/a")));
+	}
+
+	/* redundancy bricks hold no data: disperse files are left to pathinfo */
+	@Test
+	public void testDisperseNotPlaced() throws IOException {
+		String volfile = volfile("cluster/disperse", "    option redundancy 1\n");
+		assertFalse(GlusterFSVolfile.parse(volfile).holdsWholeFiles(0));
+		GlusterFSDhtLocator locator = locator(volfile);
+		assertNull(locator.getHosts("/dir/a"));
+		assertEquals(1, locator.getUnplaced());
+	}
+
+	/* each stripe brick holds some units of each block: left to pathinfo */
+	@Test
+	public void testStripeNotPlaced() throws IOException {
+		String volfile = volfile("cluster/stripe", "    option block-size 128KB\n");
+		assertFalse(GlusterFSVolfile.parse(volfile).holdsWholeFiles(0));
+		assertNull(locator(volfile).getHosts("/dir/a"));
+	}
+
+	@Test
+	public void testNoLocalBricks() throws IOException {
+		CannedReader reader = new CannedReader();
+		GlusterFSDhtLocator locator = new GlusterFSDhtLocator(GlusterFSVolfile.parse(VOLFILE), reader,
+				Arrays.asList("elsewhere"), 10, 0, null);
+		assertNull(locator.getHosts("/dir/a"));
+		assertTrue(reader.reads.isEmpty());
+	}
+
+	static class CannedReader implements GlusterFSXattrReader {
+		final Map<String, String> values = new HashMap<String, String>();
+		final ArrayList<String> reads = new ArrayList<String>();
+
+		public String getXattr(String file, String name) {
+			assertEquals(GlusterFSDhtLocator.DHT_XATTR, name);
+			reads.add(file);
+			return values.get(file);
+		}
+
+		public String[] getXattrs(String[] files, String name) {
+			String[] v = new String[files.length];
+			for (int i = 0; i < files.length; i++)
+				v[i] = getXattr(files[i], name);
+			return v;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.glusterfs.Util;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestGlusterFileStatus {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	GlusterVolume volume;
+
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("status");
+		mount = testVolume.getMount();
+		Configuration conf = testVolume.createConfiguration();
+		volume = testVolume.create(conf);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		volume.close();
+		testVolume.delete();
+	}
+
+	/* owner, group and permission must be what `ls -ld` reports */
+	void assertSameAsLs(File f, FileStatus status) throws IOException {
+		StringTokenizer t = new StringTokenizer(Util.execCommand(f, Util.getGET_PERMISSION_COMMAND()));
+		assertEquals(FsPermission.valueOf(t.nextToken().substring(0, 10)), status.getPermission());
+		t.nextToken();
+		assertEquals(t.nextToken(), status.getOwner());
+		assertEquals(t.nextToken(), status.getGroup());
+	}
+
+	@Test
+	public void testFile() throws IOException, InterruptedException {
+		File f = new File(mount, "f");
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(new byte[10]);
+		out.close();
+		FileUtil.chmod(f.getPath(), "640");
+
+		FileStatus status = volume.getFileStatus(new Path("glusterfs:///f"));
+		assertEquals(10, status.getLen());
+		assertFalse(status.isDirectory());
+		assertEquals(volume.trimTimestamp(f.lastModified()), status.getModificationTime());
+		assertEquals(new FsPermission((short) 0640), status.getPermission());
+		assertSameAsLs(f, status);
+	}
+
+	@Test
+	public void testStickyDirectory() throws IOException, InterruptedException {
+		File d = new File(mount, "d");
+		assertTrue(d.mkdir());
+		FileUtil.chmod(d.getPath(), "1777");
+
+		FileStatus status = volume.getFileStatus(new Path("glusterfs:///d"));
+		assertTrue(status.isDirectory());
+		assertTrue(status.getPermission().getStickyBit());
+		assertSameAsLs(d, status);
+	}
+
+	/* the sticky bit comes from the listing's stat, not a second one */
+	@Test
+	public void testStickyListed() throws IOException, InterruptedException {
+		File d = new File(mount, "d");
+		assertTrue(d.mkdir());
+		FileUtil.chmod(d.getPath(), "1777");
+		FileStatus[] listing = volume.listStatus(new Path("glusterfs:///"));
+		FileUtil.chmod(d.getPath(), "755");
+		assertEquals(new FsPermission((short) 01777), listing[0].getPermission());
+	}
+
+	@Test
+	public void testListed() throws IOException {
+		new FileOutputStream(new File(mount, "a")).close();
+		FileStatus[] listing = volume.listStatus(new Path("glusterfs:///"));
+		assertEquals(1, listing.length);
+		assertSameAsLs(new File(mount, "a"), listing[0]);
+	}
+
+	/* complete statuses from one pass over the directory */
+	@Test
+	public void testListingMatchesFileStatus() throws IOException {
+		for (int i = 0; i < 5; i++) {
+			FileOutputStream out = new FileOutputStream(new File(mount, "f" + i));
+			out.write(new byte[i]);
+			out.close();
+		}
+		assertTrue(new File(mount, "sub").mkdir());
+
+		FileStatus[] listing = volume.listStatus(new Path("glusterfs:///"));
+		assertEquals(6, listing.length);
+		for (FileStatus s : listing) {
+			FileStatus single = volume.getFileStatus(s.getPath());
+			assertEquals(single, s);
+			assertEquals(single.getLen(), s.getLen());
+			assertEquals(single.isDirectory(), s.isDirectory());
+			assertEquals(single.getModificationTime(), s.getModificationTime());
+			assertEquals(single.getPermission(), s.getPermission());
+			assertEquals(single.getOwner(), s.getOwner());
+		}
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testListMissing() throws IOException {
+		volume.listStatus(new Path("glusterfs:///missing"));
+	}
+
+	FileStatus[] listSorted(String mode) throws IOException {
+		for (int i = 50; i > 0; i--)
+			new FileOutputStream(new File(mount, "part-" + i)).close();
+		Configuration conf = testVolume.createConfiguration();
+		conf.set(GlusterVolume.SORT_LISTING_KEY, mode);
+		GlusterVolume sorted = testVolume.create(conf);
+		return sorted.listStatus(new Path("glusterfs:///"));
+	}
+
+	@Test
+	public void testSortedListing() throws IOException {
+		FileStatus[] listing = listSorted("true");
+		assertEquals(50, listing.length);
+		for (int i = 1; i < listing.length; i++)
+			assertTrue(listing[i - 1].compareTo(listing[i]) < 0);
+	}
+
+	@Test
+	public void testSortedByName() throws IOException {
+		FileStatus[] listing = listSorted("name");
+		assertEquals(50, listing.length);
+		for (int i = 1; i < listing.length; i++)
+			assertTrue(listing[i - 1].getPath().getName().compareTo(listing[i].getPath().getName()) < 0);
+	}
+}
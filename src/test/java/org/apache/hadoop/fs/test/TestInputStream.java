@@ -0,0 +1,277 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSBufferPool;
+import org.apache.hadoop.fs.glusterfs.GlusterFSInputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInputStream {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	GlusterVolume volume;
+	byte[] data = new byte[100000];
+	Path file = new Path("glusterfs:///data");
+
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("input");
+		mount = testVolume.getMount();
+		new Random(7).nextBytes(data);
+		FileOutputStream out = new FileOutputStream(new File(mount, "data"));
+		out.write(data);
+		out.close();
+
+		Configuration conf = testVolume.createConfiguration();
+		conf.setBoolean(GlusterFSBufferPool.LEAK_DETECTION_KEY, true);
+		volume = testVolume.create(conf);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		/* every stream gave its buffer back */
+		assertEquals(0, volume.getBufferPool().getLeaks().size());
+		volume.close();
+		testVolume.delete();
+	}
+
+	@Test
+	public void testSequential() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		assertTrue(in.getWrappedStream() instanceof GlusterFSInputStream);
+		assertEquals(data[0] & 0xff, in.read());
+		byte[] b = new byte[data.length];
+		b[0] = data[0];
+		int off = 1;
+		/* small reads from the buffer, then one larger than it straight from the channel */
+		for (int len : new int[] { 10, 4000, 5000, 20000 }) {
+			assertEquals(len, in.read(b, off, len));
+			off += len;
+		}
+		in.readFully(b, off, data.length - off);
+		assertArrayEquals(data, b);
+		assertEquals(data.length, in.getPos());
+		assertEquals(-1, in.read());
+		assertEquals(-1, in.read(b, 0, 10));
+		in.close();
+	}
+
+	@Test
+	public void testSeek() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		in.seek(50000);
+		assertEquals(data[50000] & 0xff, in.read());
+		/* backwards within the buffer */
+		in.seek(50000);
+		assertEquals(data[50000] & 0xff, in.read());
+		in.seek(10);
+		assertEquals(data[10] & 0xff, in.read());
+		assertEquals(100, in.skip(100));
+		assertEquals(111, in.getPos());
+		assertEquals(data[111] & 0xff, in.read());
+		in.close();
+	}
+
+	@Test
+	public void testPositionalRead() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		in.seek(5);
+		byte[] b = new byte[1000];
+		in.readFully(70000, b);
+		assertEquals(ByteBuffer.wrap(data, 70000, 1000), ByteBuffer.wrap(b));
+		/* the stream doesn't move */
+		assertEquals(5, in.getPos());
+		assertEquals(data[5] & 0xff, in.read());
+		/* short at the end, then nothing */
+		assertEquals(100, in.read(data.length - 100, b, 0, 1000));
+		assertEquals(-1, in.read(data.length, b, 0, 1000));
+		in.close();
+	}
+
+	@Test(expected = EOFException.class)
+	public void testReadFullyPastEnd() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		try {
+			in.readFully(data.length - 10, new byte[20]);
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testByteBuffers() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		ByteBuffer direct = ByteBuffer.allocateDirect(60000);
+		assertEquals(60000, in.read(direct));
+		ByteBuffer heap = ByteBuffer.allocate(100);
+		assertEquals(100, in.read(heap));
+		direct.flip();
+		heap.flip();
+		assertEquals(ByteBuffer.wrap(data, 0, 60000), direct);
+		assertEquals(ByteBuffer.wrap(data, 60000, 100), heap);
+		in.close();
+	}
+
+	@Test
+	public void testReadahead() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		GlusterFSInputStream stream = (GlusterFSInputStream) in.getWrappedStream();
+		in.setReadahead(65536L);
+		assertEquals(65536, stream.getReadahead());
+		in.seek(1000);
+		assertEquals(data[1000] & 0xff, in.read());
+		in.setReadahead(0L);
+		assertEquals(data[1001] & 0xff, in.read());
+		in.setReadahead(null);
+		assertEquals(4096, stream.getReadahead());
+		assertEquals(data[1002] & 0xff, in.read());
+		in.close();
+	}
+
+	/* the read-ahead buffer is taken on the first sequential read, and reused by the next stream */
+	@Test
+	public void testBufferPool() throws IOException {
+		GlusterFSBufferPool pool = volume.getBufferPool();
+		FSDataInputStream in = volume.open(file, 4096);
+		in.readFully(100, new byte[10]);
+		assertEquals(0, pool.getAcquired());
+		assertEquals(data[0] & 0xff, in.read());
+		assertEquals(1, pool.getOutstanding());
+		in.close();
+		in.close();
+		assertEquals(0, pool.getOutstanding());
+
+		in = volume.open(file, 4096);
+		in.seek(5000);
+		assertEquals(data[5000] & 0xff, in.read());
+		assertEquals(1, pool.getHits());
+		in.close();
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testMissing() throws IOException {
+		volume.open(new Path("glusterfs:///missing"), 4096);
+	}
+
+	@Test(expected = IOException.class)
+	public void testClosed() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		in.close();
+		in.read(0, new byte[1], 0, 1);
+	}
+
+	@Test
+	public void testDisabled() throws IOException {
+		Configuration conf = new Configuration(volume.getConf());
+		conf.setBoolean(GlusterVolume.CHANNEL_INPUT_KEY, false);
+		GlusterVolume plain = testVolume.create(conf);
+		FSDataInputStream in = plain.open(file, 4096);
+		assertFalse(in.getWrappedStream() instanceof GlusterFSInputStream);
+		byte[] b = new byte[100];
+		in.readFully(500, b);
+		assertEquals(ByteBuffer.wrap(data, 500, 100), ByteBuffer.wrap(b));
+		in.close();
+		plain.close();
+	}
+
+	/* one stream, many threads reading at their own positions */
+	@Test(timeout = 60000)
+	public void testConcurrentPositionalReads() throws Exception {
+		final FSDataInputStream in = volume.open(file, 4096);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < 8; t++) {
+				final Random random = new Random(t);
+				results.add(threads.submit(new Callable<Integer>() {
+					public Integer call() throws IOException {
+						byte[] b = new byte[512];
+						for (int i = 0; i < 2000; i++) {
+							int pos = random.nextInt(data.length - b.length);
+							in.readFully(pos, b);
+							assertEquals(ByteBuffer.wrap(data, pos, b.length), ByteBuffer.wrap(b));
+						}
+						return 2000;
+					}
+				}));
+			}
+			for (Future<Integer> r : results)
+				assertEquals(2000, r.get().intValue());
+		} finally {
+			threads.shutdownNow();
+			in.close();
+		}
+	}
+
+	/* an interrupt closes the channel under every reader; only the interrupted one notices */
+	@Test(timeout = 60000)
+	public void testInterruptedReader() throws Exception {
+		final FSDataInputStream in = volume.open(file, 4096);
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicInteger interrupts = new AtomicInteger();
+		final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+		Thread interrupted = new Thread() {
+			public void run() {
+				byte[] b = new byte[512];
+				Random random = new Random(1);
+				while (!stop.get()) {
+					try {
+						in.readFully(random.nextInt(data.length - b.length), b);
+					} catch (InterruptedIOException e) {
+						interrupts.incrementAndGet();
+						Thread.interrupted();
+					} catch (IOException e) {
+						failure.set(e);
+						return;
+					}
+				}
+			}
+		};
+		interrupted.start();
+		try {
+			Random random = new Random(2);
+			byte[] b = new byte[512];
+			for (int i = 0; i < 5000; i++) {
+				if (i % 50 == 0)
+					interrupted.interrupt();
+				int pos = random.nextInt(data.length - b.length);
+				in.readFully(pos, b);
+				assertEquals(ByteBuffer.wrap(data, pos, b.length), ByteBuffer.wrap(b));
+			}
+		} finally {
+			stop.set(true);
+			interrupted.join();
+		}
+		assertNull(failure.get());
+		assertTrue(interrupts.get() > 0);
+		in.seek(100);
+		assertEquals(data[100] & 0xff, in.read());
+		in.close();
+	}
+}
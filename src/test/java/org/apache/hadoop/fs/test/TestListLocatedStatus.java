@@ -0,0 +1,134 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrReader;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestListLocatedStatus {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	GlusterVolume volume;
+
+	/* each file on a host named after it; batches holding "bad" fail */
+	public static class NamedHostReader implements GlusterFSXattrReader {
+		public String getXattr(String file, String name) {
+			if (file.endsWith("bad"))
+				throw new IllegalStateException("unreadable " + file);
+			String host = new File(file).getName();
+			return "(<DISTRIBUTE:lv-dht> <POSIX(/b):" + host + ":/b/" + host + ">)";
+		}
+
+		public String[] getXattrs(String[] files, String name) {
+			String[] v = new String[files.length];
+			for (int i = 0; i < files.length; i++)
+				v[i] = getXattr(files[i], name);
+			return v;
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("located");
+		mount = testVolume.getMount();
+		Configuration conf = testVolume.createConfiguration();
+		conf.set(GlusterFSXattr.XATTR_READER_KEY, NamedHostReader.class.getName());
+		conf.setBoolean(GlusterFSXattr.XATTR_FALLBACK_KEY, false);
+		conf.setInt(GlusterVolume.LOCATED_THREADS_KEY, 2);
+		conf.setInt(GlusterVolume.LOCATED_BATCH_KEY, 3);
+		volume = testVolume.create(conf);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		volume.close();
+		testVolume.delete();
+	}
+
+	void touch(String name) throws IOException {
+		FileOutputStream out = new FileOutputStream(new File(mount, name));
+		out.write(1);
+		out.close();
+	}
+
+	@Test
+	public void testAllEntriesLocated() throws IOException {
+		Set<String> expected = new HashSet<String>();
+		for (int i = 0; i < 20; i++) {
+			touch("f" + i);
+			expected.add("f" + i);
+		}
+		assertTrue(new File(mount, "dir").mkdir());
+
+		Set<String> listed = new HashSet<String>();
+		RemoteIterator<LocatedFileStatus> it = volume.listLocatedStatus(new Path("glusterfs:///"));
+		while (it.hasNext()) {
+			LocatedFileStatus s = it.next();
+			String name = s.getPath().getName();
+			if (s.isDirectory()) {
+				assertEquals("dir", name);
+				continue;
+			}
+			listed.add(name);
+			assertEquals(1, s.getBlockLocations().length);
+			assertArrayEquals(new String[] { name }, s.getBlockLocations()[0].getHosts());
+		}
+		assertEquals(expected, listed);
+	}
+
+	/*
+	 * A failed lookup doesn't fail the listing; its batch is listed without hosts.
+	 */
+	@Test
+	public void testFailedBatchHasNoHosts() throws IOException {
+		touch("bad");
+		for (int i = 0; i < 8; i++)
+			touch("f" + i);
+
+		int located = 0, hostless = 0, total = 0;
+		RemoteIterator<LocatedFileStatus> it = volume.listLocatedStatus(new Path("glusterfs:///"));
+		while (it.hasNext()) {
+			LocatedFileStatus s = it.next();
+			total++;
+			assertEquals(1, s.getBlockLocations().length);
+			assertEquals(1, s.getBlockLocations()[0].getLength());
+			if (s.getBlockLocations()[0].getHosts().length == 0)
+				hostless++;
+			else
+				located++;
+		}
+		assertEquals(9, total);
+		/* only the three files of the failed batch */
+		assertEquals(3, hostless);
+		assertEquals(6, located);
+	}
+
+	@Test
+	public void testFiltered() throws IOException {
+		touch("a");
+		touch("b");
+		RemoteIterator<LocatedFileStatus> it = volume.listFiles(new Path("glusterfs:///"), false);
+		int n = 0;
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		assertEquals(2, n);
+	}
+}
@@ -0,0 +1,187 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestListStatusIterator {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	List<GlusterVolume> volumes = new ArrayList<GlusterVolume>();
+
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("paged");
+		mount = testVolume.getMount();
+		File dir = new File(mount, "dir");
+		assertTrue(new File(dir, "sub").mkdirs());
+		for (int i = 0; i < 25; i++)
+			new File(dir, "part-" + i).createNewFile();
+		new File(dir, "sub/nested").createNewFile();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (GlusterVolume v : volumes)
+			v.close();
+		testVolume.delete();
+	}
+
+	/* counts directory streams left open, and fails to stat the entry named */
+	static class FailingVolume extends GlusterVolume {
+		int open = 0;
+		String failing = null;
+
+		protected DirectoryStream<java.nio.file.Path> openDirectory(Path f, File dir) throws IOException {
+			final DirectoryStream<java.nio.file.Path> stream = super.openDirectory(f, dir);
+			open++;
+			return new DirectoryStream<java.nio.file.Path>() {
+				boolean closed = false;
+
+				public Iterator<java.nio.file.Path> iterator() {
+					return stream.iterator();
+				}
+
+				public void close() throws IOException {
+					if (!closed)
+						open--;
+					closed = true;
+					stream.close();
+				}
+			};
+		}
+
+		protected FileStatus getEntryStatus(File name) throws IOException {
+			if (name.getName().equals(failing))
+				throw new AccessDeniedException(name.getPath());
+			return super.getEntryStatus(name);
+		}
+	}
+
+	GlusterVolume volume(String sort) throws IOException {
+		return volume(sort, new GlusterVolume());
+	}
+
+	GlusterVolume volume(String sort, GlusterVolume volume) throws IOException {
+		Configuration conf = testVolume.createConfiguration();
+		conf.set(GlusterFSXattr.XATTR_READER_KEY, TestListLocatedStatus.NamedHostReader.class.getName());
+		conf.setBoolean(GlusterFSXattr.XATTR_FALLBACK_KEY, false);
+		conf.setInt(GlusterVolume.LIST_PAGE_SIZE_KEY, 4);
+		/* located listings stay a few entries ahead */
+		conf.setInt(GlusterVolume.LOCATED_THREADS_KEY, 1);
+		conf.setInt(GlusterVolume.LOCATED_BATCH_KEY, 2);
+		conf.set(GlusterVolume.SORT_LISTING_KEY, sort);
+		volumes.add(testVolume.initialize(volume, conf));
+		return volume;
+	}
+
+	static List<FileStatus> drain(RemoteIterator<? extends FileStatus> it) throws IOException {
+		List<FileStatus> all = new ArrayList<FileStatus>();
+		while (it.hasNext())
+			all.add(it.next());
+		return all;
+	}
+
+	/* the pages together are the whole listing, with complete statuses */
+	@Test
+	public void testPagesCoverListing() throws IOException {
+		GlusterVolume volume = volume("false");
+		Path dir = new Path("glusterfs:///dir");
+		List<FileStatus> paged = drain(volume.listStatusIterator(dir));
+		FileStatus[] listed = volume.listStatus(dir);
+		assertEquals(26, paged.size());
+		assertEquals(new HashSet<FileStatus>(Arrays.asList(listed)), new HashSet<FileStatus>(paged));
+		for (FileStatus s : paged)
+			assertEquals(volume.getFileStatus(s.getPath()).getLen(), s.getLen());
+	}
+
+	@Test
+	public void testSortedByName() throws IOException {
+		List<FileStatus> paged = drain(volume("name").listStatusIterator(new Path("glusterfs:///dir")));
+		assertEquals(26, paged.size());
+		for (int i = 1; i < paged.size(); i++)
+			assertTrue(paged.get(i - 1).getPath().getName().compareTo(paged.get(i).getPath().getName()) < 0);
+	}
+
+	@Test
+	public void testSortedByStatus() throws IOException {
+		List<FileStatus> paged = drain(volume("true").listStatusIterator(new Path("glusterfs:///dir")));
+		assertEquals(26, paged.size());
+		for (int i = 1; i < paged.size(); i++)
+			assertTrue(paged.get(i - 1).compareTo(paged.get(i)) < 0);
+	}
+
+	@Test
+	public void testFile() throws IOException {
+		List<FileStatus> paged = drain(volume("false").listStatusIterator(new Path("glusterfs:///dir/part-1")));
+		assertEquals(1, paged.size());
+		assertFalse(paged.get(0).isDirectory());
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testMissing() throws IOException {
+		volume("false").listStatusIterator(new Path("glusterfs:///missing"));
+	}
+
+	@Test
+	public void testListFilesRecursive() throws IOException {
+		List<FileStatus> files = drain(volume("false").listFiles(new Path("glusterfs:///dir"), true));
+		assertEquals(26, files.size());
+		for (FileStatus s : files) {
+			assertFalse(s.isDirectory());
+			assertNotNull(((LocatedFileStatus) s).getBlockLocations());
+		}
+	}
+
+	/* an entry that can't be stat'ed fails the listing and closes the directory */
+	@Test
+	public void testFailureClosesDirectory() throws IOException {
+		FailingVolume volume = (FailingVolume) volume("false", new FailingVolume());
+		volume.failing = "part-7";
+		try {
+			drain(volume.listStatusIterator(new Path("glusterfs:///dir")));
+			fail("listed an entry that can't be stat'ed");
+		} catch (AccessDeniedException e) {
+			assertEquals(0, volume.open);
+		}
+	}
+
+	@Test
+	public void testCloseEarly() throws IOException {
+		FailingVolume volume = (FailingVolume) volume("false", new FailingVolume());
+		RemoteIterator<FileStatus> it = volume.listStatusIterator(new Path("glusterfs:///dir"));
+		it.next();
+		assertEquals(1, volume.open);
+		((Closeable) it).close();
+		assertEquals(0, volume.open);
+
+		RemoteIterator<LocatedFileStatus> located = volume.listLocatedStatus(new Path("glusterfs:///dir"));
+		located.next();
+		assertEquals(1, volume.open);
+		((Closeable) located).close();
+		assertEquals(0, volume.open);
+	}
+}
@@ -0,0 +1,149 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSCopier;
+import org.apache.hadoop.fs.glusterfs.GlusterFileSystem;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLocalCopy {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	File local;
+	GlusterFileSystem fs;
+	GlusterVolume volume;
+
+	/* 10000 random bytes, copied in ranges of 1000 */
+	byte[] big = new byte[10000];
+
+	void write(File f, byte[] data) throws IOException {
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(data);
+		out.close();
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("localcopy");
+		mount = testVolume.getMount();
+		local = testVolume.getDirectory("local");
+		assertTrue(new File(local, "data/sub").mkdirs());
+		new Random(42).nextBytes(big);
+		write(new File(local, "data/big"), big);
+		for (int i = 0; i < 20; i++)
+			write(new File(local, "data/sub/small-" + i), ("small " + i).getBytes("UTF-8"));
+
+		Configuration conf = testVolume.createConfiguration();
+		conf.setBoolean(GlusterFileSystem.PARALLEL_LOCAL_COPY_KEY, true);
+		conf.setInt(GlusterVolume.COPY_THREADS_KEY, 4);
+		conf.setLong(GlusterFSCopier.RANGE_SIZE_KEY, 1000);
+		conf.setLong(GlusterFSCopier.BUFFER_SIZE_KEY, 300);
+		/* the single stream copy looks the volume up by path; keep this mount out of the cache */
+		conf.setBoolean("fs.glusterfs.impl.disable.cache", true);
+		fs = new GlusterFileSystem();
+		fs.initialize(URI.create("glusterfs:///"), conf);
+		volume = (GlusterVolume) fs.getRawFileSystem();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		fs.close();
+		testVolume.delete();
+	}
+
+	void assertData(File dir) throws IOException {
+		assertArrayEquals(big, Files.readAllBytes(new File(dir, "big").toPath()));
+		for (int i = 0; i < 20; i++)
+			assertEquals("small " + i, new String(Files.readAllBytes(new File(dir, "sub/small-" + i).toPath()), "UTF-8"));
+	}
+
+	@Test
+	public void testCopyFromLocal() throws IOException {
+		fs.copyFromLocalFile(false, new Path(local.getPath(), "data"), new Path("glusterfs:///in/data"));
+		assertData(new File(mount, "in/data"));
+		assertTrue(new File(local, "data").exists());
+		assertEquals(21, volume.getCopier().getFilesCopied());
+		assertEquals(10, volume.getCopier().getRangesCopied());
+		/* "small 0".."small 9" and "small 10".."small 19" */
+		assertEquals(10000 + 10 * 7 + 10 * 8, volume.getCopier().getBytesCopied());
+	}
+
+	@Test
+	public void testMoveFromLocal() throws IOException {
+		assertTrue(fs.mkdirs(new Path("glusterfs:///in")));
+		fs.moveFromLocalFile(new Path(local.getPath(), "data"), new Path("glusterfs:///in"));
+		assertData(new File(mount, "in/data"));
+		assertFalse(new File(local, "data").exists());
+	}
+
+	@Test
+	public void testCopyToLocal() throws IOException {
+		fs.copyFromLocalFile(false, new Path(local.getPath(), "data/big"), new Path("glusterfs:///big"));
+		fs.copyToLocalFile(false, new Path("glusterfs:///big"), new Path(local.getPath(), "out/big"), true);
+		assertArrayEquals(big, Files.readAllBytes(new File(local, "out/big").toPath()));
+		assertFalse(new File(local, "out/.big.crc").exists());
+		assertEquals(20, volume.getCopier().getRangesCopied());
+	}
+
+	/* a local file system that keeps checksums gets them, through the single stream */
+	@Test
+	public void testCopyToChecksummedLocal() throws IOException {
+		write(new File(mount, "big"), big);
+		fs.copyToLocalFile(false, new Path("glusterfs:///big"), new Path(local.getPath(), "out/big"));
+		assertArrayEquals(big, Files.readAllBytes(new File(local, "out/big").toPath()));
+		assertTrue(new File(local, "out/.big.crc").exists());
+		assertEquals(0, volume.getCopier().getFilesCopied());
+	}
+
+	/* overwritten by a shorter file, the target takes the new length */
+	@Test
+	public void testOverwrite() throws IOException {
+		write(new File(mount, "big"), new byte[20000]);
+		fs.copyFromLocalFile(false, true, new Path(local.getPath(), "data/big"), new Path("glusterfs:///big"));
+		assertArrayEquals(big, Files.readAllBytes(new File(mount, "big").toPath()));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoOverwrite() throws IOException {
+		write(new File(mount, "big"), new byte[1]);
+		fs.copyFromLocalFile(false, false, new Path(local.getPath(), "data/big"), new Path("glusterfs:///big"));
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testMissingSource() throws IOException {
+		fs.copyFromLocalFile(false, new Path(local.getPath(), "nothing"), new Path("glusterfs:///in"));
+	}
+
+	@Test
+	public void testMultipleSources() throws IOException {
+		assertTrue(fs.mkdirs(new Path("glusterfs:///in")));
+		fs.copyFromLocalFile(false, true,
+				new Path[] { new Path(local.getPath(), "data/big"), new Path(local.getPath(), "data/sub") },
+				new Path("glusterfs:///in"));
+		assertArrayEquals(big, Files.readAllBytes(new File(mount, "in/big").toPath()));
+		assertTrue(new File(mount, "in/sub/small-19").isFile());
+	}
+
+	@Test
+	public void testSingleStream() throws IOException {
+		fs.getConf().unset(GlusterFileSystem.PARALLEL_LOCAL_COPY_KEY);
+		fs.copyFromLocalFile(false, new Path(local.getPath(), "data"), new Path("glusterfs:///in/data"));
+		assertData(new File(mount, "in/data"));
+		assertEquals(0, volume.getCopier().getFilesCopied());
+	}
+}
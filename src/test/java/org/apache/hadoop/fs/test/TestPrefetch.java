@@ -0,0 +1,181 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSBufferPool;
+import org.apache.hadoop.fs.glusterfs.GlusterFSInputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSPrefetchInputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSPrefetcher;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPrefetch {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	GlusterVolume volume;
+	GlusterFSPrefetcher prefetcher;
+	/* read ahead in 3 windows of 16KB growing to 64KB */
+	byte[] data = new byte[1000000];
+	Path file = new Path("glusterfs:///data");
+
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("prefetch");
+		mount = testVolume.getMount();
+		new Random(11).nextBytes(data);
+		FileOutputStream out = new FileOutputStream(new File(mount, "data"));
+		out.write(data);
+		out.close();
+
+		Configuration conf = testVolume.createConfiguration();
+		conf.setBoolean(GlusterFSPrefetcher.PREFETCH_KEY, true);
+		conf.setInt(GlusterFSPrefetcher.WINDOWS_KEY, 3);
+		conf.setInt(GlusterFSPrefetcher.MIN_WINDOW_KEY, 16384);
+		conf.setInt(GlusterFSPrefetcher.MAX_WINDOW_KEY, 65536);
+		conf.setInt(GlusterFSPrefetcher.THREADS_KEY, 2);
+		conf.setBoolean(GlusterFSBufferPool.LEAK_DETECTION_KEY, true);
+		volume = testVolume.create(conf);
+		prefetcher = volume.getPrefetcher();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		/* windows dropped while being read are given back when the read ends */
+		for (int i = 0; i < 500 && volume.getBufferPool().getOutstanding() > 0; i++)
+			Thread.sleep(10);
+		assertEquals(0, volume.getBufferPool().getLeaks().size());
+		volume.close();
+		testVolume.delete();
+	}
+
+	GlusterFSPrefetchInputStream stream(FSDataInputStream in) {
+		return (GlusterFSPrefetchInputStream) in.getWrappedStream();
+	}
+
+	@Test
+	public void testSequential() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		byte[] b = new byte[data.length];
+		int off = 0;
+		while (off < b.length) {
+			int n = in.read(b, off, Math.min(5000, b.length - off));
+			assertTrue(n > 0);
+			off += n;
+		}
+		assertArrayEquals(data, b);
+		assertEquals(-1, in.read());
+		assertEquals(data.length, in.getPos());
+		assertEquals(65536, stream(in).getWindowSize());
+		in.close();
+
+		assertTrue(prefetcher.getWindowsPrefetched() > 10);
+		assertEquals(prefetcher.getWindowsPrefetched(), prefetcher.getHits() + prefetcher.getWaits());
+		/* everything after the first 16KB read through the channel stream */
+		assertTrue(prefetcher.getBytesUsed() >= data.length - 20000);
+		assertEquals(prefetcher.getBytesPrefetched(), prefetcher.getBytesUsed());
+		assertEquals(0, prefetcher.getBytesWasted());
+		assertEquals(0, prefetcher.getStops());
+	}
+
+	@Test
+	public void testSingleBytes() throws IOException {
+		FSDataInputStream in = volume.open(file, 0);
+		for (int i = 0; i < 200000; i++)
+			assertEquals(data[i] & 0xff, in.read());
+		assertTrue(stream(in).isPrefetching());
+		in.close();
+		assertTrue(prefetcher.getBytesUsed() > 0);
+	}
+
+	@Test
+	public void testByteBuffers() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		ByteBuffer direct = ByteBuffer.allocateDirect(300000);
+		while (direct.hasRemaining())
+			assertTrue(in.read(direct) > 0);
+		direct.flip();
+		assertEquals(ByteBuffer.wrap(data, 0, 300000), direct);
+		in.close();
+	}
+
+	/* a seek away from the windows stops read ahead until reads are sequential again */
+	@Test
+	public void testRandomSeek() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		byte[] b = new byte[40000];
+		in.readFully(b);
+		assertTrue(stream(in).isPrefetching());
+
+		in.seek(900000);
+		in.readFully(b, 0, 100);
+		assertFalse(stream(in).isPrefetching());
+		assertEquals(16384, stream(in).getWindowSize());
+		assertEquals(1, prefetcher.getStops());
+		assertEquals(ByteBuffer.wrap(data, 900000, 100), ByteBuffer.wrap(b, 0, 100));
+
+		in.seek(500000);
+		in.readFully(b);
+		assertEquals(ByteBuffer.wrap(data, 500000, b.length), ByteBuffer.wrap(b));
+		assertTrue(stream(in).isPrefetching());
+		in.readFully(b);
+		assertEquals(ByteBuffer.wrap(data, 540000, b.length), ByteBuffer.wrap(b));
+		in.close();
+	}
+
+	/* forward into the prefetched windows keeps reading ahead */
+	@Test
+	public void testSkipAhead() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		byte[] b = new byte[20000];
+		in.readFully(b);
+		in.readFully(b);
+		assertTrue(stream(in).isPrefetching());
+		in.seek(in.getPos() + 30000);
+		in.readFully(b);
+		assertEquals(ByteBuffer.wrap(data, 70000, b.length), ByteBuffer.wrap(b));
+		assertTrue(stream(in).isPrefetching());
+		assertEquals(0, prefetcher.getStops());
+		in.close();
+	}
+
+	/* positional reads neither use the windows nor count as access */
+	@Test
+	public void testPositionalRead() throws IOException {
+		FSDataInputStream in = volume.open(file, 4096);
+		byte[] b = new byte[20000];
+		in.readFully(b);
+		in.readFully(b);
+		in.readFully(800000, b);
+		assertEquals(ByteBuffer.wrap(data, 800000, b.length), ByteBuffer.wrap(b));
+		assertEquals(40000, in.getPos());
+		in.readFully(b);
+		assertEquals(ByteBuffer.wrap(data, 40000, b.length), ByteBuffer.wrap(b));
+		assertTrue(stream(in).isPrefetching());
+		assertEquals(0, prefetcher.getStops());
+		in.close();
+	}
+
+	@Test
+	public void testDisabled() throws IOException {
+		Configuration conf = new Configuration(volume.getConf());
+		conf.setBoolean(GlusterFSPrefetcher.PREFETCH_KEY, false);
+		GlusterVolume plain = testVolume.create(conf);
+		FSDataInputStream in = plain.open(file, 4096);
+		assertEquals(GlusterFSInputStream.class, in.getWrappedStream().getClass());
+		in.close();
+		plain.close();
+	}
+}
@@ -0,0 +1,168 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.glusterfs.GlusterFSRecursiveLister;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRecursiveLister {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	GlusterVolume volume;
+
+	/*
+	 * A partitioned table: table/year=Y/month=M/part-N, with job markers
+	 * and a temporary directory that split planning must not see.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("recursive");
+		mount = testVolume.getMount();
+		File table = new File(mount, "table");
+		for (int y = 0; y < 3; y++) {
+			for (int m = 0; m < 4; m++) {
+				File partition = new File(table, "year=" + y + "/month=" + m);
+				assertTrue(partition.mkdirs());
+				for (int n = 0; n < 5; n++)
+					new File(partition, "part-" + n).createNewFile();
+				new File(partition, ".part-0.crc").createNewFile();
+			}
+		}
+		new File(table, "_SUCCESS").createNewFile();
+		assertTrue(new File(table, "_temporary/0").mkdirs());
+		new File(table, "_temporary/0/part-9").createNewFile();
+
+		Configuration conf = testVolume.createConfiguration();
+		conf.set(GlusterFSXattr.XATTR_READER_KEY, TestListLocatedStatus.NamedHostReader.class.getName());
+		conf.setBoolean(GlusterFSXattr.XATTR_FALLBACK_KEY, false);
+		conf.setInt(GlusterVolume.RECURSIVE_THREADS_KEY, 4);
+		conf.setInt(GlusterVolume.LOCATED_BATCH_KEY, 2);
+		conf.setInt(GlusterVolume.LIST_PAGE_SIZE_KEY, 3);
+		volume = testVolume.create(conf);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		volume.close();
+		testVolume.delete();
+	}
+
+	static Set<String> drain(RemoteIterator<LocatedFileStatus> it) throws IOException {
+		Set<String> files = new HashSet<String>();
+		while (it.hasNext()) {
+			LocatedFileStatus s = it.next();
+			assertFalse(s.isDirectory());
+			assertArrayEquals(new String[] { s.getPath().getName() }, s.getBlockLocations()[0].getHosts());
+			assertTrue(files.add(s.getPath().toUri().getPath()));
+		}
+		return files;
+	}
+
+	@Test
+	public void testAllFiles() throws IOException {
+		Set<String> files = drain(volume.listFiles(new Path("glusterfs:///table"), true));
+		/* 60 parts, 12 checksums, the marker and the temporary part */
+		assertEquals(74, files.size());
+		assertTrue(files.contains("/table/year=2/month=3/part-4"));
+		assertTrue(files.contains("/table/_temporary/0/part-9"));
+	}
+
+	@Test
+	public void testPruneHidden() throws IOException {
+		PathFilter all = new PathFilter() {
+			public boolean accept(Path p) {
+				return true;
+			}
+		};
+		Set<String> files = drain(volume.listFiles(new Path("glusterfs:///table"), all, true));
+		assertEquals(60, files.size());
+		for (String f : files)
+			assertFalse(GlusterFSRecursiveLister.isHidden(new Path(f)));
+	}
+
+	/* a rejected directory is not descended into */
+	@Test
+	public void testFilter() throws IOException {
+		PathFilter year1 = new PathFilter() {
+			public boolean accept(Path p) {
+				return !p.getName().startsWith("year=") || p.getName().equals("year=1");
+			}
+		};
+		Set<String> files = drain(volume.listFiles(new Path("glusterfs:///table"), year1, true));
+		assertEquals(20, files.size());
+		for (String f : files)
+			assertTrue(f.startsWith("/table/year=1/"));
+	}
+
+	@Test
+	public void testSingleFile() throws IOException {
+		Set<String> files = drain(volume.listFiles(new Path("glusterfs:///table/_SUCCESS"), true));
+		assertEquals(1, files.size());
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testMissing() throws IOException {
+		volume.listFiles(new Path("glusterfs:///nothing"), true);
+	}
+
+	/* a caller that stops early doesn't leave the walk blocked */
+	@Test(timeout = 10000)
+	public void testClose() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			RemoteIterator<LocatedFileStatus> it = volume.listFiles(new Path("glusterfs:///table"), true);
+			assertTrue(it.hasNext());
+			it.next();
+			((GlusterFSRecursiveLister) it).close();
+			assertFalse(it.hasNext());
+		}
+		assertEquals(74, drain(volume.listFiles(new Path("glusterfs:///table"), true)).size());
+	}
+
+	/* listings left unread hold back neither other listings nor summaries, and give up in the end */
+	@Test(timeout = 20000)
+	public void testAbandoned() throws Exception {
+		Configuration conf = new Configuration(volume.getConf());
+		conf.setInt(GlusterVolume.RECURSIVE_THREADS_KEY, 1);
+		conf.setLong(GlusterVolume.RECURSIVE_STALL_TIMEOUT_KEY, 500);
+		GlusterVolume stalled = testVolume.create(conf);
+		try {
+			List<RemoteIterator<LocatedFileStatus>> abandoned = new ArrayList<RemoteIterator<LocatedFileStatus>>();
+			for (int i = 0; i < 4; i++) {
+				RemoteIterator<LocatedFileStatus> it = stalled.listFiles(new Path("glusterfs:///table"), true);
+				assertTrue(it.hasNext());
+				abandoned.add(it);
+			}
+			assertEquals(74, drain(stalled.listFiles(new Path("glusterfs:///table"), true)).size());
+			assertEquals(74, stalled.getContentSummary(new Path("glusterfs:///table")).getFileCount());
+
+			Thread.sleep(1500);
+			try {
+				drain(abandoned.get(0));
+				fail("read an abandoned listing to the end");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().contains("abandoned"));
+			}
+		} finally {
+			stalled.close();
+		}
+	}
+}
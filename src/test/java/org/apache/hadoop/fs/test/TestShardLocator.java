@@ -0,0 +1,162 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.glusterfs.GlusterFSBlockLocationCache;
+import org.apache.hadoop.fs.glusterfs.GlusterFSDhtLocator;
+import org.apache.hadoop.fs.glusterfs.GlusterFSPathInfo;
+import org.apache.hadoop.fs.glusterfs.GlusterFSShardLocator;
+import org.apache.hadoop.fs.glusterfs.GlusterFSVolfile;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrReader;
+import org.junit.Test;
+
+public class TestShardLocator {
+
+	static final long MB = 1024 * 1024;
+	static final String GFID = "6f1ea4bf-76c6-4b3a-9b08-3f9f4c5f6f10";
+	static final String BASE = "(<DISTRIBUTE:sv-dht> <POSIX(/b1):vm-1:/b1/f>)";
+
+	static String shard(String host, int n) {
+		return "(<DISTRIBUTE:sv-dht> <POSIX(/b):" + host + ":/b/.shard/" + GFID + "." + n + ">)";
+	}
+
+	@Test
+	public void testShardSize() {
+		GlusterFSShardLocator locator = new GlusterFSShardLocator("/mnt/sv", new CannedReader(), null, null, 4 * MB);
+		assertEquals(4 * MB, locator.getShardSize(10 * MB));
+		assertEquals(4 * MB, locator.getShardSize(4 * MB + 1));
+		/* fits in the base file */
+		assertEquals(0, locator.getShardSize(4 * MB));
+		assertEquals(0, locator.getShardSize(1024));
+	}
+
+	@Test
+	public void testVolfileShardSize() throws IOException {
+		String shard = "volume sv-shard\n type features/shard\n%s subvolumes sv-dht\nend-volume\n";
+		String dht = "volume sv-client-0\n type protocol/client\n option remote-host vm-1\n option remote-subvolume /b\nend-volume\n"
+				+ "volume sv-dht\n type cluster/distribute\n subvolumes sv-client-0\nend-volume\n";
+		assertEquals(0, GlusterFSVolfile.parse(dht).getShardBlockSize());
+		assertEquals(GlusterFSVolfile.DEFAULT_SHARD_BLOCK_SIZE, GlusterFSVolfile.parse(dht + String.format(shard, "")).getShardBlockSize());
+		assertEquals(16 * MB, GlusterFSVolfile.parse(dht + String.format(shard, " option shard-block-size 16MB\n")).getShardBlockSize());
+		assertEquals(4 * MB, GlusterFSVolfile.parse(dht + String.format(shard, " option shard-block-size 4194304\n")).getShardBlockSize());
+		try {
+			GlusterFSVolfile.parse(dht + String.format(shard, " option shard-block-size lots\n"));
+			fail("parsed a garbled shard size");
+		} catch (IOException e) {
+			// garbled
+		}
+	}
+
+	/*
+	 * Each shard's part of the range is reported where that shard lives;
+	 * a missing shard (a hole) falls back to the base file's hosts.
+	 */
+	@Test
+	public void testShardLocations() throws IOException {
+		CannedReader reader = new CannedReader();
+		reader.put("/mnt/sv/f", GlusterFSShardLocator.GFID_XATTR, GFID);
+		reader.put("/mnt/sv/.shard/" + GFID + ".1", "trusted.glusterfs.pathinfo", shard("vm-2", 1));
+		GlusterFSShardLocator locator = new GlusterFSShardLocator("/mnt/sv", reader, null, null, 4 * MB);
+
+		BlockLocation[] blocks = locator.getBlockLocations("/mnt/sv/f", 1, 12 * MB, new GlusterFSPathInfo(BASE), 4 * MB, 2 * MB, 9 * MB, 4 * MB);
+		assertEquals(3, blocks.length);
+		assertEquals(2 * MB, blocks[0].getOffset());
+		assertEquals(2 * MB, blocks[0].getLength());
+		assertEquals("vm-1", blocks[0].getHosts()[0]);
+		assertEquals(4 * MB, blocks[1].getOffset());
+		assertEquals("vm-2", blocks[1].getHosts()[0]);
+		assertEquals(8 * MB, blocks[2].getOffset());
+		assertEquals(3 * MB, blocks[2].getLength());
+		assertEquals("vm-1", blocks[2].getHosts()[0]);
+
+		/* both shards asked for in one batch */
+		assertEquals(1, reader.batches);
+	}
+
+	/* shard pathinfo is cached for the base file's mtime and length */
+	@Test
+	public void testShardLocationsCached() throws IOException {
+		CannedReader reader = new CannedReader();
+		reader.put("/mnt/sv/f", GlusterFSShardLocator.GFID_XATTR, GFID);
+		reader.put("/mnt/sv/.shard/" + GFID + ".1", "trusted.glusterfs.pathinfo", shard("vm-2", 1));
+		reader.put("/mnt/sv/.shard/" + GFID + ".2", "trusted.glusterfs.pathinfo", shard("vm-3", 2));
+		GlusterFSBlockLocationCache cache = new GlusterFSBlockLocationCache(100, 0);
+		GlusterFSShardLocator locator = new GlusterFSShardLocator("/mnt/sv", reader, null, null, 4 * MB, cache);
+
+		locator.getBlockLocations("/mnt/sv/f", 1, 12 * MB, new GlusterFSPathInfo(BASE), 4 * MB, 0, 12 * MB, 4 * MB);
+		assertEquals(2, cache.size());
+		BlockLocation[] blocks = locator.getBlockLocations("/mnt/sv/f", 1, 12 * MB, new GlusterFSPathInfo(BASE), 4 * MB, 0, 12 * MB, 4 * MB);
+		assertEquals(1, reader.batches);
+		assertEquals("vm-2", blocks[1].getHosts()[0]);
+		assertEquals("vm-3", blocks[2].getHosts()[0]);
+
+		/* written since */
+		locator.getBlockLocations("/mnt/sv/f", 2, 12 * MB, new GlusterFSPathInfo(BASE), 4 * MB, 0, 12 * MB, 4 * MB);
+		assertEquals(2, reader.batches);
+	}
+
+	@Test
+	public void testFirstShardOnly() throws IOException {
+		CannedReader reader = new CannedReader();
+		GlusterFSShardLocator locator = new GlusterFSShardLocator("/mnt/sv", reader, null, null, 4 * MB);
+		BlockLocation[] blocks = locator.getBlockLocations("/mnt/sv/f", 1, 12 * MB, new GlusterFSPathInfo(BASE), 4 * MB, 0, 4 * MB, 4 * MB);
+		assertEquals(1, blocks.length);
+		assertTrue(reader.reads.isEmpty());
+	}
+
+	@Test
+	public void testNoGfid() throws IOException {
+		GlusterFSShardLocator locator = new GlusterFSShardLocator("/mnt/sv", new CannedReader(), null, null, 4 * MB);
+		assertNull(locator.getBlockLocations("/mnt/sv/f", 1, 12 * MB, new GlusterFSPathInfo(BASE), 4 * MB, 0, 8 * MB, 4 * MB));
+	}
+
+	/*
+	 * With the volfile, shards are placed by hashing their names into the
+	 * layout of /.shard, read from the local brick.
+	 */
+	@Test
+	public void testDhtPlacedShards() throws IOException {
+		CannedReader reader = new CannedReader();
+		reader.put("/mnt/sv/f", GlusterFSShardLocator.GFID_XATTR, GFID);
+		reader.put("/mnt/brick1/HadoopVol/.shard", GlusterFSDhtLocator.DHT_XATTR, "0x0000000100000000" + "00000000ffffffff");
+		GlusterFSDhtLocator dht = new GlusterFSDhtLocator(GlusterFSVolfile.parse(TestDhtLayout.VOLFILE), reader,
+				Arrays.asList("vm-1"), 10, 0, null);
+		GlusterFSShardLocator locator = new GlusterFSShardLocator("/mnt/sv", reader, dht, null, 4 * MB);
+
+		BlockLocation[] blocks = locator.getBlockLocations("/mnt/sv/f", 1, 12 * MB, new GlusterFSPathInfo(BASE), 4 * MB, 0, 12 * MB, 4 * MB);
+		assertEquals(3, blocks.length);
+		assertArrayEquals(new String[] { "vm-1", "vm-2" }, blocks[1].getHosts());
+		assertArrayEquals(new String[] { "vm-1", "vm-2" }, blocks[2].getHosts());
+		assertEquals(0, reader.batches);
+	}
+
+	static class CannedReader implements GlusterFSXattrReader {
+		final Map<String, String> values = new HashMap<String, String>();
+		final ArrayList<String> reads = new ArrayList<String>();
+		int batches = 0;
+
+		void put(String file, String name, String value) {
+			values.put(file + "\0" + name, value);
+		}
+
+		public String getXattr(String file, String name) {
+			reads.add(file);
+			return values.get(file + "\0" + name);
+		}
+
+		public String[] getXattrs(String[] files, String name) {
+			batches++;
+			String[] v = new String[files.length];
+			for (int i = 0; i < files.length; i++)
+				v[i] = getXattr(files[i], name);
+			return v;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSStatCache;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStatCache {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	GlusterVolume volume;
+	GlusterFSStatCache cache;
+
+	GlusterVolume volume(int size, long ttl) throws IOException {
+		Configuration conf = testVolume.createConfiguration();
+		conf.setInt(GlusterFSStatCache.CACHE_SIZE_KEY, size);
+		conf.setLong(GlusterFSStatCache.CACHE_TTL_KEY, ttl);
+		return testVolume.create(conf);
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("statcache");
+		mount = testVolume.getMount();
+		assertTrue(new File(mount, "dir").mkdirs());
+		write(new File(mount, "dir/a"), 1);
+		volume = volume(100, 60000);
+		cache = volume.getStatCache();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		volume.close();
+		testVolume.delete();
+	}
+
+	void write(File f, int len) throws IOException {
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(new byte[len]);
+		out.close();
+	}
+
+	@Test
+	public void testDisabledByDefault() throws IOException {
+		GlusterVolume plain = volume(GlusterFSStatCache.DEFAULT_CACHE_SIZE, GlusterFSStatCache.DEFAULT_CACHE_TTL);
+		plain.getFileStatus(new Path("glusterfs:///dir/a"));
+		write(new File(mount, "dir/a"), 5);
+		assertEquals(5, plain.getFileStatus(new Path("glusterfs:///dir/a")).getLen());
+		assertFalse(plain.getStatCache().isEnabled());
+		plain.close();
+	}
+
+	@Test
+	public void testStatusCached() throws IOException {
+		Path a = new Path("glusterfs:///dir/a");
+		assertEquals(1, volume.getFileStatus(a).getLen());
+		/* changed behind the cache's back: not seen until the entry expires */
+		write(new File(mount, "dir/a"), 5);
+		assertEquals(1, volume.getFileStatus(a).getLen());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0.5, cache.getHitRatio(), 0.001);
+	}
+
+	/* a status read while a stream writes is dropped when the data becomes visible */
+	@Test
+	public void testInvalidatedByStreams() throws IOException {
+		Path b = new Path("glusterfs:///dir/b");
+		FSDataOutputStream out = volume.create(b, false, 4096, (short) 1, 1 << 20, null);
+		assertEquals(0, volume.getFileStatus(b).getLen());
+		out.write(new byte[10]);
+		out.hflush();
+		assertEquals(10, volume.getFileStatus(b).getLen());
+		out.write(new byte[5]);
+		out.close();
+		assertEquals(15, volume.getFileStatus(b).getLen());
+
+		out = volume.append(b, 4096, null);
+		assertEquals(15, volume.getFileStatus(b).getLen());
+		out.write(new byte[5]);
+		out.close();
+		assertEquals(20, volume.getFileStatus(b).getLen());
+	}
+
+	@Test
+	public void testTtl() throws IOException, InterruptedException {
+		GlusterVolume shortLived = volume(100, 1);
+		Path a = new Path("glusterfs:///dir/a");
+		shortLived.getFileStatus(a);
+		write(new File(mount, "dir/a"), 5);
+		Thread.sleep(20);
+		assertEquals(5, shortLived.getFileStatus(a).getLen());
+		shortLived.close();
+	}
+
+	@Test
+	public void testNegativeEntries() throws IOException {
+		Path marker = new Path("glusterfs:///dir/_SUCCESS");
+		assertFalse(volume.exists(marker));
+		assertFalse(volume.exists(marker));
+		assertEquals(1, cache.getNegativeHits());
+
+		/* created here, so seen at once */
+		volume.create(marker).close();
+		assertTrue(volume.exists(marker));
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testDeleteInvalidates() throws IOException {
+		Path a = new Path("glusterfs:///dir/a");
+		volume.getFileStatus(a);
+		assertTrue(volume.delete(a, false));
+		volume.getFileStatus(a);
+	}
+
+	@Test
+	public void testRenameInvalidatesTree() throws IOException {
+		volume.getFileStatus(new Path("glusterfs:///dir/a"));
+		assertFalse(volume.exists(new Path("glusterfs:///moved/a")));
+		assertTrue(volume.rename(new Path("glusterfs:///dir"), new Path("glusterfs:///moved")));
+		assertFalse(volume.exists(new Path("glusterfs:///dir/a")));
+		assertTrue(volume.exists(new Path("glusterfs:///moved/a")));
+	}
+
+	@Test
+	public void testListingCached() throws IOException {
+		Path dir = new Path("glusterfs:///dir");
+		assertEquals(1, volume.listStatus(dir).length);
+		write(new File(mount, "dir/b"), 1);
+		assertEquals(1, volume.listStatus(dir).length);
+		assertEquals(1, cache.getListingHits());
+		/* the listed entries are cached as statuses too */
+		volume.getFileStatus(new Path("glusterfs:///dir/a"));
+		assertEquals(1, cache.getHits());
+
+		/* a new entry made here drops the parent's listing */
+		assertTrue(volume.mkdirs(new Path("glusterfs:///dir/sub")));
+		assertEquals(3, volume.listStatus(dir).length);
+	}
+
+	@Test
+	public void testMkdirsStopsAtCachedParent() throws IOException {
+		volume.getFileStatus(new Path("glusterfs:///dir"));
+		long hits = cache.getHits();
+		assertTrue(volume.mkdirs(new Path("glusterfs:///dir/x/y")));
+		assertTrue(cache.getHits() > hits);
+		assertTrue(new File(mount, "dir/x/y").isDirectory());
+		assertTrue(volume.getFileStatus(new Path("glusterfs:///dir/x/y")).isDirectory());
+	}
+
+	@Test
+	public void testSetPermissionInvalidates() throws IOException {
+		Path a = new Path("glusterfs:///dir/a");
+		volume.getFileStatus(a).getPermission();
+		volume.setPermission(a, new FsPermission((short) 0600));
+		assertEquals(new FsPermission((short) 0600), volume.getFileStatus(a).getPermission());
+	}
+
+	@Test
+	public void testBounded() throws IOException {
+		GlusterVolume small = volume(3, 60000);
+		for (int i = 0; i < 10; i++)
+			small.exists(new Path("glusterfs:///missing-" + i));
+		assertEquals(3, small.getStatCache().size());
+		assertEquals(7, small.getStatCache().getEvictions());
+		small.close();
+	}
+
+	/* a tree is dropped with everything below it, and nothing that only shares its name as a prefix */
+	@Test
+	public void testInvalidateTree() {
+		GlusterFSStatCache c = new GlusterFSStatCache(100, 60000);
+		for (String f : new String[] { "/t/dir", "/t/dir/a", "/t/dir/b/c", "/t/dir-x", "/t/dir0", "/t/dirx", "/t/other" })
+			c.putMissing(f);
+		c.putListing("/t/dir/b", new FileStatus[0]);
+		c.invalidateTree("/t/dir");
+		assertEquals(4, c.size());
+		assertNull(c.getListing("/t/dir/b"));
+		assertEquals(4, c.getInvalidations());
+	}
+}
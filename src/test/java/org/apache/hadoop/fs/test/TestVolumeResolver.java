@@ -0,0 +1,148 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSVolumeResolver;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestVolumeResolver {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	GlusterVolume volume;
+	GlusterFSVolumeResolver resolver;
+
+	/* vol at mnt/vol, vol2 at mnt/vol2 (sharing a prefix), nested inside vol at mnt/vol/nested */
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("resolver");
+		mount = testVolume.getMount();
+		Map<String, String> mounts = new LinkedHashMap<String, String>();
+		mounts.put("vol", mount + "/vol");
+		mounts.put("vol2", mount + "/vol2/");
+		mounts.put("nested", mount + "/vol/nested");
+		resolver = new GlusterFSVolumeResolver(mounts);
+		for (String m : mounts.values())
+			assertTrue(new File(m).mkdirs());
+
+		Configuration conf = new Configuration();
+		conf.set("fs.glusterfs.volumes", "vol,vol2,nested");
+		for (Map.Entry<String, String> e : mounts.entrySet())
+			conf.set("fs.glusterfs.volume.fuse." + e.getKey(), e.getValue());
+		volume = testVolume.create(conf);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		volume.close();
+		testVolume.delete();
+	}
+
+	@Test
+	public void testToFile() {
+		assertEquals(new File(mount, "vol/a/b"), resolver.toFile(null, "/a/b"));
+		assertEquals(new File(mount, "vol/a"), resolver.toFile("vol", "/a"));
+		assertEquals(new File(mount, "vol2/a"), resolver.toFile("vol2", "/a"));
+		assertEquals(new File(mount, "vol2"), resolver.toFile("vol2", "/"));
+		assertNull(resolver.toFile("other", "/a"));
+	}
+
+	@Test
+	public void testLongestPrefix() {
+		assertEquals(new Path("glusterfs:///a"), resolver.toPath(new File(mount, "vol/a")));
+		assertEquals(new Path("glusterfs://vol2/a"), resolver.toPath(new File(mount, "vol2/a")));
+		assertEquals(new Path("glusterfs://nested/a"), resolver.toPath(new File(mount, "vol/nested/a")));
+		assertEquals(new Path("glusterfs:///nestedx"), resolver.toPath(new File(mount, "vol/nestedx")));
+		assertEquals("nested", resolver.toVolume(new File(mount, "vol/nested")));
+		assertEquals("vol2", resolver.toVolume(new File(mount, "vol2")));
+		assertNull(resolver.toPath(new File(mount, "vol3/a")));
+		assertNull(resolver.toVolume(mount));
+	}
+
+	@Test
+	public void testMountRoots() {
+		assertEquals(new Path("glusterfs:///"), resolver.toPath(new File(mount, "vol")));
+		assertEquals(new Path("glusterfs://vol2/"), resolver.toPath(new File(mount, "vol2")));
+	}
+
+	@Test
+	public void testRootMount() {
+		Map<String, String> mounts = new LinkedHashMap<String, String>();
+		mounts.put("data", mount + "/vol");
+		mounts.put("all", "/");
+		GlusterFSVolumeResolver r = new GlusterFSVolumeResolver(mounts);
+		assertEquals(new Path("glusterfs://all/etc/hosts"), r.toPath(new File("/etc/hosts")));
+		assertEquals(new Path("glusterfs://all/"), r.toPath(new File("/")));
+		assertEquals(new Path("glusterfs:///x"), r.toPath(new File(mount, "vol/x")));
+		assertEquals(new File("/etc/hosts"), r.toFile("all", "/etc/hosts"));
+	}
+
+	@Test
+	public void testVolumePaths() {
+		File f = new File(mount, "vol/a/b");
+		assertEquals(f, volume.pathToFile(new Path("glusterfs:///a/b")));
+		assertEquals(f, volume.pathToFile(new Path("glusterfs://vol/a/b")));
+		assertEquals(f, volume.pathToFile(new Path("/a/b")));
+		assertEquals(new File(mount, "vol/user/" + System.getProperty("user.name") + "/a"), volume.pathToFile(new Path("a")));
+		assertEquals(new Path("glusterfs:///a/b"), volume.fileToPath(f));
+	}
+
+	/* paths on another volume are not on this file system */
+	@Test(expected = IllegalArgumentException.class)
+	public void testOtherVolume() {
+		volume.pathToFile(new Path("glusterfs://vol2/a"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testNoVolume() {
+		volume.fileToPath(new File("/no/such/mount"));
+	}
+
+	/* many threads resolving at once see the same answers as one */
+	@Test(timeout = 60000)
+	public void testConcurrent() throws Exception {
+		ExecutorService threads = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < 16; t++) {
+				final int id = t;
+				results.add(threads.submit(new Callable<Integer>() {
+					public Integer call() {
+						int n = 0;
+						for (int i = 0; i < 20000; i++) {
+							Path p = new Path("glusterfs:///t" + id + "/d" + (i % 100) + "/f" + i);
+							File f = volume.pathToFile(p);
+							assertEquals(mount + "/vol/t" + id + "/d" + (i % 100) + "/f" + i, f.getPath());
+							assertEquals(p, volume.fileToPath(f));
+							File nested = new File(mount, "vol/nested/f" + i);
+							assertEquals("nested", resolver.toVolume(nested));
+							n++;
+						}
+						return n;
+					}
+				}));
+			}
+			for (Future<Integer> r : results)
+				assertEquals(20000, r.get().intValue());
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSBufferPool;
+import org.apache.hadoop.fs.glusterfs.GlusterFSOutputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSWriteBehind;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.test.connector.GlusterTestVolume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWriteBehind {
+
+	GlusterTestVolume testVolume;
+	File mount;
+	GlusterVolume volume;
+	GlusterFSWriteBehind writeBehind;
+	byte[] data = new byte[300000];
+
+	@Before
+	public void setUp() throws IOException {
+		testVolume = new GlusterTestVolume("writebehind");
+		mount = testVolume.getMount();
+		new Random(5).nextBytes(data);
+
+		Configuration conf = testVolume.createConfiguration();
+		conf.setBoolean(GlusterFSWriteBehind.WRITE_BEHIND_KEY, true);
+		conf.setInt(GlusterFSWriteBehind.BUFFERS_KEY, 2);
+		conf.setInt(GlusterFSWriteBehind.THREADS_KEY, 2);
+		conf.setBoolean(GlusterFSBufferPool.LEAK_DETECTION_KEY, true);
+		volume = testVolume.create(conf);
+		writeBehind = volume.getWriteBehind();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		assertEquals(0, volume.getBufferPool().getLeaks().size());
+		volume.close();
+		testVolume.delete();
+	}
+
+	byte[] read(String name) throws IOException {
+		return Files.readAllBytes(new File(mount, name).toPath());
+	}
+
+	@Test
+	public void testWrite() throws IOException {
+		FSDataOutputStream out = volume.create(new Path("glusterfs:///dir/out"), false, 4096, (short) 1, 1 << 20, null);
+		assertTrue(out.getWrappedStream() instanceof GlusterFSOutputStream);
+		int off = 0;
+		for (int len = 1; off < data.length; len = len * 3 % 10007) {
+			int n = Math.min(len, data.length - off);
+			if (n == 1)
+				out.write(data[off]);
+			else
+				out.write(data, off, n);
+			off += n;
+		}
+		out.close();
+		assertArrayEquals(data, read("dir/out"));
+		assertEquals(data.length, writeBehind.getBytesWritten());
+		assertEquals(0, writeBehind.getFailures());
+	}
+
+	@Test
+	public void testHflush() throws IOException {
+		FSDataOutputStream out = volume.create(new Path("glusterfs:///out"), false, 4096, (short) 1, 1 << 20, null);
+		out.write(data, 0, 10000);
+		out.hflush();
+		assertEquals(10000, new File(mount, "out").length());
+		out.write(data, 10000, 100);
+		out.hsync();
+		assertEquals(10100, new File(mount, "out").length());
+		out.close();
+		out.close();
+		assertArrayEquals(Arrays.copyOf(data, 10100), read("out"));
+	}
+
+	@Test
+	public void testAppend() throws IOException {
+		Path p = new Path("glusterfs:///out");
+		FSDataOutputStream out = volume.create(p, false, 4096, (short) 1, 1 << 20, null);
+		out.write(data, 0, 5000);
+		out.close();
+		out = volume.append(p, 4096, null);
+		out.write(data, 5000, data.length - 5000);
+		out.close();
+		assertArrayEquals(data, read("out"));
+	}
+
+	@Test
+	public void testCreate() throws IOException {
+		Path p = new Path("glusterfs:///out");
+		FSDataOutputStream out = volume.create(p, new FsPermission((short) 0640), false, 4096, (short) 1, 1 << 20, null);
+		out.close();
+		assertEquals(new FsPermission((short) 0640), volume.getFileStatus(p).getPermission());
+		try {
+			volume.create(p, false, 4096, (short) 1, 1 << 20, null);
+			fail("overwrote " + p);
+		} catch (IOException e) {
+			// exists
+		}
+		try {
+			volume.createNonRecursive(new Path("glusterfs:///missing/out"), FsPermission.getFileDefault(), false, 4096, (short) 1, 1 << 20, null);
+			fail("created a parent");
+		} catch (FileNotFoundException e) {
+			assertFalse(new File(mount, "missing").exists());
+		}
+	}
+
+	/* a failed write is thrown by the next call, and by close */
+	@Test
+	public void testFailure() throws IOException {
+		GlusterFSOutputStream out = new GlusterFSOutputStream(new File("/dev/full"), false, 4096, volume.getBufferPool(), writeBehind);
+		out.write(data, 0, 5000);
+		try {
+			out.flush();
+			fail("wrote to a full device");
+		} catch (IOException e) {
+			assertNotNull(e.getCause());
+		}
+		try {
+			out.write(data, 0, 10);
+			fail("wrote after a failure");
+		} catch (IOException e) {
+			// the same failure
+		}
+		try {
+			out.close();
+			fail("closed after a failure");
+		} catch (IOException e) {
+			// the same failure
+		}
+		out.close();
+		assertTrue(writeBehind.getFailures() >= 1);
+	}
+
+	@Test(expected = IOException.class)
+	public void testClosed() throws IOException {
+		FSDataOutputStream out = volume.create(new Path("glusterfs:///out"), false, 4096, (short) 1, 1 << 20, null);
+		out.close();
+		out.write(1);
+	}
+
+	/*
+	 * Writing into a pipe nobody reads: the flusher blocks once the pipe is
+	 * full, and the writer stops once its buffers are queued behind it.
+	 */
+	@Test(timeout = 60000)
+	public void testBounded() throws Exception {
+		final File fifo = new File(mount, "fifo");
+		assertEquals(0, new ProcessBuilder("mkfifo", fifo.getPath()).start().waitFor());
+		ExecutorService threads = Executors.newFixedThreadPool(2);
+		try {
+			/* opening a pipe for writing waits for a reader */
+			Future<FileInputStream> reader = threads.submit(new Callable<FileInputStream>() {
+				public FileInputStream call() throws IOException {
+					return new FileInputStream(fifo);
+				}
+			});
+			final GlusterFSOutputStream out = new GlusterFSOutputStream(fifo, false, 4096, volume.getBufferPool(), writeBehind);
+			FileInputStream in = reader.get();
+			Future<Integer> writer = threads.submit(new Callable<Integer>() {
+				public Integer call() throws IOException {
+					out.write(data);
+					out.close();
+					return data.length;
+				}
+			});
+			try {
+				writer.get(500, TimeUnit.MILLISECONDS);
+				fail("wrote " + data.length + " bytes into a full pipe");
+			} catch (TimeoutException e) {
+				assertTrue(writeBehind.getStalls() >= 1);
+			}
+
+			byte[] b = new byte[data.length];
+			int off = 0;
+			for (int n; off < b.length && (n = in.read(b, off, b.length - off)) > 0;)
+				off += n;
+			in.close();
+			assertEquals(data.length, writer.get().intValue());
+			assertArrayEquals(data, b);
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testDisabled() throws IOException {
+		Configuration conf = new Configuration(volume.getConf());
+		conf.setBoolean(GlusterFSWriteBehind.WRITE_BEHIND_KEY, false);
+		GlusterVolume plain = testVolume.create(conf);
+		FSDataOutputStream out = plain.create(new Path("glusterfs:///out"), false, 4096, (short) 1, 1 << 20, null);
+		assertFalse(out.getWrappedStream() instanceof GlusterFSOutputStream);
+		out.write(data);
+		out.close();
+		assertArrayEquals(data, read("out"));
+		plain.close();
+	}
+}
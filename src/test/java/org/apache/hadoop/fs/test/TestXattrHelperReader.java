@@ -0,0 +1,89 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrHelperReader;
+import org.junit.Test;
+
+/*
+ * Drives GlusterFSXattrHelperReader with small shell scripts standing in for the
+ * privileged helper, so no root or gluster mount is needed.
+ */
+public class TestXattrHelperReader {
+
+	/* answers every request with the path it was asked about */
+	static String[] echoHelper(String tag) {
+		return new String[] { "/bin/sh", "-c",
+				"while IFS=\"$(printf '\\t')\" read -r id name path; do printf '%s\\t+%s\\n' \"$id\" \"$path\"; done # " + tag };
+	}
+
+	/* reads one request and dies without answering */
+	static String[] crashingHelper(String tag) {
+		return new String[] { "/bin/sh", "-c", "read -r line; exit 1 # " + tag };
+	}
+
+	@Test
+	public void testBatchInOneHelper() throws IOException {
+		GlusterFSXattrHelperReader reader = new GlusterFSXattrHelperReader(echoHelper("batch"), 10000);
+		String[] files = new String[1000];
+		for (int i = 0; i < files.length; i++)
+			files[i] = "/mnt/gv0/dir/file" + i;
+
+		String[] values = reader.getXattrs(files, GlusterFSXattr.PATHINFO_XATTR);
+		for (int i = 0; i < files.length; i++)
+			assertEquals(files[i], values[i]);
+
+		assertEquals("/mnt/gv0/single", reader.getXattr("/mnt/gv0/single", GlusterFSXattr.PATHINFO_XATTR));
+		assertEquals(1, reader.getStarts());
+	}
+
+	@Test
+	public void testEscaping() throws IOException {
+		GlusterFSXattrHelperReader reader = new GlusterFSXattrHelperReader(echoHelper("escape"), 10000);
+		String odd = "/mnt/gv0/with\ttab";
+		assertEquals(odd, reader.getXattr(odd, GlusterFSXattr.PATHINFO_XATTR));
+	}
+
+	@Test
+	public void testRestartAfterCrash() throws IOException {
+		GlusterFSXattrHelperReader reader = new GlusterFSXattrHelperReader(crashingHelper("restart"), 10000);
+		for (int i = 1; i <= 3; i++) {
+			try {
+				reader.getXattr("/mnt/gv0/a", GlusterFSXattr.PATHINFO_XATTR);
+				fail("helper died, request should fail");
+			} catch (IOException e) {
+				// expected
+			}
+			assertEquals(i, reader.getStarts());
+		}
+
+		/* three dead helpers in a row, back off instead of forking again */
+		try {
+			reader.getXattr("/mnt/gv0/a", GlusterFSXattr.PATHINFO_XATTR);
+			fail("helper should be backing off");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(3, reader.getStarts());
+	}
+
+	/* a helper that isn't installed backs off the same way */
+	@Test
+	public void testMissingHelper() {
+		GlusterFSXattrHelperReader reader = new GlusterFSXattrHelperReader(new String[] { "/nonexistent/glusterfs-xattr-helper" }, 10000);
+		for (int i = 0; i < 4; i++) {
+			try {
+				reader.getXattr("/mnt/gv0/a", GlusterFSXattr.PATHINFO_XATTR);
+				fail("started a missing helper");
+			} catch (IOException e) {
+				if (i == 3)
+					assertTrue(e.getMessage().contains("keeps failing"));
+			}
+		}
+		assertEquals(0, reader.getStarts());
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.apache.hadoop.fs.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.glusterfs.GlusterFSAbstractXattrReader;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrFallbackReader;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrHelperReader;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrReader;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattrShellReader;
+import org.junit.Test;
+
+public class TestXattrReader {
+
+	/*
+	 * Canned reader which counts calls, optionally refusing to work at all.
+	 */
+	static class CannedReader extends GlusterFSAbstractXattrReader {
+		String value;
+		boolean unsupported;
+		int calls = 0;
+
+		CannedReader(String value, boolean unsupported) {
+			this.value = value;
+			this.unsupported = unsupported;
+		}
+
+		public String getXattr(String fileName, String name) throws IOException {
+			calls++;
+			if (unsupported)
+				throw new UnsupportedOperationException("canned");
+			return value;
+		}
+	}
+
+	@Test
+	public void testPrimaryAnswers() throws IOException {
+		CannedReader primary = new CannedReader("primary", false);
+		CannedReader fallback = new CannedReader("fallback", false);
+		GlusterFSXattrReader reader = new GlusterFSXattrFallbackReader(primary, fallback);
+
+		assertEquals("primary", reader.getXattr("/a", GlusterFSXattr.PATHINFO_XATTR));
+		assertEquals(0, fallback.calls);
+	}
+
+	@Test
+	public void testFallbackOnMiss() throws IOException {
+		CannedReader primary = new CannedReader(null, false);
+		CannedReader fallback = new CannedReader("fallback", false);
+		GlusterFSXattrReader reader = new GlusterFSXattrFallbackReader(primary, fallback);
+
+		assertEquals("fallback", reader.getXattr("/a", GlusterFSXattr.PATHINFO_XATTR));
+		assertEquals("fallback", reader.getXattr("/b", GlusterFSXattr.PATHINFO_XATTR));
+		/* a miss is per file, the primary keeps being asked */
+		assertEquals(2, primary.calls);
+	}
+
+	@Test
+	public void testUnsupportedPrimaryDisabled() throws IOException {
+		CannedReader primary = new CannedReader("primary", true);
+		CannedReader fallback = new CannedReader("fallback", false);
+		GlusterFSXattrReader reader = new GlusterFSXattrFallbackReader(primary, fallback);
+
+		assertEquals("fallback", reader.getXattr("/a", GlusterFSXattr.PATHINFO_XATTR));
+		assertEquals("fallback", reader.getXattr("/b", GlusterFSXattr.PATHINFO_XATTR));
+		assertEquals(1, primary.calls);
+		assertEquals(2, fallback.calls);
+	}
+
+	@Test
+	public void testCreateReader() {
+		Configuration conf = new Configuration();
+		assertTrue(GlusterFSXattr.createReader(conf) instanceof GlusterFSXattrFallbackReader);
+
+		conf.setBoolean(GlusterFSXattr.XATTR_FALLBACK_KEY, false);
+		assertTrue(GlusterFSXattr.createReader(conf) instanceof GlusterFSXattrHelperReader);
+		conf.setClass(GlusterFSXattr.XATTR_READER_KEY, GlusterFSXattrShellReader.class, GlusterFSXattrReader.class);
+		assertTrue(GlusterFSXattr.createReader(conf) instanceof GlusterFSXattrShellReader);
+
+		conf.setBoolean(GlusterFSXattr.XATTR_FALLBACK_KEY, true);
+		conf.setClass(GlusterFSXattr.XATTR_READER_KEY, GlusterFSXattrShellReader.class, GlusterFSXattrReader.class);
+		assertTrue(GlusterFSXattr.createReader(conf) instanceof GlusterFSXattrShellReader);
+	}
+
+}
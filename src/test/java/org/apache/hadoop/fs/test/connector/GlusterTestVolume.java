@@ -0,0 +1,71 @@
+package org.apache.hadoop.fs.test.connector;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+
+/*
+ * A volume whose fuse mount is a fresh directory under java.io.tmpdir, for
+ * tests of the plugin's own classes without a gluster mount.  Directories
+ * beside the mount are outside the volume.  delete() removes all of it.
+ */
+public class GlusterTestVolume {
+
+	private final String name;
+	private final File root;
+	private final File mount;
+
+	public GlusterTestVolume(String name) {
+		this.name = name;
+		this.root = new File(System.getProperty("java.io.tmpdir"), name + "-" + System.nanoTime());
+		this.mount = new File(root, "mount");
+		if (!mount.mkdirs())
+			throw new RuntimeException("Can't create " + mount);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public File getMount() {
+		return mount;
+	}
+
+	/* a directory beside the mount, not on the volume */
+	public File getDirectory(String dir) {
+		File d = new File(root, dir);
+		if (!d.isDirectory() && !d.mkdirs())
+			throw new RuntimeException("Can't create " + d);
+		return d;
+	}
+
+	/* the mount as the only, default volume */
+	public Configuration createConfiguration() {
+		Configuration conf = new Configuration();
+		conf.set("fs.glusterfs.volumes", name);
+		conf.set("fs.glusterfs.volume.fuse." + name, mount.getPath());
+		return conf;
+	}
+
+	public GlusterVolume create() throws IOException {
+		return create(createConfiguration());
+	}
+
+	public GlusterVolume create(Configuration conf) throws IOException {
+		return initialize(new GlusterVolume(), conf);
+	}
+
+	/* for tests of subclasses */
+	public <V extends GlusterVolume> V initialize(V volume, Configuration conf) throws IOException {
+		volume.initialize(URI.create("glusterfs:///"), conf);
+		return volume;
+	}
+
+	public void delete() {
+		FileUtil.fullyDelete(root);
+	}
+}
@@ -0,0 +1,112 @@
+#!/usr/bin/python
+
+##
+ #
+ # Copyright (c) 2015 Red Hat, Inc. <http://www.redhat.com>
+ # This file is part of GlusterFS.
+ #
+ # Licensed under the Apache License, Version 2.0
+ # (the "License"); you may not use this file except in compliance with
+ # the License. You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ # implied. See the License for the specific language governing
+ # permissions and limitations under the License.
+ #
+ # Long lived xattr reader for GlusterFSXattrHelperReader.  Started once per
+ # JVM through sudo, so the glusterfs keys the plugin needs can be read
+ # without forking getfattr for every file.  Only the keys in ALLOWED_NAMES
+ # are answered, anything else gets EPERM.
+ #
+ # Requests, one per line on stdin:    <id> TAB <name> TAB <path>
+ # Responses, one per line on stdout:  <id> TAB +<value>   or   <id> TAB -<errno>
+ #
+ # Backslash, tab and newline in paths and values are escaped as \\, \t and \n.
+ # Binary values (trusted.glusterfs.dht) are sent in hex, 0x..., like getfattr -e hex.
+ # Requests may be pipelined, responses come back in request order.
+ ##
+
+import binascii
+import ctypes, ctypes.util
+import errno
+import re
+import sys
+
+# exactly the keys the plugin reads; glusterfs.gfid.string is virtual,
+# answered by the client stack
+ALLOWED_NAMES = frozenset((
+    b'trusted.glusterfs.pathinfo',
+    b'trusted.glusterfs.dht',
+    b'trusted.glusterfs.quota.size',
+    b'glusterfs.gfid.string',
+))
+
+libc = ctypes.CDLL(ctypes.util.find_library('c'), use_errno=True)
+getxattr = libc.getxattr
+getxattr.argtypes = [ctypes.c_char_p, ctypes.c_char_p, ctypes.c_void_p, ctypes.c_size_t]
+getxattr.restype = ctypes.c_ssize_t
+
+ESCAPES = {b'n': b'\n', b't': b'\t'}
+UNESCAPE = re.compile(br'\\(.)')
+
+def unescape(s):
+    return UNESCAPE.sub(lambda m: ESCAPES.get(m.group(1), m.group(1)), s)
+
+def escape(s):
+    return s.replace(b'\\', b'\\\\').replace(b'\n', b'\\n').replace(b'\t', b'\\t')
+
+def encode(value):
+    # text values usually carry their C string terminator
+    text = value[:-1] if value.endswith(b'\0') else value
+    try:
+        decoded = text.decode('utf-8')
+    except UnicodeDecodeError:
+        decoded = None
+    if decoded is None or any(ord(c) < 0x20 and c not in '\t\n' for c in decoded):
+        return b'0x' + binascii.hexlify(value)
+    return escape(text)
+
+def read_xattr(path, name):
+    while True:
+        size = getxattr(path, name, None, 0)
+        if size < 0:
+            return -ctypes.get_errno(), None
+        buf = ctypes.create_string_buffer(size)
+        got = getxattr(path, name, buf, size)
+        if got >= 0:
+            return 0, buf.raw[:got]
+        err = ctypes.get_errno()
+        if err != errno.ERANGE:
+            return -err, None
+        # value grew between the two calls, ask again
+
+def answer(line):
+    fields = line.rstrip(b'\n').split(b'\t', 2)
+    if len(fields) != 3:
+        return None
+    rid, name, path = fields[0], unescape(fields[1]), unescape(fields[2])
+    if name not in ALLOWED_NAMES:
+        return rid + b'\t-' + str(errno.EPERM).encode('ascii') + b'\n'
+    err, value = read_xattr(path, name)
+    if err < 0:
+        return rid + b'\t-' + str(-err).encode('ascii') + b'\n'
+    return rid + b'\t+' + encode(value) + b'\n'
+
+def main():
+    stdin = getattr(sys.stdin, 'buffer', sys.stdin)
+    stdout = getattr(sys.stdout, 'buffer', sys.stdout)
+    while True:
+        line = stdin.readline()
+        if not line:
+            break
+        response = answer(line)
+        if response is not None:
+            stdout.write(response)
+            stdout.flush()
+
+if __name__ == '__main__':
+    main()